@@ -6,6 +6,7 @@ import javax.swing.SwingConstants;
 
 import components.inventory.Inventory;
 import components.inventory.Inventory1;
+import components.inventory.InventoryEvent;
 
 import javax.swing.JPanel;
 import javax.swing.JTable;
@@ -14,7 +15,6 @@ import javax.swing.JOptionPane;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Iterator;
 
 
 /**
@@ -102,11 +102,12 @@ public final class DemoInventoryManagementGUI extends JFrame implements ActionLi
         this.inv.add("99999");
         final int randomQuantity1 = 10;
         final int randomQuantity2 = 5;
+        final int sampleOrder = 3;
         this.inv.setQuantity("1001", 2);
         this.inv.setQuantity("1052", randomQuantity1);
         this.inv.setQuantity("20040", 1);
         this.inv.setQuantity("7888", randomQuantity2);
-        this.inv.addAttribute("6546", "Order Status", "3 Reordered");
+        this.inv.placeOrder("6546", sampleOrder);
     }
 
 
@@ -150,6 +151,18 @@ public final class DemoInventoryManagementGUI extends JFrame implements ActionLi
         this.viewInv.addActionListener(this);
         this.plus.addActionListener(this);
         this.minus.addActionListener(this);
+        /*
+         * Keep the item popup current as the item changes
+         */
+        this.inv.addListener(event -> {
+            if (event.barcode().equals(this.barcodeVal.getText())) {
+                if (event.kind() == InventoryEvent.Kind.QUANTITY) {
+                    this.quantityVal.setText("" + event.quantity());
+                } else if (event.kind() == InventoryEvent.Kind.NAME) {
+                    this.nameVal.setText(event.name());
+                }
+            }
+        });
         /*
          * Add elements to main panel
          */
@@ -261,15 +274,13 @@ public final class DemoInventoryManagementGUI extends JFrame implements ActionLi
              */
             String[] colNames = {"Barcode", "Name", "Quantity"};
             String[][] data = new String[this.inv.size()][colNames.length];
-            int count = 0;
-            Iterator<Inventory.InventoryItem> itr = inv.iterator();
-            while (itr.hasNext()) {
-                Inventory.InventoryItem i = itr.next();
-                data[count][0] = i.attributes().value("barcode");
-                data[count][1] = i.name();
-                data[count][2] = "" + i.quantity();
-                count++;
-            }
+            int[] count = {0};
+            this.inv.forEachItem((barcode, i) -> {
+                data[count[0]][0] = barcode;
+                data[count[0]][1] = i.name();
+                data[count[0]][2] = "" + i.quantity();
+                count[0]++;
+            });
             this.viewInvTable = new JTable(data, colNames);
             this.scroll = new JScrollPane(this.viewInvTable);
             this.viewInvPopup = new JFrame("View Inventory");
@@ -282,21 +293,12 @@ public final class DemoInventoryManagementGUI extends JFrame implements ActionLi
              */
             this.clearTextFields();
         } else if (e.getSource() == this.plus) {
-            this.inv.increment(this.barcodeVal.getText());
             /*
-             * Update window by "clicking" view item
+             * The change listener updates the popup
              */
-            this.itemInfoPopup.dispose();
-            this.barcodeFldView.setText(this.barcodeVal.getText());
-            this.viewItem.doClick();
+            this.inv.increment(this.barcodeVal.getText());
         } else if (e.getSource() == this.minus) {
             this.inv.decrement(this.barcodeVal.getText());
-            /*
-             * Update window by "clicking" view item
-             */
-            this.itemInfoPopup.dispose();
-            this.barcodeFldView.setText(this.barcodeVal.getText());
-            this.viewItem.doClick();
         }
 
     }
@@ -2,10 +2,10 @@ import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
 import components.simplewriter.SimpleWriter1L;
 
-import java.util.Iterator;
-
 import components.inventory.Inventory;
 import components.inventory.Inventory1;
+import components.queue.Queue;
+import components.queue.Queue1L;
 import components.simplereader.SimpleReader;
 
 /**
@@ -46,11 +46,12 @@ public final class DemoReorderSystem {
         inv.add("99999", "Kiwi");
         final int randomQuantity1 = 10;
         final int randomQuantity2 = 5;
+        final int sampleOrder = 3;
         inv.setQuantity("1001", 2);
         inv.setQuantity("1052", randomQuantity1);
         inv.setQuantity("20040", 1);
         inv.setQuantity("7888", randomQuantity2);
-        inv.addAttribute("6546", "Order Status", "3 Reordered");
+        inv.placeOrder("6546", sampleOrder);
     }
 
     /**
@@ -87,57 +88,17 @@ public final class DemoReorderSystem {
      */
     public static void printInventory(SimpleWriter out) {
         out.println("Barcode             Name                Quantity");
-        for (Inventory.InventoryItem i : inv) {
-            final int numSpaces = 20;
-            out.print(i.attributes().value("barcode"));
-            //print barcode
-            for (int k = i.attributes().value("barcode").length(); k < numSpaces;
-                k++) {
-                out.print(" ");
-            }
-            //print name
-            out.print(i.name());
-            for (int k = i.name().length(); k < numSpaces; k++) {
-                out.print(" ");
-            }
-            //print quantity
-            out.print(i.quantity());
-            for (int k = (i.quantity() + "").length(); k < numSpaces / 2; k++) {
-                out.print(" ");
-            }
+        inv.forEachItem((barcode, i) -> {
+            //print barcode, name, and quantity in padded columns
+            String row = String.format("%-20s%-20s%-10d", barcode, i.name(),
+                    i.quantity());
             //print reorder status, if needed
-            if (i.attributes().hasKey("Order Status")) {
-                out.println(i.attributes().value("Order Status"));
-            } else {
-                out.println();
+            int onOrder = inv.onOrder(barcode);
+            if (onOrder > 0) {
+                row += onOrder + " Reordered";
             }
-        }
-    }
-
-    /**
-     * Return the int at the beginning of str.
-     * @param str the string to analyze
-     * @ensures getBeginInt = [the integer or string of
-     * integers at the beginning of str]
-     * @return the integer or string of integers at the beginning of str
-     * @requires str begins with an integer or sequence of integers
-     */
-    public static int getBeginInt(String str) {
-        int startLen = 1;
-        int maxSuccess = Integer.MIN_VALUE;
-        int current = Integer.MIN_VALUE;
-        while (startLen < str.length()) {
-            try {
-                current = Integer.parseInt(str.substring(0, startLen));
-            } catch (NumberFormatException n) {
-                current = Integer.MIN_VALUE;
-            }
-            if (maxSuccess < current) {
-                maxSuccess = current;
-            }
-            startLen++;
-        }
-        return maxSuccess;
+            out.println(row);
+        });
     }
 
     /**
@@ -169,10 +130,10 @@ public final class DemoReorderSystem {
                 boolean moreOrdered = false;
                 out.println("\nItem: " + inv.name(response) + " (" + response + ")");
                 out.println("Quantity Remaining: " + inv.quantity(response));
-                if (inv.hasAttribute(response, "Order Status")) {
+                int onOrder = inv.onOrder(response);
+                if (onOrder > 0) {
                     moreOrdered = true;
-                    String order = inv.getAttribute(response, "Order Status");
-                    out.println(order.charAt(0) + " of this item were reordered.");
+                    out.println(onOrder + " of this item were reordered.");
                     out.println("Select an option:");
                     out.println("1\tReturn to inventory");
                     out.println("2\tEdit item quantity");
@@ -222,21 +183,11 @@ public final class DemoReorderSystem {
                      */
                     out.print("Enter the amount to order: ");
                     int numToOrder = getIntegerInput(in, out);
-                    if (moreOrdered) {
-                        /*
-                         * Update the order that was already placed
-                         */
-                        int alreadyOrdered = getBeginInt(inv.getAttribute(response,
-                            "Order Status"));
-                        numToOrder += alreadyOrdered;
-                        inv.setAttribute(response, "Order Status", numToOrder
-                            + " Reordered");
-                    } else {
+                    if (numToOrder > 0) {
                         /*
-                         * Create a new order
+                         * Adds to any order that was already placed
                          */
-                        inv.addAttribute(response, "Order Status", numToOrder
-                            + " Reordered");
+                        inv.placeOrder(response, numToOrder);
                     }
                 } else if (first == '4') {
                     inv.remove(response);
@@ -244,10 +195,8 @@ public final class DemoReorderSystem {
                     /*
                      * Option chosen: mark order as received.
                      */
-                    int numOrdered = getBeginInt(inv.getAttribute(response,
-                    "Order Status"));
-                    inv.removeAttribute(response, "Order Status");
-                    inv.setQuantity(response, inv.quantity(response) + numOrdered);
+                    int numOrdered = onOrder;
+                    inv.receiveOrder(response, numOrdered);
                     out.println("\nThe order of " + numOrdered + " " + inv.name(response)
                         + " has been received. There are now " + inv.quantity(response)
                         + " " + inv.name(response) + " remaining.");
@@ -255,19 +204,22 @@ public final class DemoReorderSystem {
             } else if (response.equals("REORDER")) {
                 out.println("\nThe following items are out of stock without pending "
                 + "orders. For each item, enter an amount to reorder.");
-                    Iterator<Inventory.InventoryItem> it = inv.iterator();
-                    while (it.hasNext()) {
-                        Inventory.InventoryItem next = it.next();
-                        if (next.quantity() == 0
-                            && !next.attributes().hasKey("Order Status")) {
-                            out.print(next.name() + ": ");
-                            int orderQuantity = getIntegerInput(in, out);
-                            if (orderQuantity > 0) {
-                                inv.addAttribute(next.attributes().value("barcode"),
-                                "Order Status", orderQuantity + " Reordered");
-                            }
-                        }
+                /*
+                 * Copy the candidates first, as placing an order takes an
+                 * item out of lowStockItems
+                 */
+                Queue<String> candidates = new Queue1L<String>();
+                for (String barcode : inv.lowStockItems()) {
+                    candidates.enqueue(barcode);
+                }
+                while (candidates.length() > 0) {
+                    String barcode = candidates.dequeue();
+                    out.print(inv.name(barcode) + ": ");
+                    int orderQuantity = getIntegerInput(in, out);
+                    if (orderQuantity > 0) {
+                        inv.placeOrder(barcode, orderQuantity);
                     }
+                }
                 out.println("Items reordered succesfully!");
             } else if (response.equals("NEW ITEM")) {
                 out.print("Enter a barcode: ");
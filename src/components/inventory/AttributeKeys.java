@@ -0,0 +1,113 @@
+package components.inventory;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary shared by every {@code AttributeMap} giving each attribute name
+ * a small integer id, so that items store an {@code int} per attribute rather
+ * than a reference to their own copy of the name.
+ *
+ * <p>
+ * Ids are never reused or freed: the dictionary is meant for the handful of
+ * attribute names an application uses, not for arbitrary strings. Looking up
+ * an id or a name may be done from any thread without locking.
+ *
+ * @author Jacob Witt
+ */
+final class AttributeKeys {
+
+    /**
+     * Initial capacity of {@code names}.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Id of each name interned so far.
+     */
+    private static final ConcurrentHashMap<String, Integer> IDS =
+            new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Name with each id, in positions [0, IDS.size()); replaced, not
+     * modified in place, when it grows.
+     */
+    private static volatile String[] names = new String[INITIAL_CAPACITY];
+
+    /**
+     * No instances.
+     */
+    private AttributeKeys() {
+    }
+
+    /**
+     * Returns the id of {@code name} if it has been interned.
+     *
+     * @param name
+     *            the attribute name
+     * @return its id, or -1 if it has never been interned, in which case no
+     *         item has an attribute with that name
+     */
+    static int id(String name) {
+        Integer id = IDS.get(name);
+        int result = -1;
+        if (id != null) {
+            result = id;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of {@code name}, giving it one if it has none.
+     *
+     * @param name
+     *            the attribute name
+     * @return its id
+     * @ensures name(intern) = name
+     */
+    static int intern(String name) {
+        Integer id = IDS.get(name);
+        if (id == null) {
+            id = add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Gives {@code name} an id, unless another thread just did.
+     *
+     * @param name
+     *            the attribute name
+     * @return its id
+     */
+    private static synchronized int add(String name) {
+        Integer id = IDS.get(name);
+        if (id == null) {
+            id = IDS.size();
+            String[] grown = names;
+            if (id == grown.length) {
+                grown = Arrays.copyOf(grown, 2 * grown.length);
+            }
+            grown[id] = name;
+            /*
+             * The name is published before its id, so a reader given the id
+             * always finds it
+             */
+            names = grown;
+            IDS.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the name with id {@code id}.
+     *
+     * @param id
+     *            the id
+     * @return the name
+     * @requires id was returned by {@code intern}
+     */
+    static String name(int id) {
+        return names[id];
+    }
+
+}
@@ -0,0 +1,369 @@
+package components.inventory;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.map.MapSecondary;
+
+/**
+ * Compact {@code Map} from attribute names to contents, for the attributes
+ * of one item.
+ *
+ * <p>
+ * Most items have a few attributes drawn from a handful of names, so names
+ * are interned into {@code AttributeKeys} and up to {@code INLINE_LIMIT}
+ * attributes are kept as a pair of parallel arrays of ids and contents,
+ * which are searched linearly and not allocated until the first attribute is
+ * added. An empty map is a single small object rather than a hash table.
+ * Past {@code INLINE_LIMIT} attributes the entries move to a {@code Map1L}.
+ * Entries are iterated in the order they were added, except that removing
+ * one may move the last entry into its place.
+ *
+ * <p>
+ * {@code EMPTY} is a shared, read-only empty map, handed out for items that
+ * have no attribute map of their own; every method that would modify it
+ * throws {@code UnsupportedOperationException}.
+ *
+ * @author Jacob Witt
+ */
+final class AttributeMap extends MapSecondary<String, String> {
+
+    /**
+     * Largest number of attributes kept inline.
+     */
+    private static final int INLINE_LIMIT = 8;
+
+    /**
+     * Capacity of the inline arrays when first allocated.
+     */
+    private static final int INITIAL_CAPACITY = 2;
+
+    /**
+     * The shared, read-only empty map.
+     */
+    static final AttributeMap EMPTY = new AttributeMap(true);
+
+    /**
+     * Ids of the inline attribute names, in positions [0, size), or null if
+     * none have been added.
+     */
+    private int[] keys;
+
+    /**
+     * Contents of the inline attributes, parallel to {@code keys}.
+     */
+    private String[] values;
+
+    /**
+     * Number of inline attributes.
+     */
+    private int size;
+
+    /**
+     * Every attribute, once there have been more than {@code INLINE_LIMIT};
+     * otherwise null.
+     */
+    private Map<String, String> spill;
+
+    /**
+     * Whether {@code this} is read-only.
+     */
+    private final boolean readOnly;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.keys = null;
+        this.values = null;
+        this.size = 0;
+        this.spill = null;
+    }
+
+    /**
+     * No-argument constructor.
+     */
+    AttributeMap() {
+        this(false);
+    }
+
+    /**
+     * Constructor of an empty map, read-only if {@code readOnly}.
+     *
+     * @param readOnly
+     *            whether the map is read-only
+     */
+    private AttributeMap(boolean readOnly) {
+        this.readOnly = readOnly;
+        this.createNewRep();
+    }
+
+    /**
+     * Throws if {@code this} is read-only.
+     *
+     * @throws UnsupportedOperationException
+     *             if {@code this} is read-only
+     */
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("This map is read-only");
+        }
+    }
+
+    /**
+     * Returns the position of attribute {@code key} among the inline ones.
+     *
+     * @param key
+     *            the attribute name
+     * @return its position, or -1 if it is not inline
+     */
+    private int indexOf(String key) {
+        int result = -1;
+        int id = -1;
+        if (this.size > 0) {
+            id = AttributeKeys.id(key);
+        }
+        if (id >= 0) {
+            for (int i = 0; i < this.size && result < 0; i++) {
+                if (this.keys[i] == id) {
+                    result = i;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of {@code this}, sharing nothing that either may change.
+     *
+     * @return the copy
+     * @ensures copy = this
+     */
+    AttributeMap copy() {
+        AttributeMap result = new AttributeMap();
+        if (this.spill != null) {
+            result.spill = new Map1L<String, String>();
+            for (Map.Pair<String, String> p : this.spill) {
+                result.spill.add(p.key(), p.value());
+            }
+        } else if (this.size > 0) {
+            result.keys = Arrays.copyOf(this.keys, this.size);
+            result.values = Arrays.copyOf(this.values, this.size);
+            result.size = this.size;
+        }
+        return result;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public Map<String, String> newInstance() {
+        return new AttributeMap();
+    }
+
+    @Override
+    public void clear() {
+        this.checkWritable();
+        this.createNewRep();
+    }
+
+    @Override
+    public void transferFrom(Map<String, String> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof AttributeMap : ""
+                + "Violation of: source is of dynamic type AttributeMap";
+        AttributeMap localSource = (AttributeMap) source;
+        this.checkWritable();
+        localSource.checkWritable();
+        this.keys = localSource.keys;
+        this.values = localSource.values;
+        this.size = localSource.size;
+        this.spill = localSource.spill;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(String key, String value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        this.checkWritable();
+        if (this.spill != null) {
+            this.spill.add(key, value);
+        } else if (this.size == INLINE_LIMIT) {
+            this.spill = new Map1L<String, String>();
+            for (int i = 0; i < this.size; i++) {
+                this.spill.add(AttributeKeys.name(this.keys[i]), this.values[i]);
+            }
+            this.spill.add(key, value);
+            this.keys = null;
+            this.values = null;
+            this.size = 0;
+        } else {
+            if (this.keys == null) {
+                this.keys = new int[INITIAL_CAPACITY];
+                this.values = new String[INITIAL_CAPACITY];
+            } else if (this.size == this.keys.length) {
+                int capacity = Math.min(2 * this.size, INLINE_LIMIT);
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+            }
+            this.keys[this.size] = AttributeKeys.intern(key);
+            this.values[this.size] = value;
+            this.size++;
+        }
+    }
+
+    @Override
+    public Map.Pair<String, String> remove(String key) {
+        this.checkWritable();
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        Map.Pair<String, String> result;
+        if (this.spill != null) {
+            result = this.spill.remove(key);
+        } else {
+            result = this.removeAt(this.indexOf(key));
+        }
+        return result;
+    }
+
+    /**
+     * Removes the inline attribute at position {@code i}, moving the last one
+     * into its place.
+     *
+     * @param i
+     *            the position
+     * @return the attribute removed
+     * @requires 0 <= i < size
+     */
+    private Map.Pair<String, String> removeAt(int i) {
+        Map.Pair<String, String> result = new SimplePair<String, String>(
+                AttributeKeys.name(this.keys[i]), this.values[i]);
+        this.size--;
+        this.keys[i] = this.keys[this.size];
+        this.values[i] = this.values[this.size];
+        this.values[this.size] = null;
+        return result;
+    }
+
+    @Override
+    public Map.Pair<String, String> removeAny() {
+        this.checkWritable();
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        Map.Pair<String, String> result;
+        if (this.spill != null) {
+            result = this.spill.removeAny();
+        } else {
+            result = this.removeAt(this.size - 1);
+        }
+        return result;
+    }
+
+    @Override
+    public String value(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        String result;
+        if (this.spill != null) {
+            result = this.spill.value(key);
+        } else {
+            result = this.values[this.indexOf(key)];
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasKey(String key) {
+        assert key != null : "Violation of: key is not null";
+        boolean result;
+        if (this.spill != null) {
+            result = this.spill.hasKey(key);
+        } else {
+            result = this.indexOf(key) >= 0;
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        int result = this.size;
+        if (this.spill != null) {
+            result = this.spill.size();
+        }
+        return result;
+    }
+
+    @Override
+    public String replaceValue(String key, String value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        this.checkWritable();
+        String result;
+        if (this.spill != null) {
+            result = this.spill.replaceValue(key, value);
+        } else {
+            int i = this.indexOf(key);
+            result = this.values[i];
+            this.values[i] = value;
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Map.Pair<String, String>> iterator() {
+        Iterator<Map.Pair<String, String>> result;
+        if (this.spill != null) {
+            result = this.spill.iterator();
+        } else {
+            result = new AttributeMapIterator();
+        }
+        return result;
+    }
+
+    /**
+     * Iterator over the inline attributes.
+     */
+    private final class AttributeMapIterator
+            implements Iterator<Map.Pair<String, String>> {
+
+        /**
+         * Position of the next attribute.
+         */
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            return this.next < AttributeMap.this.size;
+        }
+
+        @Override
+        public Map.Pair<String, String> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Pair<String, String> result = new SimplePair<String, String>(
+                    AttributeKeys.name(AttributeMap.this.keys[this.next]),
+                    AttributeMap.this.values[this.next]);
+            this.next++;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package components.inventory;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+
+/**
+ * Read-only {@code Set} view of the attribute names of one item, backed
+ * directly by the item's attribute map so that no names are copied.
+ *
+ * @author Jacob Witt
+ */
+final class AttributeNames extends ReadOnlySet<String> {
+
+    /**
+     * The attribute map whose keys are viewed; null when the item has no
+     * attributes.
+     */
+    private final Map<String, String> attributes;
+
+    /**
+     * Constructor viewing the keys of {@code attributes}.
+     *
+     * @param attributes
+     *            the attribute map to view, or null for an empty view
+     */
+    AttributeNames(Map<String, String> attributes) {
+        this.attributes = attributes;
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public boolean contains(String x) {
+        return this.attributes != null && this.attributes.hasKey(x);
+    }
+
+    @Override
+    public int size() {
+        int result = 0;
+        if (this.attributes != null) {
+            result = this.attributes.size();
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new KeyIterator();
+    }
+
+    /**
+     * Iterator over the keys of the viewed map.
+     */
+    private final class KeyIterator implements Iterator<String> {
+
+        /**
+         * The iterator over the viewed map, or null for an empty view.
+         */
+        private final Iterator<Map.Pair<String, String>> pairs;
+
+        /**
+         * No-args constructor.
+         */
+        private KeyIterator() {
+            if (AttributeNames.this.attributes != null) {
+                this.pairs = AttributeNames.this.attributes.iterator();
+            } else {
+                this.pairs = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.pairs != null && this.pairs.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (this.pairs == null) {
+                throw new NoSuchElementException();
+            }
+            return this.pairs.next().key();
+        }
+
+    }
+
+}
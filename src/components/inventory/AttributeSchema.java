@@ -0,0 +1,202 @@
+package components.inventory;
+import java.util.Arrays;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Immutable set of attribute declarations, giving each attribute declared
+ * INT, LONG or DOUBLE a slot in which items keep its value as a primitive,
+ * and recording which are declared CATEGORY.
+ *
+ * <p>
+ * Declaring an attribute makes a new schema, so a snapshot can go on sharing
+ * the schema its items were laid out for. Redeclaring an attribute with
+ * another numeric type gives it a new slot; the old one is left unused.
+ *
+ * @author Jacob Witt
+ */
+final class AttributeSchema {
+
+    /**
+     * The schema with no declarations.
+     */
+    static final AttributeSchema EMPTY = new AttributeSchema(
+            new Map1L<String, Integer>(), new Inventory.AttributeType[0]);
+
+    /**
+     * Slot of each attribute declared with a numeric type, and -1 for each
+     * declared CATEGORY.
+     */
+    private final Map<String, Integer> slots;
+
+    /**
+     * Type of the attribute in each slot.
+     */
+    private final Inventory.AttributeType[] types;
+
+    /**
+     * Whether any attribute is declared CATEGORY.
+     */
+    private final boolean categories;
+
+    /**
+     * Constructor from the slots and their types.
+     *
+     * @param slots
+     *            the slot of each numeric attribute and -1 for each
+     *            CATEGORY, which {@code this} takes ownership of
+     * @param types
+     *            the type of each slot, which {@code this} takes ownership of
+     */
+    private AttributeSchema(Map<String, Integer> slots,
+            Inventory.AttributeType[] types) {
+        this.slots = slots;
+        this.types = types;
+        boolean any = false;
+        for (Map.Pair<String, Integer> p : slots) {
+            any = any || p.value() < 0;
+        }
+        this.categories = any;
+    }
+
+    /**
+     * Returns {@code this} with attribute {@code name} declared as
+     * {@code type}.
+     *
+     * @param name
+     *            the attribute name
+     * @param type
+     *            its type
+     * @return the new schema
+     */
+    AttributeSchema with(String name, Inventory.AttributeType type) {
+        AttributeSchema result = this;
+        if (this.type(name) != type) {
+            Map<String, Integer> newSlots = new Map1L<String, Integer>();
+            for (Map.Pair<String, Integer> p : this.slots) {
+                if (!p.key().equals(name)) {
+                    newSlots.add(p.key(), p.value());
+                }
+            }
+            Inventory.AttributeType[] newTypes = this.types;
+            if (type == Inventory.AttributeType.CATEGORY) {
+                newSlots.add(name, -1);
+            } else if (type != Inventory.AttributeType.STRING) {
+                newTypes = Arrays.copyOf(this.types, this.types.length + 1);
+                newTypes[this.types.length] = type;
+                newSlots.add(name, this.types.length);
+            }
+            result = new AttributeSchema(newSlots, newTypes);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the number of slots
+     */
+    int size() {
+        return this.types.length;
+    }
+
+    /**
+     * Returns the slot of attribute {@code name}.
+     *
+     * @param name
+     *            the attribute name
+     * @return the slot, or -1 if {@code name} is not declared with a numeric
+     *         type
+     */
+    int slot(String name) {
+        int result = -1;
+        if (this.slots.size() > 0 && this.slots.hasKey(name)) {
+            result = this.slots.value(name);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether any attribute is declared CATEGORY.
+     *
+     * @return true iff some attribute is declared CATEGORY
+     */
+    boolean hasCategories() {
+        return this.categories;
+    }
+
+    /**
+     * Returns whether attribute {@code name} is declared CATEGORY.
+     *
+     * @param name
+     *            the attribute name
+     * @return true iff {@code name} is declared CATEGORY
+     */
+    boolean isCategory(String name) {
+        return this.categories && this.slots.hasKey(name)
+                && this.slots.value(name) < 0;
+    }
+
+    /**
+     * Returns the type of the attribute in {@code slot}.
+     *
+     * @param slot
+     *            the slot
+     * @return its type
+     * @requires 0 <= slot < size
+     */
+    Inventory.AttributeType type(int slot) {
+        return this.types[slot];
+    }
+
+    /**
+     * Returns the declared type of attribute {@code name}.
+     *
+     * @param name
+     *            the attribute name
+     * @return its type; STRING if it was not declared
+     */
+    Inventory.AttributeType type(String name) {
+        Inventory.AttributeType result = Inventory.AttributeType.STRING;
+        if (this.slots.size() > 0 && this.slots.hasKey(name)) {
+            int slot = this.slots.value(name);
+            if (slot < 0) {
+                result = Inventory.AttributeType.CATEGORY;
+            } else {
+                result = this.types[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code content} parsed as the type of {@code slot}, as kept in
+     * the slot: an INT or LONG as its value and a DOUBLE as its bits.
+     *
+     * @param slot
+     *            the slot
+     * @param content
+     *            the attribute content
+     * @return the slot value
+     * @throws NumberFormatException
+     *             if {@code content} is not a value of the slot's type
+     * @requires 0 <= slot < size
+     */
+    long encode(int slot, String content) {
+        long result;
+        switch (this.types[slot]) {
+            case INT:
+                result = Integer.parseInt(content);
+                break;
+            case LONG:
+                result = Long.parseLong(content);
+                break;
+            default:
+                result = Double.doubleToRawLongBits(Double.parseDouble(content));
+                break;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,1206 @@
+package components.inventory;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.sequence.Sequence;
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Thread-safe inventory represented as an array of lock stripes, each holding
+ * a Map<String barcode, InventoryItem> guarded by its own read-write lock.
+ *
+ * <p>
+ * A barcode always maps to the same stripe, so operations on barcodes in
+ * different stripes never contend, and lookups only take a stripe's read lock,
+ * so they proceed alongside other lookups on the same stripe. Quantities are
+ * atomic counters: {@code increment}, {@code decrement},
+ * {@code adjustQuantity}, {@code setQuantity} and {@code tryReserve} take the
+ * stripe's read lock, not its write lock, and update the count with a
+ * compare-and-set, so threads updating one hot item run side by side rather
+ * than one at a time. They are not lock-free: acquiring the read lock still
+ * updates the lock's shared state, so heavy traffic on one stripe contends
+ * on that lock. The read lock is what keeps an item from being removed, or
+ * shared with a new snapshot, while its count changes. Every kernel method,
+ * and {@code add(barcode, name)}, {@code setQuantity}, {@code setAttribute},
+ * {@code hasAttribute}, {@code tryReserve} and {@code release}, is atomic; {@code tryReserve} is a
+ * compare-and-set loop, so concurrent reservations never oversell.
+ * {@code applyBatch} takes each stripe's write lock once per batch, so the
+ * operations on any one stripe are applied atomically. The remaining
+ * secondary methods are sequences of atomic calls. Iteration is
+ * weakly consistent: each stripe is copied under its read lock when the
+ * iterator reaches it. {@code snapshot} holds every stripe's write lock only
+ * long enough to start a new copy-on-write epoch, like {@code Inventory1}:
+ * the stripes' maps and items are then shared with the snapshot, and each is
+ * copied the first time a later write changes it, so taking a snapshot costs
+ * time proportional to the number of stripes, not the number of items.
+ * Change listeners are called after the stripe locks are released, so events
+ * from different threads may arrive in any order.
+ *
+ * @author Jacob Witt
+ */
+public final class ConcurrentInventory extends InventorySecondary {
+
+    /*
+     * Private Members
+     */
+
+    /**
+     * Default number of lock stripes.
+     */
+    private static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * Number of bits to shift right when spreading a hash code.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    /**
+     * The lock stripes; the length is a power of 2 and never changes.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private final AtomicInteger size;
+
+    /**
+     * Copy-on-write epoch; a stripe's map or an item of another epoch may be
+     * shared with a snapshot and must be copied before it is changed. Changed
+     * only with every stripe's write lock held.
+     */
+    private int version;
+
+    /**
+     * Whether {@code this} is a read-only snapshot.
+     */
+    private final boolean frozen;
+
+    /**
+     * Atomic access to the quantity of a {@code ConcurrentItem}, for updates
+     * made while holding only its stripe's read lock.
+     */
+    private static final AtomicIntegerFieldUpdater<ConcurrentItem> QUANTITY =
+            AtomicIntegerFieldUpdater.newUpdater(ConcurrentItem.class, "quantity");
+
+    /**
+     * Lock held while locking the stripes of two instances whose identity
+     * hash codes are equal, which {@code lockBoth} cannot otherwise order.
+     */
+    private static final Object TIE_LOCK = new Object();
+
+    /**
+     * One lock stripe: a map of items and the lock guarding it.
+     */
+    private static final class Stripe {
+
+        /**
+         * Lock guarding {@code items}.
+         */
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * Items in this stripe, by barcode.
+         */
+        private Map<String, ConcurrentItem> items =
+                new Map1L<String, ConcurrentItem>();
+
+        /**
+         * Epoch in which {@code items} was created or last copied.
+         */
+        private int version;
+    }
+
+    /**
+     * Returns the smallest power of 2 that is at least {@code n}.
+     *
+     * @param n
+     *            the lower bound
+     * @return the power of 2
+     * @requires 0 < n <= 2^30
+     */
+    private static int powerOfTwoAtLeast(int n) {
+        int result = 1;
+        while (result < n) {
+            result *= 2;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the stripe holding {@code barcode}.
+     *
+     * @param barcode
+     *            the barcode
+     * @return the stripe
+     */
+    private Stripe stripe(String barcode) {
+        return this.stripes[this.stripeIndex(barcode)];
+    }
+
+    /**
+     * Returns the index of the stripe holding {@code barcode}.
+     *
+     * @param barcode
+     *            the barcode
+     * @return the index in {@code stripes}
+     */
+    private int stripeIndex(String barcode) {
+        int h = barcode.hashCode();
+        return (h ^ (h >>> HASH_SHIFT)) & (this.stripes.length - 1);
+    }
+
+    /**
+     * Returns the item with {@code barcode} in {@code s}.
+     *
+     * @param s
+     *            the stripe holding {@code barcode}, with its lock held
+     * @param barcode
+     *            the item's barcode
+     * @return the item
+     * @requires an item with {@code barcode} is in {@code s}
+     */
+    private static ConcurrentItem item(Stripe s, String barcode) {
+        assert s.items.hasKey(barcode)
+                : "Violation of: an item with barcode is in this";
+        return s.items.value(barcode);
+    }
+
+    /**
+     * Throws if {@code this} is a snapshot.
+     *
+     * @throws UnsupportedOperationException
+     *             if {@code this} is a snapshot
+     */
+    private void checkWritable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(
+                    "Inventory snapshots are read-only");
+        }
+    }
+
+    /**
+     * Returns the items of {@code s}, first copying the map if it may be
+     * shared with a snapshot.
+     *
+     * @param s
+     *            a stripe, with its write lock held
+     * @return the map, which may be changed
+     * @updates s
+     */
+    private Map<String, ConcurrentItem> writableItems(Stripe s) {
+        if (s.version != this.version) {
+            Map<String, ConcurrentItem> copy = new Map1L<String, ConcurrentItem>();
+            for (Map.Pair<String, ConcurrentItem> p : s.items) {
+                copy.add(p.key(), p.value());
+            }
+            s.items = copy;
+            s.version = this.version;
+        }
+        return s.items;
+    }
+
+    /**
+     * Returns the item with {@code barcode} in {@code s}, first copying it and
+     * the map if they may be shared with a snapshot.
+     *
+     * @param s
+     *            the stripe holding {@code barcode}, with its write lock held
+     * @param barcode
+     *            the item's barcode
+     * @return the item, which may be changed
+     * @requires an item with {@code barcode} is in {@code s}
+     * @updates s
+     */
+    private ConcurrentItem writableItem(Stripe s, String barcode) {
+        ConcurrentItem item = item(s, barcode);
+        if (item.version != this.version) {
+            item = this.copyOf(item);
+            this.writableItems(s).replaceValue(barcode, item);
+        }
+        return item;
+    }
+
+    /**
+     * Returns the item with {@code barcode} in {@code s}, whose quantity may
+     * be changed while the read lock of {@code s} is held. If the item may be
+     * shared with a snapshot, the read lock is traded for the write lock while
+     * the item is copied.
+     *
+     * @param s
+     *            the stripe holding {@code barcode}, with its read lock held
+     * @param barcode
+     *            the item's barcode
+     * @return the item, whose quantity may be changed
+     * @requires an item with {@code barcode} is in {@code s}
+     * @updates s
+     */
+    private ConcurrentItem updatableItem(Stripe s, String barcode) {
+        ConcurrentItem item = item(s, barcode);
+        if (item.version != this.version) {
+            s.lock.readLock().unlock();
+            s.lock.writeLock().lock();
+            try {
+                item = this.writableItem(s, barcode);
+            } finally {
+                /*
+                 * Downgrade, so no snapshot can share the copy before the
+                 * caller changes it
+                 */
+                s.lock.readLock().lock();
+                s.lock.writeLock().unlock();
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Returns {@code item} if it belongs to the current epoch, or else a copy
+     * of it that does, so that it may be handed to a caller to change.
+     *
+     * @param item
+     *            the item
+     * @return the item or its copy
+     * @ensures ownedCopy = item
+     */
+    private ConcurrentItem ownedCopy(ConcurrentItem item) {
+        ConcurrentItem result = item;
+        if (item.version != this.version) {
+            result = this.copyOf(item);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of {@code item} in the current epoch.
+     *
+     * @param item
+     *            the item to copy
+     * @return the copy
+     * @ensures copyOf = item
+     */
+    private ConcurrentItem copyOf(ConcurrentItem item) {
+        ConcurrentItem copy = new ConcurrentItem();
+        copy.name = item.name;
+        copy.quantity = item.quantity;
+        for (Map.Pair<String, String> attr : item.attributes) {
+            copy.attributes.add(attr.key(), attr.value());
+        }
+        return copy;
+    }
+
+    /**
+     * Acquires the write locks of all stripes, in index order.
+     */
+    private void lockAll() {
+        for (Stripe s : this.stripes) {
+            s.lock.writeLock().lock();
+        }
+    }
+
+    /**
+     * Acquires the write locks of all stripes of {@code a} and {@code b},
+     * taking the two instances in order of identity hash code, so that two
+     * threads locking the same pair from opposite ends cannot deadlock.
+     *
+     * @param a
+     *            one instance
+     * @param b
+     *            the other instance
+     * @requires a /= b
+     */
+    private static void lockBoth(ConcurrentInventory a,
+            ConcurrentInventory b) {
+        int aHash = System.identityHashCode(a);
+        int bHash = System.identityHashCode(b);
+        if (aHash < bHash) {
+            a.lockAll();
+            b.lockAll();
+        } else if (bHash < aHash) {
+            b.lockAll();
+            a.lockAll();
+        } else {
+            synchronized (TIE_LOCK) {
+                a.lockAll();
+                b.lockAll();
+            }
+        }
+    }
+
+    /**
+     * Releases the write locks of all stripes.
+     */
+    private void unlockAll() {
+        for (int i = this.stripes.length - 1; i >= 0; i--) {
+            this.stripes[i].lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @requires every stripe's write lock is held
+     * @ensures every stripe is empty and $this.size = 0
+     */
+    private void createNewRep() {
+        for (Stripe s : this.stripes) {
+            s.items = new Map1L<String, ConcurrentItem>();
+            s.version = this.version;
+        }
+        this.size.set(0);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public ConcurrentInventory() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructor with at least {@code stripeCount} lock stripes.
+     *
+     * @param stripeCount
+     *            the minimum number of stripes; more stripes allow more
+     *            concurrent writers
+     * @requires 0 < stripeCount <= 2^30
+     */
+    public ConcurrentInventory(int stripeCount) {
+        assert stripeCount > 0 : "Violation of: stripeCount > 0";
+        this.stripes = new Stripe[powerOfTwoAtLeast(stripeCount)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.size = new AtomicInteger(0);
+        this.frozen = false;
+    }
+
+    /**
+     * Constructor of a read-only snapshot sharing the stripes' maps of
+     * {@code source}.
+     *
+     * @param source
+     *            the inventory being snapshotted, with every stripe's write
+     *            lock held, which must then treat its maps and items as
+     *            shared
+     */
+    private ConcurrentInventory(ConcurrentInventory source) {
+        this.stripes = new Stripe[source.stripes.length];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+            this.stripes[i].items = source.stripes[i].items;
+        }
+        this.size = new AtomicInteger(source.size.get());
+        /*
+         * No epoch is -1, so every item counts as shared and removal hands
+         * out copies
+         */
+        this.version = -1;
+        this.frozen = true;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public Inventory newInstance() {
+        return new ConcurrentInventory(this.stripes.length);
+    }
+
+    @Override
+    public void clear() {
+        this.checkWritable();
+        this.lockAll();
+        try {
+            this.createNewRep();
+        } finally {
+            this.unlockAll();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+    }
+
+    @Override
+    public void transferFrom(Inventory source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof ConcurrentInventory : "Violation of: source is "
+                + "of dynamic type ConcurrentInventory";
+        ConcurrentInventory localSource = (ConcurrentInventory) source;
+        this.checkWritable();
+        localSource.checkWritable();
+        lockBoth(this, localSource);
+        try {
+            /*
+             * The items of source keep their epochs, so take its epoch along
+             * with them; the maps of source may be shared with its snapshots
+             */
+            this.version = localSource.version;
+            this.createNewRep();
+            if (localSource.stripes.length == this.stripes.length) {
+                for (int i = 0; i < this.stripes.length; i++) {
+                    this.stripes[i].items = localSource.stripes[i].items;
+                    this.stripes[i].version = localSource.stripes[i].version;
+                }
+            } else {
+                for (Stripe from : localSource.stripes) {
+                    for (Map.Pair<String, ConcurrentItem> p : from.items) {
+                        this.stripe(p.key()).items.add(p.key(), p.value());
+                    }
+                }
+            }
+            this.size.set(localSource.size.get());
+            localSource.createNewRep();
+        } finally {
+            this.unlockAll();
+            localSource.unlockAll();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+        if (localSource.hasListeners()) {
+            localSource.fire(InventoryEvent.reset());
+        }
+    }
+
+    /**
+     * InventoryItem representation.
+     */
+    public class ConcurrentItem extends InventoryItemSecondary {
+
+        /**
+         * Copy-on-write epoch of the inventory in which this was created.
+         */
+        private final int version = ConcurrentInventory.this.version;
+
+        /**
+         * Item quantity, updated atomically through QUANTITY.
+         */
+        private volatile int quantity;
+
+        /**
+         * Item name.
+         */
+        private String name;
+
+        /**
+         * Item attributes.
+         */
+        private Map<String, String> attributes;
+
+        /**
+         * Creator of initial representation.
+         *
+         * @ensures this.quantity = 0 and this.name = "" and
+         * this.attributes = <>
+         */
+        private void createNewRep() {
+            this.quantity = 0;
+            this.name = "";
+            this.attributes = new Map1L<String, String>();
+        }
+
+        /**
+         * No-argument constructor.
+         */
+        public ConcurrentItem() {
+            this.createNewRep();
+        }
+
+        /**
+         * Returns a copy of {@code this} with a barcode attribute added.
+         *
+         * @param barcode
+         *            the item's barcode
+         * @return the copy
+         */
+        private ConcurrentItem copyWithBarcode(String barcode) {
+            ConcurrentItem copy = new ConcurrentItem();
+            copy.name = this.name;
+            copy.quantity = this.quantity;
+            for (Map.Pair<String, String> attr : this.attributes) {
+                copy.attributes.add(attr.key(), attr.value());
+            }
+            if (!copy.attributes.hasKey("barcode")) {
+                copy.attributes.add("barcode", barcode);
+            }
+            return copy;
+        }
+
+        @Override
+        public final ConcurrentItem newInstance() {
+            return new ConcurrentItem();
+        }
+
+        @Override
+        public final void clear() {
+            this.createNewRep();
+        }
+
+        @Override
+        public final void transferFrom(InventoryItem source) {
+            assert source != null : "Violation of: source is not null";
+            assert source != this : "Violation of: source is not this";
+            assert source instanceof ConcurrentItem : "Violation of: source is "
+                    + "of dynamic type ConcurrentItem";
+            ConcurrentItem localSource = (ConcurrentItem) source;
+            this.attributes = localSource.attributes;
+            this.name = localSource.name;
+            this.quantity = localSource.quantity;
+            localSource.createNewRep();
+        }
+
+        @Override
+        public final String name() {
+            return this.name;
+        }
+
+        @Override
+        public final int quantity() {
+            return this.quantity;
+        }
+
+        @Override
+        public final Map<String, String> attributes() {
+            return this.attributes;
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(String barcode) {
+        this.add(barcode, "");
+    }
+
+    @Override
+    public Inventory.InventoryItem remove(String barcode) {
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        ConcurrentItem item;
+        s.lock.writeLock().lock();
+        try {
+            item = this.ownedCopy(item(s, barcode));
+            this.writableItems(s).remove(barcode);
+            this.size.decrementAndGet();
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.removed(barcode));
+        }
+        return item;
+    }
+
+    @Override
+    public Inventory.InventoryItem removeAny() {
+        this.checkWritable();
+        assert this.size.get() > 0 : "Violation of: this.size > 0";
+        Map.Pair<String, ConcurrentItem> removed = null;
+        ConcurrentItem item = null;
+        for (int i = 0; i < this.stripes.length && removed == null; i++) {
+            Stripe s = this.stripes[i];
+            s.lock.writeLock().lock();
+            try {
+                if (s.items.size() > 0) {
+                    removed = this.writableItems(s).removeAny();
+                    item = this.ownedCopy(removed.value());
+                    this.size.decrementAndGet();
+                }
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+        }
+        if (removed == null) {
+            throw new NoSuchElementException("Violation of: this.size > 0");
+        }
+        if (!item.attributes.hasKey("barcode")) {
+            item.attributes.add("barcode", removed.key());
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.removed(removed.key()));
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+    @Override
+    public void increment(String barcode) {
+        this.adjustQuantity(barcode, 1);
+    }
+
+    @Override
+    public void decrement(String barcode) {
+        this.adjustQuantity(barcode, -1);
+    }
+
+    @Override
+    public void adjustQuantity(String barcode, int delta) {
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        int updated;
+        s.lock.readLock().lock();
+        try {
+            updated = QUANTITY.addAndGet(this.updatableItem(s, barcode), delta);
+            assert updated >= 0 : "Violation of: quantity(barcode) + delta >= 0";
+        } finally {
+            s.lock.readLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, delta, updated));
+        }
+    }
+
+    @Override
+    public boolean tryReserve(String barcode, int amount) {
+        assert amount >= 0 : "Violation of: amount >= 0";
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        int current;
+        s.lock.readLock().lock();
+        try {
+            ConcurrentItem item = this.updatableItem(s, barcode);
+            current = item.quantity;
+            while (current >= amount
+                    && !QUANTITY.compareAndSet(item, current, current - amount)) {
+                current = item.quantity;
+            }
+        } finally {
+            s.lock.readLock().unlock();
+        }
+        boolean reserved = current >= amount;
+        if (reserved && this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, -amount, current - amount));
+        }
+        return reserved;
+    }
+
+    @Override
+    public int quantity(String barcode) {
+        Stripe s = this.stripe(barcode);
+        s.lock.readLock().lock();
+        try {
+            return item(s, barcode).quantity;
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String name(String barcode) {
+        Stripe s = this.stripe(barcode);
+        s.lock.readLock().lock();
+        try {
+            return item(s, barcode).name;
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setName(String barcode, String name) {
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        s.lock.writeLock().lock();
+        try {
+            this.writableItem(s, barcode).name = name;
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.renamed(barcode, name));
+        }
+    }
+
+    @Override
+    public void addAttribute(String barcode, String name, String content) {
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        s.lock.writeLock().lock();
+        try {
+            ConcurrentItem item = this.writableItem(s, barcode);
+            assert !item.attributes.hasKey(name)
+                    : "Violation of: attributes(barcode) does not contain {@code name}";
+            item.attributes.add(name, content);
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, name, content));
+        }
+    }
+
+    @Override
+    public String getAttribute(String barcode, String name) {
+        Stripe s = this.stripe(barcode);
+        s.lock.readLock().lock();
+        try {
+            return item(s, barcode).attributes.value(name);
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String removeAttribute(String barcode, String name) {
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        String content;
+        s.lock.writeLock().lock();
+        try {
+            content = this.writableItem(s, barcode).attributes.remove(name)
+                    .value();
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, name, null));
+        }
+        return content;
+    }
+
+    @Override
+    public Set<String> attributes(String barcode) {
+        /*
+         * A view could change under the caller once the lock is released, so
+         * this returns a copy
+         */
+        Stripe s = this.stripe(barcode);
+        Set<String> result = new Set1L<String>();
+        s.lock.readLock().lock();
+        try {
+            for (Map.Pair<String, String> attr : item(s, barcode).attributes) {
+                result.add(attr.key());
+            }
+        } finally {
+            s.lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(String barcode) {
+        Stripe s = this.stripe(barcode);
+        s.lock.readLock().lock();
+        try {
+            return s.items.hasKey(barcode);
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Secondary methods overridden for atomicity -----------------------------
+     */
+
+    @Override
+    public void add(String barcode, String name) {
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        s.lock.writeLock().lock();
+        try {
+            assert !s.items.hasKey(barcode) : "Violation of: an item with "
+                    + "barcode is not already in this";
+            ConcurrentItem item = new ConcurrentItem();
+            item.name = name;
+            this.writableItems(s).add(barcode, item);
+            this.size.incrementAndGet();
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.added(barcode, name));
+        }
+    }
+
+    @Override
+    public void setQuantity(String barcode, int quantity) {
+        assert quantity >= 0 : "Violation of: quantity >= 0";
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        int previous;
+        s.lock.readLock().lock();
+        try {
+            previous = QUANTITY.getAndSet(this.updatableItem(s, barcode),
+                    quantity);
+        } finally {
+            s.lock.readLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, quantity - previous,
+                    quantity));
+        }
+    }
+
+    @Override
+    public void setAttribute(String barcode, String name, String content) {
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        s.lock.writeLock().lock();
+        try {
+            ConcurrentItem item = this.writableItem(s, barcode);
+            assert item.attributes.hasKey(name)
+                    : "Violation of: attributes(barcode) contains {@code name}";
+            item.attributes.replaceValue(name, content);
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, name, content));
+        }
+    }
+
+    /**
+     * Sets the "On Order" attribute of {@code item} to {@code count},
+     * removing it if {@code count} is 0.
+     *
+     * @param item
+     *            the item
+     * @param count
+     *            the number on order
+     * @return the new content of the attribute, or null if it was removed
+     * @requires the caller holds the write lock of item's stripe
+     * @updates item.attributes
+     */
+    private static String storeOnOrder(ConcurrentItem item, int count) {
+        String content = null;
+        if (count == 0) {
+            if (item.attributes.hasKey(ON_ORDER)) {
+                item.attributes.remove(ON_ORDER);
+            }
+        } else {
+            content = Integer.toString(count);
+            if (item.attributes.hasKey(ON_ORDER)) {
+                item.attributes.replaceValue(ON_ORDER, content);
+            } else {
+                item.attributes.add(ON_ORDER, content);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Returns the number on order held in {@code item}'s "On Order"
+     * attribute.
+     *
+     * @param item
+     *            the item
+     * @return the number on order
+     * @requires the caller holds a lock of item's stripe
+     */
+    private static int onOrder(ConcurrentItem item) {
+        int result = 0;
+        if (item.attributes.hasKey(ON_ORDER)) {
+            result = parseCount(item.attributes.value(ON_ORDER));
+        }
+        return result;
+    }
+
+    @Override
+    public void placeOrder(String barcode, int amount) {
+        assert amount > 0 : "Violation of: amount > 0";
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        String content;
+        s.lock.writeLock().lock();
+        try {
+            ConcurrentItem item = this.writableItem(s, barcode);
+            content = storeOnOrder(item, onOrder(item) + amount);
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, ON_ORDER, content));
+        }
+    }
+
+    @Override
+    public void receiveOrder(String barcode, int amount) {
+        assert amount > 0 : "Violation of: amount > 0";
+        this.checkWritable();
+        Stripe s = this.stripe(barcode);
+        int updated;
+        String content;
+        s.lock.writeLock().lock();
+        try {
+            ConcurrentItem item = this.writableItem(s, barcode);
+            int onOrder = onOrder(item);
+            assert amount <= onOrder : "Violation of: amount <= onOrder(barcode)";
+            updated = QUANTITY.addAndGet(item, amount);
+            content = storeOnOrder(item, onOrder - amount);
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, amount, updated));
+            this.fire(InventoryEvent.attribute(barcode, ON_ORDER, content));
+        }
+    }
+
+    @Override
+    public int onOrder(String barcode) {
+        Stripe s = this.stripe(barcode);
+        s.lock.readLock().lock();
+        try {
+            return onOrder(item(s, barcode));
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasAttribute(String barcode, String name) {
+        Stripe s = this.stripe(barcode);
+        s.lock.readLock().lock();
+        try {
+            return s.items.hasKey(barcode)
+                    && s.items.value(barcode).attributes.hasKey(name);
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] applyBatch(Sequence<InventoryOp> ops) {
+        this.checkWritable();
+        InventoryOp[] batch = new InventoryOp[ops.length()];
+        int[] stripeOf = new int[batch.length];
+        int n = 0;
+        for (InventoryOp op : ops) {
+            batch[n] = op;
+            stripeOf[n] = this.stripeIndex(op.barcode());
+            n++;
+        }
+        boolean[] results = new boolean[n];
+        boolean report = this.hasListeners();
+        int[] quantities = new int[0];
+        if (report) {
+            quantities = new int[n];
+        }
+        int[] order = InventoryOp.orderByGroup(stripeOf);
+        int k = 0;
+        while (k < n) {
+            /*
+             * Apply the run of operations on one stripe under a single
+             * acquisition of its write lock
+             */
+            Stripe s = this.stripes[stripeOf[order[k]]];
+            s.lock.writeLock().lock();
+            try {
+                do {
+                    int i = order[k];
+                    results[i] = this.apply(s, batch[i]);
+                    if (results[i] && report) {
+                        quantities[i] = s.items.value(batch[i].barcode()).quantity;
+                    }
+                    k++;
+                } while (k < n && stripeOf[order[k]] == stripeOf[order[k - 1]]);
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+        }
+        if (report) {
+            /*
+             * Report outside the locks, in the order the operations were
+             * applied
+             */
+            for (int i : order) {
+                if (results[i]) {
+                    this.fire(InventoryEvent.applied(batch[i], quantities[i]));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Applies {@code op} to stripe {@code s} if it can be applied.
+     *
+     * @param s
+     *            the stripe holding {@code op.barcode()}, with its write lock
+     *            held
+     * @param op
+     *            the operation
+     * @return whether {@code op} was applied
+     */
+    private boolean apply(Stripe s, InventoryOp op) {
+        String barcode = op.barcode();
+        ConcurrentItem item = null;
+        if (s.items.hasKey(barcode)) {
+            item = this.writableItem(s, barcode);
+        }
+        boolean applied = item != null;
+        if (op.kind() == InventoryOp.Kind.ADD) {
+            applied = item == null;
+            if (applied) {
+                item = new ConcurrentItem();
+                item.name = op.name();
+                this.writableItems(s).add(barcode, item);
+                this.size.incrementAndGet();
+            }
+        } else if (applied) {
+            switch (op.kind()) {
+                case ADJUST:
+                    applied = item.quantity + op.delta() >= 0;
+                    if (applied) {
+                        item.quantity += op.delta();
+                    }
+                    break;
+                case SET_NAME:
+                    item.name = op.name();
+                    break;
+                default:
+                    if (item.attributes.hasKey(op.name())) {
+                        item.attributes.replaceValue(op.name(), op.content());
+                    } else {
+                        item.attributes.add(op.name(), op.content());
+                    }
+                    break;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public void forEachItem(Inventory.ItemVisitor visitor) {
+        for (Stripe s : this.stripes) {
+            s.lock.readLock().lock();
+            try {
+                for (Map.Pair<String, ConcurrentItem> p : s.items) {
+                    visitor.visit(p.key(), p.value());
+                }
+            } finally {
+                s.lock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public Inventory snapshot() {
+        if (this.frozen) {
+            return this;
+        }
+        ConcurrentInventory snapshot;
+        this.lockAll();
+        try {
+            /*
+             * From here on every stripe's map and its items are shared, and
+             * are copied the first time this changes them
+             */
+            snapshot = new ConcurrentInventory(this);
+            this.version++;
+        } finally {
+            this.unlockAll();
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Queue<Inventory.InventoryItem> drain() {
+        this.checkWritable();
+        Queue<Inventory.InventoryItem> result = new Queue1L<Inventory.InventoryItem>();
+        for (Stripe s : this.stripes) {
+            s.lock.writeLock().lock();
+            try {
+                /*
+                 * The map may be shared with a snapshot, so it is replaced
+                 * rather than emptied
+                 */
+                for (Map.Pair<String, ConcurrentItem> p : s.items) {
+                    ConcurrentItem item = this.ownedCopy(p.value());
+                    if (!item.attributes.hasKey("barcode")) {
+                        item.attributes.add("barcode", p.key());
+                    }
+                    result.enqueue(item);
+                    this.size.decrementAndGet();
+                }
+                s.items = new Map1L<String, ConcurrentItem>();
+                s.version = this.version;
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Inventory.InventoryItem> iterator() {
+        return new ConcurrentInventoryIterator();
+    }
+
+    /**
+     * Weakly consistent iterator that copies one stripe at a time.
+     */
+    private final class ConcurrentInventoryIterator
+            implements Iterator<Inventory.InventoryItem> {
+
+        /**
+         * The index of the next stripe to copy.
+         */
+        private int stripeIndex;
+
+        /**
+         * Copies of the items of the current stripe not yet returned.
+         */
+        private final Queue<Inventory.InventoryItem> pending;
+
+        /**
+         * No-args constructor.
+         */
+        private ConcurrentInventoryIterator() {
+            this.stripeIndex = 0;
+            this.pending = new Queue1L<Inventory.InventoryItem>();
+        }
+
+        @Override
+        public boolean hasNext() {
+            Stripe[] stripes = ConcurrentInventory.this.stripes;
+            while (this.pending.length() == 0 && this.stripeIndex < stripes.length) {
+                Stripe s = stripes[this.stripeIndex];
+                this.stripeIndex++;
+                s.lock.readLock().lock();
+                try {
+                    for (Map.Pair<String, ConcurrentItem> p : s.items) {
+                        this.pending.enqueue(p.value().copyWithBarcode(p.key()));
+                    }
+                } finally {
+                    s.lock.readLock().unlock();
+                }
+            }
+            return this.pending.length() > 0;
+        }
+
+        @Override
+        public Inventory.InventoryItem next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.pending.dequeue();
+        }
+
+    }
+
+}
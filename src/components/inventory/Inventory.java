@@ -1,6 +1,9 @@
 package components.inventory;
 
 import components.map.Map;
+import components.queue.Queue;
+import components.sequence.Sequence;
+import components.set.Set;
 import components.standard.Standard;
 /**
  * {@code InventoryKernel} enhanced with secondary methods.
@@ -43,6 +46,63 @@ public interface Inventory extends InventoryKernel {
     */
     Map<String, String> attributes();
   }
+
+  /**
+   * Callback receiving each item of an inventory from {@code forEachItem}.
+   */
+  interface ItemVisitor {
+
+    /**
+    * Visits one item.
+    *
+    * @param barcode the item's barcode
+    * @param item the item; it may be reused for later items, so it is only
+    * valid during this call, and it must not be modified
+    */
+    void visit(String barcode, InventoryItem item);
+  }
+
+  /**
+   * Callback receiving each change made to an inventory it is registered
+   * with by {@code addListener}.
+   */
+  interface ChangeListener {
+
+    /**
+    * Receives one change, on the thread that made it and after it was made.
+    * It must not call the inventory that reported it.
+    *
+    * @param event the change
+    */
+    void changed(InventoryEvent event);
+  }
+
+  /**
+   * Types an attribute may be declared with by {@code declareAttribute}.
+   */
+  enum AttributeType {
+    /**
+     * A decimal {@code int}, as written by {@code Integer.toString}.
+     */
+    INT,
+    /**
+     * A decimal {@code long}, as written by {@code Long.toString}.
+     */
+    LONG,
+    /**
+     * A {@code double}, as written by {@code Double.toString}.
+     */
+    DOUBLE,
+    /**
+     * Any string; the type of every attribute not declared otherwise.
+     */
+    STRING,
+    /**
+     * Any string, expected to take few distinct values, such as a category,
+     * supplier code or unit, so that items may share one copy of each value.
+     */
+    CATEGORY
+  }
     /**
     * Search the inventory for an item by name.
     *
@@ -89,7 +149,8 @@ public interface Inventory extends InventoryKernel {
     * @param name the name of the attribute
     * @param content the new content of the attribute
     * @requires an item with {@code barcode} is in {@code this} and
-    * attributes(barcode) contains {@code name}
+    * attributes(barcode) contains {@code name} and [content parses as the type
+    * name is declared with, if name is declared INT, LONG or DOUBLE]
     * @updates this
     * @ensures getAttribute(barcode, name) = content
     */
@@ -123,5 +184,273 @@ public interface Inventory extends InventoryKernel {
      */
     void combine(Inventory i);
 
+    /**
+     * Calls {@code visitor} once for each item in {@code this}, passing the
+     * item's barcode directly rather than as an attribute.
+     *
+     * @param visitor the callback to receive each item
+     * @requires {@code visitor} does not modify {@code this}
+     * @ensures [visitor.visit(barcode, item) has been called exactly once for
+     * each item in this] and this = #this
+     */
+    void forEachItem(ItemVisitor visitor);
+
+    /**
+     * Removes every item from {@code this} and returns them.
+     *
+     * @return the removed items, each with a barcode attribute added
+     * @clears this
+     * @ensures [drain contains exactly the items of #this, each unchanged
+     * except for the addition of a barcode attribute]
+     */
+    Queue<InventoryItem> drain();
+
+    /**
+     * Takes {@code amount} units of the item with {@code barcode} if at least
+     * that many remain, and otherwise leaves the quantity unchanged.
+     *
+     * @param barcode the item's barcode
+     * @param amount the number of units to take
+     * @return true iff the units were taken
+     * @requires an item with {@code barcode} is in {@code this} and
+     * {@code amount} >= 0
+     * @updates this
+     * @ensures tryReserve = (#quantity(barcode) >= amount) and [if tryReserve
+     * then quantity(barcode) = #quantity(barcode) - amount, else
+     * quantity(barcode) = #quantity(barcode)]
+     */
+    boolean tryReserve(String barcode, int amount);
+
+    /**
+     * Returns {@code amount} units, such as an earlier reservation, to the item
+     * with {@code barcode}.
+     *
+     * @param barcode the item's barcode
+     * @param amount the number of units to return
+     * @requires an item with {@code barcode} is in {@code this} and
+     * {@code amount} >= 0
+     * @updates this
+     * @ensures quantity(barcode) = #quantity(barcode) + amount
+     */
+    void release(String barcode, int amount);
+
+    /**
+     * Applies each operation of {@code ops} in turn, skipping any that cannot
+     * be applied (see {@code InventoryOp.Kind}).
+     *
+     * @param ops the operations to apply
+     * @return for each position of {@code ops}, whether that operation was
+     * applied
+     * @updates this
+     * @ensures this = [#this after applying, in order, each operation of ops
+     * that can be applied at that point] and |applyBatch| = |ops| and
+     * [applyBatch[i] = true iff ops[i] was applied]
+     */
+    boolean[] applyBatch(Sequence<InventoryOp> ops);
+
+    /**
+     * Returns an immutable, point-in-time copy of {@code this}: later changes
+     * to {@code this} do not show in it, and every method that would change
+     * it throws {@code UnsupportedOperationException}. Items returned by its
+     * iterator are copies.
+     *
+     * @return a read-only copy of {@code this}
+     * @ensures snapshot = this
+     */
+    Inventory snapshot();
+
+    /**
+     * Sets the reorder point of the item with {@code barcode}, the quantity at
+     * or below which it is reported by {@code lowStockItems}. The reorder
+     * point is kept in the item's "Reorder Point" attribute; an item without
+     * one has a reorder point of 0.
+     *
+     * @param barcode the item's barcode
+     * @param reorderPoint the new reorder point
+     * @requires an item with {@code barcode} is in {@code this} and
+     * reorderPoint >= 0
+     * @updates this
+     * @ensures reorderPoint(barcode) = reorderPoint
+     */
+    void setReorderPoint(String barcode, int reorderPoint);
+
+    /**
+     * Returns the reorder point of the item with {@code barcode}.
+     *
+     * @param barcode the item's barcode
+     * @return the reorder point, or 0 if none was set
+     * @requires an item with {@code barcode} is in {@code this}
+     */
+    int reorderPoint(String barcode);
+
+    /**
+     * Returns the barcodes of the items that need reordering: those whose
+     * quantity is at or below their reorder point and that have nothing on
+     * order.
+     *
+     * @return the barcodes of the low-stock items; this may be a read-only
+     * view that follows later changes to {@code this}, so copy it before
+     * changing {@code this} while iterating it
+     * @ensures lowStockItems = {barcode: item with barcode is in this and
+     * quantity(barcode) <= reorderPoint(barcode) and onOrder(barcode) = 0}
+     */
+    Set<String> lowStockItems();
+
+    /**
+     * Records that {@code amount} more units of the item with {@code barcode}
+     * have been ordered. The number on order is kept in the item's "On
+     * Order" attribute, which an item with nothing on order does not have.
+     *
+     * @param barcode the item's barcode
+     * @param amount the number of units ordered
+     * @requires an item with {@code barcode} is in {@code this} and
+     * amount > 0 and onOrder(barcode) + amount <= Integer.MAX_VALUE
+     * @updates this
+     * @ensures onOrder(barcode) = #onOrder(barcode) + amount
+     */
+    void placeOrder(String barcode, int amount);
+
+    /**
+     * Receives {@code amount} units of the order outstanding for the item
+     * with {@code barcode}, moving them from on order to on hand in one step.
+     *
+     * @param barcode the item's barcode
+     * @param amount the number of units received
+     * @requires an item with {@code barcode} is in {@code this} and
+     * 0 < amount <= onOrder(barcode) and
+     * quantity(barcode) + amount <= Integer.MAX_VALUE
+     * @updates this
+     * @ensures quantity(barcode) = #quantity(barcode) + amount and
+     * onOrder(barcode) = #onOrder(barcode) - amount
+     */
+    void receiveOrder(String barcode, int amount);
+
+    /**
+     * Returns the number of units of the item with {@code barcode} ordered
+     * and not yet received.
+     *
+     * @param barcode the item's barcode
+     * @return the number on order, or 0 if none
+     * @requires an item with {@code barcode} is in {@code this}
+     */
+    int onOrder(String barcode);
+
+    /**
+     * Declares that every attribute named {@code name} holds a value of
+     * {@code type}, so that {@code this} may keep it as a primitive and
+     * return it from the typed getters without parsing or, for CATEGORY,
+     * keep one copy of each distinct content for all items. The string methods
+     * go on working as before for every attribute. Declarations are not part
+     * of the value of {@code this}: {@code clear} keeps them, and they are
+     * not journaled or persisted.
+     *
+     * @param name the attribute name
+     * @param type the type of its values; STRING removes a declaration
+     * @requires for every item in {@code this} with attribute {@code name},
+     * its content is a value of {@code type}
+     */
+    void declareAttribute(String name, AttributeType type);
+
+    /**
+     * Returns the value of attribute {@code name} of the item with
+     * {@code barcode} as an {@code int}.
+     *
+     * @param barcode the item's barcode
+     * @param name the attribute name
+     * @return the value
+     * @requires an item with {@code barcode} is in {@code this} and
+     * hasAttribute(barcode, name) and getAttribute(barcode, name) is a
+     * decimal {@code int}
+     * @ensures intAttribute = [the value of getAttribute(barcode, name)]
+     */
+    int intAttribute(String barcode, String name);
+
+    /**
+     * Returns the value of attribute {@code name} of the item with
+     * {@code barcode} as a {@code long}.
+     *
+     * @param barcode the item's barcode
+     * @param name the attribute name
+     * @return the value
+     * @requires an item with {@code barcode} is in {@code this} and
+     * hasAttribute(barcode, name) and getAttribute(barcode, name) is a
+     * decimal {@code long}
+     * @ensures longAttribute = [the value of getAttribute(barcode, name)]
+     */
+    long longAttribute(String barcode, String name);
+
+    /**
+     * Returns the value of attribute {@code name} of the item with
+     * {@code barcode} as a {@code double}.
+     *
+     * @param barcode the item's barcode
+     * @param name the attribute name
+     * @return the value
+     * @requires an item with {@code barcode} is in {@code this} and
+     * hasAttribute(barcode, name) and getAttribute(barcode, name) is a
+     * number accepted by {@code Double.parseDouble}
+     * @ensures doubleAttribute = [the value of getAttribute(barcode, name)]
+     */
+    double doubleAttribute(String barcode, String name);
+
+    /**
+     * Sets attribute {@code name} of the item with {@code barcode} to
+     * {@code value}, adding it if the item does not have it.
+     *
+     * @param barcode the item's barcode
+     * @param name the attribute name
+     * @param value the value
+     * @requires an item with {@code barcode} is in {@code this}
+     * @updates this
+     * @ensures getAttribute(barcode, name) = Integer.toString(value)
+     */
+    void setIntAttribute(String barcode, String name, int value);
+
+    /**
+     * Sets attribute {@code name} of the item with {@code barcode} to
+     * {@code value}, adding it if the item does not have it.
+     *
+     * @param barcode the item's barcode
+     * @param name the attribute name
+     * @param value the value
+     * @requires an item with {@code barcode} is in {@code this} and
+     * [value is an int if name is declared INT]
+     * @updates this
+     * @ensures getAttribute(barcode, name) = Long.toString(value)
+     */
+    void setLongAttribute(String barcode, String name, long value);
+
+    /**
+     * Sets attribute {@code name} of the item with {@code barcode} to
+     * {@code value}, adding it if the item does not have it.
+     *
+     * @param barcode the item's barcode
+     * @param name the attribute name
+     * @param value the value
+     * @requires an item with {@code barcode} is in {@code this} and
+     * name is not declared INT or LONG
+     * @updates this
+     * @ensures getAttribute(barcode, name) = Double.toString(value)
+     */
+    void setDoubleAttribute(String barcode, String name, double value);
+
+    /**
+     * Registers {@code listener} to receive every later change to
+     * {@code this}.
+     *
+     * @param listener the listener
+     * @ensures listener is called with an InventoryEvent for each later change
+     * to this, until it is removed
+     */
+    void addListener(ChangeListener listener);
+
+    /**
+     * Stops {@code listener} receiving changes to {@code this}; it is
+     * registered once fewer times if it was registered more than once.
+     *
+     * @param listener the listener
+     */
+    void removeListener(ChangeListener listener);
+
 
 }
@@ -1,15 +1,26 @@
 package components.inventory;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import components.map.Map;
 import components.map.Map1L;
-import components.set.Set2;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.sequence.Sequence;
+import components.set.Set1L;
 import components.set.Set;
 
 /**
  * Inventory represented as a hashtable of type Map<String barcode, InventoryItem>.
  *
+ * <p>
+ * {@code snapshot} is O(1): the snapshot shares the hash table, its buckets
+ * and its items with {@code this}, and {@code this} copies the table, a
+ * bucket or an item the first time it changes one after a snapshot was
+ * taken. Snapshots are never written, so they can be read from any thread
+ * once safely published, while {@code this} goes on changing.
+ *
  * @author Jacob Witt
  */
 public final class Inventory1 extends InventorySecondary {
@@ -22,6 +33,16 @@ public final class Inventory1 extends InventorySecondary {
      */
     private static final int DEFAULT_HASH_TABLE_SIZE = 100;
 
+    /**
+     * Default ratio of items to buckets above which the table is grown.
+     */
+    private static final double DEFAULT_LOAD_FACTOR = 0.75;
+
+    /**
+     * Factor by which the hash table grows when it is rehashed.
+     */
+    private static final int GROWTH_FACTOR = 2;
+
     /**
      * Buckets for hashing.
      */
@@ -32,6 +53,80 @@ public final class Inventory1 extends InventorySecondary {
      */
     private int size;
 
+    /**
+     * Ratio of items to buckets above which the table is grown.
+     */
+    private final double loadFactor;
+
+    /**
+     * Size of the hash table created by the constructor, {@code clear} and
+     * {@code transferFrom}.
+     */
+    private final int initialHashTableSize;
+
+    /**
+     * Largest size {@code this} may reach before the table is grown.
+     */
+    private int threshold;
+
+    /**
+     * Barcodes of the items with each non-empty name.
+     */
+    private Map<String, Set<String>> nameIndex;
+
+    /**
+     * Barcodes of the items in {@code lowStockItems}.
+     */
+    private Set<String> lowStock;
+
+    /**
+     * Indices of the non-empty buckets, in positions [0, occupiedCount).
+     */
+    private int[] occupied;
+
+    /**
+     * Number of non-empty buckets.
+     */
+    private int occupiedCount;
+
+    /**
+     * Position of each bucket within {@code occupied}, or -1 if it is empty.
+     */
+    private int[] occupiedPosition;
+
+    /**
+     * Copy-on-write epoch; a bucket or item of another epoch may be shared
+     * with a snapshot and must be copied before it is changed.
+     */
+    private int version;
+
+    /**
+     * Epoch in which each bucket was created or last copied.
+     */
+    private int[] bucketVersion;
+
+    /**
+     * Whether the hash table array is shared with a snapshot.
+     */
+    private boolean tableShared;
+
+    /**
+     * Whether {@code this} is a read-only snapshot.
+     */
+    private boolean frozen;
+
+    /**
+     * Declared attribute types, giving the slot of each typed value in
+     * {@code InventoryItem1.values}; kept by {@code clear}.
+     */
+    private AttributeSchema schema = AttributeSchema.EMPTY;
+
+    /**
+     * Dictionary of the contents held by items of each attribute declared
+     * CATEGORY, made when the first is stored; null in a snapshot.
+     */
+    private Map<String, ValueDictionary> dictionaries;
+
     /**
      * Computes {@code a} mod {@code b} as % should have been defined to work.
      *
@@ -82,6 +177,639 @@ public final class Inventory1 extends InventorySecondary {
             this.hashTable[i] = new Map1L<String, InventoryItem1>();
         }
         this.size = 0;
+        this.threshold = thresholdFor(hashTableSize, this.loadFactor);
+        this.nameIndex = new Map1L<String, Set<String>>();
+        this.lowStock = new Set1L<String>();
+        this.dictionaries = new Map1L<String, ValueDictionary>();
+        this.occupied = new int[hashTableSize];
+        this.occupiedCount = 0;
+        this.occupiedPosition = new int[hashTableSize];
+        Arrays.fill(this.occupiedPosition, -1);
+        /*
+         * Nothing in the new table can be shared, so the epoch starts over
+         */
+        this.version = 0;
+        this.bucketVersion = new int[hashTableSize];
+        this.tableShared = false;
+    }
+
+    /**
+     * Throws if {@code this} is a snapshot.
+     *
+     * @throws UnsupportedOperationException
+     *             if {@code this} is a snapshot
+     */
+    private void checkWritable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(
+                    "Inventory snapshots are read-only");
+        }
+    }
+
+    /**
+     * Returns bucket {@code i}, first copying the table and the bucket if
+     * they may be shared with a snapshot.
+     *
+     * @param i
+     *            the bucket
+     * @return the bucket, which may be changed
+     * @throws UnsupportedOperationException
+     *             if {@code this} is a snapshot
+     * @updates $this.hashTable, $this.bucketVersion, $this.tableShared
+     */
+    private Map1L<String, InventoryItem1> writableBucket(int i) {
+        this.checkWritable();
+        if (this.tableShared) {
+            this.hashTable = this.hashTable.clone();
+            this.tableShared = false;
+        }
+        Map1L<String, InventoryItem1> bucket = this.hashTable[i];
+        if (this.bucketVersion[i] != this.version) {
+            Map1L<String, InventoryItem1> copy = new Map1L<String, InventoryItem1>();
+            for (Map.Pair<String, InventoryItem1> p : bucket) {
+                copy.add(p.key(), p.value());
+            }
+            bucket = copy;
+            this.hashTable[i] = bucket;
+            this.bucketVersion[i] = this.version;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the item with {@code barcode} in {@code bucket}, first copying
+     * it if it may be shared with a snapshot.
+     *
+     * @param bucket
+     *            a bucket returned by {@code writableBucket}
+     * @param barcode
+     *            the item's barcode
+     * @return the item, which may be changed
+     * @requires an item with {@code barcode} is in {@code bucket}
+     * @updates bucket
+     */
+    private InventoryItem1 writableItem(Map1L<String, InventoryItem1> bucket,
+            String barcode) {
+        InventoryItem1 item = bucket.value(barcode);
+        if (item.version != this.version) {
+            item = this.copyOf(item);
+            bucket.replaceValue(barcode, item);
+        }
+        return item;
+    }
+
+    /**
+     * Returns the item with {@code barcode}, first copying its bucket and the
+     * item if they may be shared with a snapshot.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @return the item, which may be changed
+     * @throws UnsupportedOperationException
+     *             if {@code this} is a snapshot
+     * @requires an item with {@code barcode} is in {@code this}
+     */
+    private InventoryItem1 writableItem(String barcode) {
+        int hashBucket = mod(barcode.hashCode(), this.hashTable.length);
+        return this.writableItem(this.writableBucket(hashBucket), barcode);
+    }
+
+    /**
+     * Returns a copy of {@code item} in the current epoch.
+     *
+     * @param item
+     *            the item to copy
+     * @return the copy
+     * @ensures copyOf = item
+     */
+    private InventoryItem1 copyOf(InventoryItem1 item) {
+        InventoryItem1 copy = new InventoryItem1();
+        copy.name = item.name;
+        copy.quantity = item.quantity;
+        copy.reorderPoint = item.reorderPoint;
+        copy.onOrder = item.onOrder;
+        copy.lowStock = item.lowStock;
+        if (item.attributes != null) {
+            copy.attributes = item.attributes.copy();
+        }
+        if (item.values != null) {
+            copy.values = item.values.clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Records that bucket {@code i} has become non-empty.
+     *
+     * @param i
+     *            the bucket
+     * @requires $this.occupiedPosition[i] = -1
+     * @updates $this.occupied, $this.occupiedCount, $this.occupiedPosition
+     */
+    private void markOccupied(int i) {
+        this.occupied[this.occupiedCount] = i;
+        this.occupiedPosition[i] = this.occupiedCount;
+        this.occupiedCount++;
+    }
+
+    /**
+     * Records that bucket {@code i} has become empty, moving the last
+     * occupied bucket into its place in the list.
+     *
+     * @param i
+     *            the bucket
+     * @requires $this.occupiedPosition[i] /= -1
+     * @updates $this.occupied, $this.occupiedCount, $this.occupiedPosition
+     */
+    private void markEmpty(int i) {
+        int position = this.occupiedPosition[i];
+        int last = this.occupied[this.occupiedCount - 1];
+        this.occupied[position] = last;
+        this.occupiedPosition[last] = position;
+        this.occupiedPosition[i] = -1;
+        this.occupiedCount--;
+    }
+
+    /**
+     * Records in the name index that the item with {@code barcode} is named
+     * {@code name}. Unnamed items are not indexed, so that a freshly added
+     * item costs the index nothing.
+     *
+     * @param name
+     *            the item's name
+     * @param barcode
+     *            the item's barcode
+     * @updates $this.nameIndex
+     */
+    private void indexName(String name, String barcode) {
+        if (!name.isEmpty()) {
+            if (!this.nameIndex.hasKey(name)) {
+                this.nameIndex.add(name, new Set1L<String>());
+            }
+            this.nameIndex.value(name).add(barcode);
+        }
+    }
+
+    /**
+     * Removes from the name index the record that the item with
+     * {@code barcode} is named {@code name}.
+     *
+     * @param name
+     *            the item's name
+     * @param barcode
+     *            the item's barcode
+     * @updates $this.nameIndex
+     */
+    private void unindexName(String name, String barcode) {
+        if (!name.isEmpty()) {
+            Set<String> barcodes = this.nameIndex.value(name);
+            barcodes.remove(barcode);
+            if (barcodes.size() == 0) {
+                this.nameIndex.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Brings the low-stock index up to date for {@code item}, after a change
+     * to its quantity, reorder point or number on order.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @updates $this.lowStock, item.lowStock
+     */
+    private void restock(String barcode, InventoryItem1 item) {
+        boolean low = item.quantity <= item.reorderPoint && item.onOrder == 0;
+        if (low != item.lowStock) {
+            item.lowStock = low;
+            if (low) {
+                this.lowStock.add(barcode);
+            } else {
+                this.lowStock.remove(barcode);
+            }
+        }
+    }
+
+    /**
+     * Updates {@code item} and the low-stock index after its attribute
+     * {@code name} was set to {@code content}, or removed if {@code content}
+     * is null.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the new content, or null
+     * @param value
+     *            {@code encode(name, content)}
+     * @updates $this.lowStock, item
+     */
+    private void attributeChanged(String barcode, InventoryItem1 item,
+            String name, String content, long value) {
+        if (name.equals(REORDER_POINT)) {
+            item.reorderPoint = 0;
+            if (content != null) {
+                item.reorderPoint = parseCount(content);
+            }
+            this.restock(barcode, item);
+        } else if (name.equals(ON_ORDER)) {
+            item.onOrder = 0;
+            if (content != null) {
+                item.onOrder = parseCount(content);
+            }
+            this.restock(barcode, item);
+        }
+        this.valueChanged(item, name, content, value);
+    }
+
+    /**
+     * Updates the typed value of {@code item} for attribute {@code name}, if
+     * it is declared with a numeric type, after the attribute was set to
+     * {@code content}, or removed if {@code content} is null.
+     *
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the new content, or null
+     * @param value
+     *            {@code encode(name, content)}
+     * @updates item.values
+     */
+    private void valueChanged(InventoryItem1 item, String name,
+            String content, long value) {
+        int slot = this.schema.slot(name);
+        if (slot >= 0) {
+            if (content != null) {
+                this.storeValue(item, slot, value);
+            } else if (item.values != null && slot < item.values.length) {
+                item.values[slot] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code content} parsed as the type attribute {@code name} is
+     * declared with, as kept in its slot, so that a content that is not a
+     * value of that type is refused before anything is changed.
+     *
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the attribute content, or null
+     * @return the slot value, or 0 if {@code name} is not declared with a
+     *         numeric type or {@code content} is null
+     * @throws NumberFormatException
+     *             if {@code content} is not a value of the type {@code name}
+     *             is declared with
+     */
+    private long encode(String name, String content) {
+        long result = 0;
+        int slot = this.schema.slot(name);
+        if (slot >= 0 && content != null) {
+            result = this.schema.encode(slot, content);
+        }
+        return result;
+    }
+
+    /**
+     * Checks that every content of attribute {@code name}, or of every
+     * attribute if {@code name} is null, held by an item of {@code this} is
+     * a value of the type {@code declared} gives it, so that the items can
+     * be reindexed for {@code declared} without failing part of the way
+     * through the table.
+     *
+     * @param declared
+     *            the schema about to be used
+     * @param name
+     *            the attribute name, or null
+     * @throws NumberFormatException
+     *             if some content is not a value of its declared type
+     */
+    private void checkContents(AttributeSchema declared, String name) {
+        if (declared.size() > 0 && (name == null || declared.slot(name) >= 0)) {
+            for (int k = 0; k < this.occupiedCount; k++) {
+                for (Map.Pair<String, InventoryItem1> p
+                        : this.hashTable[this.occupied[k]]) {
+                    AttributeMap attributes = p.value().attributes;
+                    if (attributes != null && name == null) {
+                        for (Map.Pair<String, String> attr : attributes) {
+                            int slot = declared.slot(attr.key());
+                            if (slot >= 0) {
+                                declared.encode(slot, attr.value());
+                            }
+                        }
+                    } else if (attributes != null && attributes.hasKey(name)) {
+                        declared.encode(declared.slot(name),
+                                attributes.value(name));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the copy of {@code content} an item should keep for attribute
+     * {@code name}: the canonical copy, counted as held once more, if
+     * {@code name} is declared CATEGORY, and otherwise {@code content}.
+     *
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the attribute content
+     * @return the content to keep
+     * @updates $this.dictionaries
+     */
+    private String acquire(String name, String content) {
+        String result = content;
+        if (this.schema.isCategory(name)) {
+            if (!this.dictionaries.hasKey(name)) {
+                this.dictionaries.add(name, new ValueDictionary());
+            }
+            result = this.dictionaries.value(name).acquire(content);
+        }
+        return result;
+    }
+
+    /**
+     * Counts {@code content} of attribute {@code name} as held once less, if
+     * {@code name} is declared CATEGORY.
+     *
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the content an item no longer keeps
+     * @updates $this.dictionaries
+     */
+    private void release(String name, String content) {
+        if (this.schema.isCategory(name)) {
+            this.dictionaries.value(name).release(content);
+        }
+    }
+
+    /**
+     * Releases every CATEGORY content of {@code item}, which is leaving
+     * {@code this}.
+     *
+     * @param item
+     *            the item
+     * @updates $this.dictionaries
+     */
+    private void releaseAll(InventoryItem1 item) {
+        if (this.dictionaries.size() > 0 && item.attributes != null) {
+            for (Map.Pair<String, String> attr : item.attributes) {
+                this.release(attr.key(), attr.value());
+            }
+        }
+    }
+
+    /**
+     * Replaces every CATEGORY content of {@code item}, which is joining
+     * {@code this} or whose attributes were just declared, by its acquired
+     * canonical copy.
+     *
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @param name
+     *            the attribute to canonicalize, or null for all of them
+     * @updates $this.dictionaries, item.attributes
+     */
+    private void acquireAll(InventoryItem1 item, String name) {
+        if (this.schema.hasCategories() && item.attributes != null) {
+            /*
+             * Replacing values while iterating is not allowed, so take the
+             * names first
+             */
+            String[] names = new String[item.attributes.size()];
+            int n = 0;
+            for (Map.Pair<String, String> attr : item.attributes) {
+                if ((name == null || name.equals(attr.key()))
+                        && this.schema.isCategory(attr.key())) {
+                    names[n] = attr.key();
+                    n++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                String content = item.attributes.value(names[i]);
+                item.attributes.replaceValue(names[i],
+                        this.acquire(names[i], content));
+            }
+        }
+    }
+
+    /**
+     * Sets attribute {@code name} of {@code item} to {@code content}, adding
+     * it if {@code item} does not have it.
+     *
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the attribute content
+     * @return the content kept, which is canonical if {@code name} is
+     *         declared CATEGORY
+     * @updates $this.dictionaries, item.attributes
+     */
+    private String storeContent(InventoryItem1 item, String name,
+            String content) {
+        String kept = this.acquire(name, content);
+        if (item.attributes == null) {
+            item.attributes = new AttributeMap();
+        }
+        if (item.attributes.hasKey(name)) {
+            this.release(name, item.attributes.replaceValue(name, kept));
+        } else {
+            item.attributes.add(name, kept);
+        }
+        return kept;
+    }
+
+    /**
+     * Removes attribute {@code name} from {@code item}.
+     *
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @param name
+     *            the attribute name
+     * @return the content removed
+     * @requires name is in DOMAIN(item.attributes)
+     * @updates $this.dictionaries, item.attributes
+     */
+    private String eraseContent(InventoryItem1 item, String name) {
+        String content = item.attributes.remove(name).value();
+        if (item.attributes.size() == 0) {
+            item.attributes = null;
+        }
+        this.release(name, content);
+        return content;
+    }
+
+    /**
+     * Sets the typed value in {@code slot} of {@code item} to {@code value}.
+     *
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @param slot
+     *            the slot
+     * @param value
+     *            the slot value, as returned by {@code AttributeSchema.encode}
+     * @requires 0 <= slot < |$this.schema|
+     * @updates item.values
+     */
+    private void storeValue(InventoryItem1 item, int slot, long value) {
+        if (item.values == null) {
+            item.values = new long[this.schema.size()];
+        } else if (item.values.length <= slot) {
+            item.values = Arrays.copyOf(item.values, this.schema.size());
+        }
+        item.values[slot] = value;
+    }
+
+    /**
+     * Recomputes the typed values of {@code item} from its attributes.
+     *
+     * @param item
+     *            the item, which is not shared with a snapshot
+     * @updates item.values
+     */
+    private void indexValues(InventoryItem1 item) {
+        item.values = null;
+        if (this.schema.size() > 0 && item.attributes != null) {
+            for (Map.Pair<String, String> attr : item.attributes) {
+                int slot = this.schema.slot(attr.key());
+                if (slot >= 0) {
+                    this.storeValue(item, slot,
+                            this.schema.encode(slot, attr.value()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the typed values, and acquires the CATEGORY contents, of
+     * every item with attribute {@code name}, or of every item with any
+     * attribute if {@code name} is null, after the schema changed.
+     *
+     * @param name
+     *            the attribute name, or null
+     * @updates $this.hashTable
+     */
+    private void reindex(String name) {
+        for (int k = 0; k < this.occupiedCount; k++) {
+            int i = this.occupied[k];
+            /*
+             * writableItem may replace items in the bucket, so take the
+             * barcodes first, and copy only buckets that have any
+             */
+            String[] barcodes = new String[this.hashTable[i].size()];
+            int n = 0;
+            for (Map.Pair<String, InventoryItem1> p : this.hashTable[i]) {
+                InventoryItem1 item = p.value();
+                boolean affected;
+                if (name == null) {
+                    affected = item.attributes != null || item.values != null;
+                } else {
+                    affected = item.attributes != null
+                            && item.attributes.hasKey(name);
+                }
+                if (affected) {
+                    barcodes[n] = p.key();
+                    n++;
+                }
+            }
+            if (n > 0) {
+                Map1L<String, InventoryItem1> bucket = this.writableBucket(i);
+                for (int j = 0; j < n; j++) {
+                    InventoryItem1 item = this.writableItem(bucket, barcodes[j]);
+                    this.indexValues(item);
+                    this.acquireAll(item, name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of items a table of {@code hashTableSize} buckets
+     * may hold before it must grow.
+     *
+     * @param hashTableSize
+     *            the size of the hash table
+     * @param loadFactor
+     *            the maximum ratio of items to buckets
+     * @return the largest size allowed for the table
+     * @requires hashTableSize > 0 and loadFactor > 0
+     * @ensures thresholdFor = floor(hashTableSize * loadFactor)
+     */
+    private static int thresholdFor(int hashTableSize, double loadFactor) {
+        return (int) Math.min(Integer.MAX_VALUE, hashTableSize * loadFactor);
+    }
+
+    /**
+     * Returns the hash table size needed to hold {@code expectedSize} items
+     * without growing.
+     *
+     * @param expectedSize
+     *            the number of items expected
+     * @param loadFactor
+     *            the maximum ratio of items to buckets
+     * @return the number of buckets to allocate
+     * @requires expectedSize >= 0 and loadFactor > 0
+     * @ensures tableSizeFor >= DEFAULT_HASH_TABLE_SIZE and
+     * thresholdFor(tableSizeFor, loadFactor) >= expectedSize
+     */
+    private static int tableSizeFor(int expectedSize, double loadFactor) {
+        double needed = Math.ceil(expectedSize / loadFactor);
+        return (int) Math.max(DEFAULT_HASH_TABLE_SIZE,
+            Math.min(Integer.MAX_VALUE - 1, needed));
+    }
+
+    /**
+     * Moves every item into a new hash table of {@code newHashTableSize}
+     * buckets.
+     *
+     * @param newHashTableSize
+     *            the size of the new hash table
+     * @requires newHashTableSize > 0
+     * @updates this
+     * @ensures |$this.hashTable| = newHashTableSize and this = #this
+     */
+    @SuppressWarnings("unchecked")
+    private void rehash(int newHashTableSize) {
+        Map1L<String, InventoryItem1>[] oldTable = this.hashTable;
+        int[] oldOccupied = this.occupied;
+        int oldOccupiedCount = this.occupiedCount;
+        this.hashTable = new Map1L[newHashTableSize];
+        for (int i = 0; i < this.hashTable.length; i++) {
+            this.hashTable[i] = new Map1L<String, InventoryItem1>();
+        }
+        this.occupied = new int[newHashTableSize];
+        this.occupiedCount = 0;
+        this.occupiedPosition = new int[newHashTableSize];
+        Arrays.fill(this.occupiedPosition, -1);
+        this.bucketVersion = new int[newHashTableSize];
+        Arrays.fill(this.bucketVersion, this.version);
+        this.tableShared = false;
+        /*
+         * The old buckets may be shared with a snapshot, so they are read,
+         * not emptied; the items keep their epochs
+         */
+        for (int k = 0; k < oldOccupiedCount; k++) {
+            for (Map.Pair<String, InventoryItem1> p : oldTable[oldOccupied[k]]) {
+                int hashBucket = mod(p.key().hashCode(), newHashTableSize);
+                if (this.hashTable[hashBucket].size() == 0) {
+                    this.markOccupied(hashBucket);
+                }
+                this.hashTable[hashBucket].add(p.key(), p.value());
+            }
+        }
+        this.threshold = thresholdFor(newHashTableSize, this.loadFactor);
     }
     /*
      * Constructors -----------------------------------------------------------
@@ -91,7 +819,62 @@ public final class Inventory1 extends InventorySecondary {
      * No-argument constructor.
      */
     public Inventory1() {
-      this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+      this.loadFactor = DEFAULT_LOAD_FACTOR;
+      this.initialHashTableSize = DEFAULT_HASH_TABLE_SIZE;
+      this.createNewRep(this.initialHashTableSize);
+  }
+
+    /**
+     * Constructor presizing the hash table for {@code expectedSize} items.
+     *
+     * @param expectedSize
+     *            the number of items {@code this} is expected to hold
+     * @requires expectedSize >= 0
+     */
+    public Inventory1(int expectedSize) {
+      this(expectedSize, DEFAULT_LOAD_FACTOR);
+  }
+
+    /**
+     * Constructor presizing the hash table for {@code expectedSize} items and
+     * growing it whenever the ratio of items to buckets exceeds
+     * {@code loadFactor}.
+     *
+     * @param expectedSize
+     *            the number of items {@code this} is expected to hold
+     * @param loadFactor
+     *            the maximum ratio of items to buckets
+     * @requires expectedSize >= 0 and loadFactor > 0
+     */
+    public Inventory1(int expectedSize, double loadFactor) {
+      assert expectedSize >= 0 : "Violation of: expectedSize >= 0";
+      assert loadFactor > 0 : "Violation of: loadFactor > 0";
+      this.loadFactor = loadFactor;
+      this.initialHashTableSize = tableSizeFor(expectedSize, loadFactor);
+      this.createNewRep(this.initialHashTableSize);
+  }
+
+    /**
+     * Constructor of a read-only snapshot sharing the hash table of
+     * {@code source}.
+     *
+     * @param source
+     *            the inventory being snapshotted, which must then treat its
+     *            table, buckets and items as shared
+     */
+    private Inventory1(Inventory1 source) {
+      this.loadFactor = source.loadFactor;
+      this.initialHashTableSize = source.initialHashTableSize;
+      this.hashTable = source.hashTable;
+      this.size = source.size;
+      this.threshold = source.threshold;
+      /*
+       * No epoch is -1, so every item counts as shared; the name index and
+       * occupied list stay with source
+       */
+      this.version = -1;
+      this.frozen = true;
+      this.schema = source.schema;
   }
 
   /*
@@ -109,7 +892,11 @@ public final class Inventory1 extends InventorySecondary {
 
     @Override
     public void clear() {
-      this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+      this.checkWritable();
+      this.createNewRep(this.initialHashTableSize);
+      if (this.hasListeners()) {
+        this.fire(InventoryEvent.reset());
+      }
     }
 
     @Override
@@ -119,9 +906,37 @@ public final class Inventory1 extends InventorySecondary {
       assert source instanceof Inventory1 : "Violation of: source is of "
       + "dynamic type Inventory1";
       Inventory1 localSource = (Inventory1) source;
+      this.checkWritable();
+      localSource.checkWritable();
+      if (this.schema != localSource.schema) {
+        localSource.checkContents(this.schema, null);
+      }
       this.hashTable = localSource.hashTable;
       this.size = localSource.size;
-      localSource.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+      this.threshold = thresholdFor(this.hashTable.length, this.loadFactor);
+      this.nameIndex = localSource.nameIndex;
+      this.lowStock = localSource.lowStock;
+      this.dictionaries = localSource.dictionaries;
+      this.occupied = localSource.occupied;
+      this.occupiedCount = localSource.occupiedCount;
+      this.occupiedPosition = localSource.occupiedPosition;
+      this.version = localSource.version;
+      this.bucketVersion = localSource.bucketVersion;
+      this.tableShared = localSource.tableShared;
+      localSource.createNewRep(localSource.initialHashTableSize);
+      if (this.schema != localSource.schema) {
+        /*
+         * The items were laid out for the declarations of source
+         */
+        this.dictionaries = new Map1L<String, ValueDictionary>();
+        this.reindex(null);
+      }
+      if (this.hasListeners()) {
+        this.fire(InventoryEvent.reset());
+      }
+      if (localSource.hasListeners()) {
+        localSource.fire(InventoryEvent.reset());
+      }
     }
 
   /*
@@ -146,9 +961,37 @@ public final class Inventory1 extends InventorySecondary {
       private String name;
 
       /**
-       * Item attributes.
+       * Item attributes, or null while it has none, so that items without
+       * attributes do not each carry an empty map; {@code attributes()} then
+       * returns {@code AttributeMap.EMPTY}.
+       */
+      private AttributeMap attributes;
+
+      /**
+       * Reorder point, as held in the "Reorder Point" attribute.
+       */
+      private int reorderPoint;
+
+      /**
+       * Number on order, as held in the "On Order" attribute.
+       */
+      private int onOrder;
+
+      /**
+       * Typed values of the declared attributes, by schema slot, or null if
+       * it has none.
+       */
+      private long[] values;
+
+      /**
+       * Whether the barcode of this is in the inventory's low-stock index.
+       */
+      private boolean lowStock;
+
+      /**
+       * Copy-on-write epoch of the inventory in which this was created.
        */
-      private Map<String, String> attributes;
+      private final int version = Inventory1.this.version;
 
     /**
      * Creator of initial representation.
@@ -160,7 +1003,11 @@ public final class Inventory1 extends InventorySecondary {
       private void createNewRep() {
         this.quantity = 0;
         this.name = "";
-        this.attributes = new Map1L<String, String>();
+        this.attributes = null;
+        this.reorderPoint = 0;
+        this.onOrder = 0;
+        this.values = null;
+        this.lowStock = false;
       }
 
     /*
@@ -202,6 +1049,9 @@ public final class Inventory1 extends InventorySecondary {
       this.attributes = localSource.attributes;
       this.name = localSource.name;
       this.quantity = localSource.quantity;
+      this.reorderPoint = localSource.reorderPoint;
+      this.onOrder = localSource.onOrder;
+      this.values = localSource.values;
       localSource.createNewRep();
     }
     /*
@@ -219,6 +1069,25 @@ public final class Inventory1 extends InventorySecondary {
 
     @Override
     public final Map<String, String> attributes() {
+      Map<String, String> result = this.attributes;
+      if (result == null) {
+        result = AttributeMap.EMPTY;
+      }
+      return result;
+    }
+
+    /**
+     * Returns the attribute map of {@code this}, first giving it one of its
+     * own if it has none; for items leaving the inventory, whose map the
+     * caller may change.
+     *
+     * @return the attribute map
+     * @updates this.attributes
+     */
+    private AttributeMap ownAttributes() {
+      if (this.attributes == null) {
+        this.attributes = new AttributeMap();
+      }
       return this.attributes;
     }
   }
@@ -231,8 +1100,22 @@ public final class Inventory1 extends InventorySecondary {
   public void add(String barcode) {
     int hashKey = barcode.hashCode();
     int hashBucket = mod(hashKey, this.hashTable.length);
-    this.hashTable[hashBucket].add(barcode, new InventoryItem1());
+    Map1L<String, InventoryItem1> bucket = this.writableBucket(hashBucket);
+    if (bucket.size() == 0) {
+      this.markOccupied(hashBucket);
+    }
+    InventoryItem1 item = new InventoryItem1();
+    bucket.add(barcode, item);
+    this.indexName("", barcode);
+    this.restock(barcode, item);
     this.size++;
+    if (this.size > this.threshold
+        && this.hashTable.length <= Integer.MAX_VALUE / GROWTH_FACTOR) {
+      this.rehash(this.hashTable.length * GROWTH_FACTOR);
+    }
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.added(barcode, ""));
+    }
   }
 
 
@@ -240,32 +1123,62 @@ public final class Inventory1 extends InventorySecondary {
   public Inventory.InventoryItem remove(String barcode) {
     int hashKey = barcode.hashCode();
     int hashBucket = mod(hashKey, this.hashTable.length);
-    InventoryItem1 item = this.hashTable[hashBucket].value(barcode);
-    this.hashTable[hashBucket].remove(barcode);
+    Map1L<String, InventoryItem1> bucket = this.writableBucket(hashBucket);
+    InventoryItem1 item = bucket.remove(barcode).value();
+    if (bucket.size() == 0) {
+      this.markEmpty(hashBucket);
+    }
+    this.releaseAll(item);
+    this.unindexName(item.name, barcode);
+    if (item.lowStock) {
+      this.lowStock.remove(barcode);
+    }
     this.size--;
+    if (item.version != this.version) {
+      item = this.copyOf(item);
+    }
+    item.ownAttributes();
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.removed(barcode));
+    }
     return item;
   }
 
     @Override
     public Inventory.InventoryItem removeAny()  {
+      this.checkWritable();
       assert this.size > 0 : "Violation of: this.size > 0";
-      InventoryItem1 value = new InventoryItem1();
-      for (int i = 0; i < this.hashTable.length; i++) {
-        if (this.hashTable[i].size() > 0) {
-          Map.Pair<String, InventoryItem1> removed = this.hashTable[i].removeAny();
-            if (removed.value().attributes().hasKey("barcode")) {
-              removed.value().attributes().replaceValue("barcode", removed.key());
-            } else {
-              removed.value().attributes().add("barcode", removed.key());
-            }
-            value = removed.value();
-            this.size--;
-            return value;
-        }
+      /*
+       * Take from the most recently occupied bucket, so no empty buckets are
+       * scanned
+       */
+      int i = this.occupied[this.occupiedCount - 1];
+      Map1L<String, InventoryItem1> bucket = this.writableBucket(i);
+      Map.Pair<String, InventoryItem1> removed = bucket.removeAny();
+      if (bucket.size() == 0) {
+        this.markEmpty(i);
+      }
+      this.unindexName(removed.value().name, removed.key());
+      InventoryItem1 item = removed.value();
+      this.releaseAll(item);
+      if (item.lowStock) {
+        this.lowStock.remove(removed.key());
+      }
+      if (item.version != this.version) {
+        item = this.copyOf(item);
+      }
+      Map<String, String> attributes = item.ownAttributes();
+      if (attributes.hasKey("barcode")) {
+        attributes.replaceValue("barcode", removed.key());
+      } else {
+        attributes.add("barcode", removed.key());
       }
       this.size--;
-      return value;
-    };
+      if (this.hasListeners()) {
+        this.fire(InventoryEvent.removed(removed.key()));
+      }
+      return item;
+    }
 
     @Override
     public int size() {
@@ -274,16 +1187,52 @@ public final class Inventory1 extends InventorySecondary {
 
   @Override
   public void increment(String barcode) {
-    int hashKey = barcode.hashCode();
-    int hashBucket = mod(hashKey, this.hashTable.length);
-    this.hashTable[hashBucket].value(barcode).quantity++;
+    InventoryItem1 item = this.writableItem(barcode);
+    item.quantity++;
+    this.restock(barcode, item);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.quantity(barcode, 1, item.quantity));
+    }
   }
 
   @Override
   public void decrement(String barcode) {
+    InventoryItem1 item = this.writableItem(barcode);
+    item.quantity--;
+    this.restock(barcode, item);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.quantity(barcode, -1, item.quantity));
+    }
+  }
+
+  @Override
+  public void adjustQuantity(String barcode, int delta) {
+    InventoryItem1 item = this.writableItem(barcode);
+    assert item.quantity + delta >= 0
+    : "Violation of: quantity(barcode) + delta >= 0";
+    item.quantity += delta;
+    this.restock(barcode, item);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.quantity(barcode, delta, item.quantity));
+    }
+  }
+
+  @Override
+  public boolean tryReserve(String barcode, int amount) {
+    assert amount >= 0 : "Violation of: amount >= 0";
     int hashKey = barcode.hashCode();
     int hashBucket = mod(hashKey, this.hashTable.length);
-    this.hashTable[hashBucket].value(barcode).quantity--;
+    InventoryItem1 item = this.writableItem(this.writableBucket(hashBucket),
+        barcode);
+    boolean reserved = item.quantity >= amount;
+    if (reserved) {
+      item.quantity -= amount;
+      this.restock(barcode, item);
+      if (this.hasListeners()) {
+        this.fire(InventoryEvent.quantity(barcode, -amount, item.quantity));
+      }
+    }
+    return reserved;
   }
 
   @Override
@@ -303,18 +1252,26 @@ public final class Inventory1 extends InventorySecondary {
 
   @Override
   public void setName(String barcode, String name) {
-    int hashKey = barcode.hashCode();
-    int hashBucket = mod(hashKey, this.hashTable.length);
-    this.hashTable[hashBucket].value(barcode).name = name;
+    InventoryItem1 item = this.writableItem(barcode);
+    this.unindexName(item.name, barcode);
+    item.name = name;
+    this.indexName(name, barcode);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.renamed(barcode, name));
+    }
   }
 
   @Override
   public void addAttribute(String barcode, String name, String content) {
-    int hashKey = barcode.hashCode();
-    int hashBucket = mod(hashKey, this.hashTable.length);
-    assert !this.hashTable[hashBucket].value(barcode).attributes.hasKey(name)
+    long value = this.encode(name, content);
+    InventoryItem1 item = this.writableItem(barcode);
+    assert item.attributes == null || !item.attributes.hasKey(name)
     : "Violation of: attributes(barcode) does not contain {@code name}";
-    this.hashTable[hashBucket].value(barcode).attributes.add(name, content);
+    this.storeContent(item, name, content);
+    this.attributeChanged(barcode, item, name, content, value);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.attribute(barcode, name, content));
+    }
   }
 
   @Override
@@ -326,11 +1283,13 @@ public final class Inventory1 extends InventorySecondary {
 
   @Override
   public String removeAttribute(String barcode, String name) {
-    int hashKey = barcode.hashCode();
-    int hashBucket = mod(hashKey, this.hashTable.length);
-    String val = this.hashTable[hashBucket].value(barcode).attributes.value(name);
-    this.hashTable[hashBucket].value(barcode).attributes.remove(name);
-    return val;
+    InventoryItem1 item = this.writableItem(barcode);
+    String content = this.eraseContent(item, name);
+    this.attributeChanged(barcode, item, name, null, 0);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.attribute(barcode, name, null));
+    }
+    return content;
   }
 
 
@@ -338,16 +1297,7 @@ public final class Inventory1 extends InventorySecondary {
   public Set<String> attributes(String barcode) {
     int hashKey = barcode.hashCode();
     int hashBucket = mod(hashKey, this.hashTable.length);
-    Map<String, String> attr = this.hashTable[hashBucket].value(barcode).attributes();
-    Map<String, String> temp = attr.newInstance();
-    Set<String> result = new Set2<String>();
-    while (attr.size() > 0) {
-      Map.Pair<String, String> current = attr.removeAny();
-      result.add(current.key());
-      temp.add(current.key(), current.value());
-    }
-    this.hashTable[hashBucket].value(barcode).attributes.transferFrom(temp);
-    return result;
+    return new AttributeNames(this.hashTable[hashBucket].value(barcode).attributes);
   }
 
   @Override
@@ -361,6 +1311,507 @@ public final class Inventory1 extends InventorySecondary {
     return result;
   }
 
+  /*
+   * Secondary methods overridden for efficiency ------------------------------
+   */
+
+  @Override
+  public void add(String barcode, String name) {
+    this.insert(barcode, name, 0, null);
+  }
+
+  @Override
+  public void setQuantity(String barcode, int quantity) {
+    assert quantity >= 0 : "Violation of: quantity >= 0";
+    InventoryItem1 item = this.writableItem(barcode);
+    int delta = quantity - item.quantity;
+    item.quantity = quantity;
+    this.restock(barcode, item);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.quantity(barcode, delta, quantity));
+    }
+  }
+
+  @Override
+  public boolean hasAttribute(String barcode, String name) {
+    if (this.size == 0) {
+      return false;
+    }
+    int hashKey = barcode.hashCode();
+    int hashBucket = mod(hashKey, this.hashTable.length);
+    AttributeMap attributes = this.hashTable[hashBucket].value(barcode).attributes;
+    return attributes != null && attributes.hasKey(name);
+  }
+
+  @Override
+  public String search(String name) {
+    String result = "";
+    if (this.nameIndex == null || name.isEmpty()) {
+      /*
+       * A snapshot has no name index of its own, and unnamed items are not
+       * indexed, so scan the buckets
+       */
+      for (int i = 0; i < this.hashTable.length && result.isEmpty(); i++) {
+        for (Map.Pair<String, InventoryItem1> p : this.hashTable[i]) {
+          if (result.isEmpty() && p.value().name.equals(name)) {
+            result = p.key();
+          }
+        }
+      }
+    } else if (this.nameIndex.hasKey(name)) {
+      result = this.nameIndex.value(name).iterator().next();
+    }
+    return result;
+  }
+
+  @Override
+  public void setReorderPoint(String barcode, int reorderPoint) {
+    assert reorderPoint >= 0 : "Violation of: reorderPoint >= 0";
+    InventoryItem1 item = this.writableItem(barcode);
+    String content = this.storeContent(item, REORDER_POINT,
+        Integer.toString(reorderPoint));
+    item.reorderPoint = reorderPoint;
+    this.valueChanged(item, REORDER_POINT, content,
+        this.encode(REORDER_POINT, content));
+    this.restock(barcode, item);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.attribute(barcode, REORDER_POINT, content));
+    }
+  }
+
+  @Override
+  public int reorderPoint(String barcode) {
+    int hashBucket = mod(barcode.hashCode(), this.hashTable.length);
+    return this.hashTable[hashBucket].value(barcode).reorderPoint;
+  }
+
+  /**
+   * Sets the "On Order" attribute of {@code item} to match
+   * {@code item.onOrder}, removing it when that is 0.
+   *
+   * @param item
+   *            the item, which is not shared with a snapshot
+   * @return the new content of the attribute, or null if it was removed
+   * @updates $this.dictionaries, item.attributes
+   */
+  private String storeOnOrder(InventoryItem1 item) {
+    String content = null;
+    if (item.onOrder > 0) {
+      content = this.storeContent(item, ON_ORDER,
+          Integer.toString(item.onOrder));
+    } else if (item.attributes != null && item.attributes.hasKey(ON_ORDER)) {
+      this.eraseContent(item, ON_ORDER);
+    }
+    return content;
+  }
+
+  @Override
+  public void placeOrder(String barcode, int amount) {
+    assert amount > 0 : "Violation of: amount > 0";
+    InventoryItem1 item = this.writableItem(barcode);
+    item.onOrder += amount;
+    String content = this.storeOnOrder(item);
+    this.valueChanged(item, ON_ORDER, content, this.encode(ON_ORDER, content));
+    this.restock(barcode, item);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.attribute(barcode, ON_ORDER, content));
+    }
+  }
+
+  @Override
+  public void receiveOrder(String barcode, int amount) {
+    assert amount > 0 : "Violation of: amount > 0";
+    InventoryItem1 item = this.writableItem(barcode);
+    assert amount <= item.onOrder : "Violation of: amount <= onOrder(barcode)";
+    item.quantity += amount;
+    item.onOrder -= amount;
+    String content = this.storeOnOrder(item);
+    this.valueChanged(item, ON_ORDER, content, this.encode(ON_ORDER, content));
+    this.restock(barcode, item);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.quantity(barcode, amount, item.quantity));
+      this.fire(InventoryEvent.attribute(barcode, ON_ORDER, content));
+    }
+  }
+
+  @Override
+  public int onOrder(String barcode) {
+    int hashBucket = mod(barcode.hashCode(), this.hashTable.length);
+    return this.hashTable[hashBucket].value(barcode).onOrder;
+  }
+
+  @Override
+  public void declareAttribute(String name, Inventory.AttributeType type) {
+    assert name != null : "Violation of: name is not null";
+    assert type != null : "Violation of: type is not null";
+    AttributeSchema declared = this.schema.with(name, type);
+    if (declared != this.schema) {
+      this.checkWritable();
+      this.checkContents(declared, name);
+      if (this.dictionaries.hasKey(name)) {
+        /*
+         * Items keep the contents they have; they are just no longer shared
+         * with later ones
+         */
+        this.dictionaries.remove(name);
+      }
+      this.schema = declared;
+      this.reindex(name);
+    }
+  }
+
+  /**
+   * Returns the item with {@code barcode}, which must have attribute
+   * {@code name}.
+   *
+   * @param barcode
+   *            the item's barcode
+   * @param name
+   *            the attribute name
+   * @return the item
+   * @requires an item with {@code barcode} is in {@code this}
+   */
+  private InventoryItem1 itemWith(String barcode, String name) {
+    int hashBucket = mod(barcode.hashCode(), this.hashTable.length);
+    InventoryItem1 item = this.hashTable[hashBucket].value(barcode);
+    assert item.attributes != null && item.attributes.hasKey(name)
+        : "Violation of: attributes(barcode) contains {@code name}";
+    return item;
+  }
+
+  @Override
+  public int intAttribute(String barcode, String name) {
+    InventoryItem1 item = this.itemWith(barcode, name);
+    int slot = this.schema.slot(name);
+    int result;
+    if (slot >= 0 && this.schema.type(slot) == Inventory.AttributeType.INT) {
+      result = (int) item.values[slot];
+    } else {
+      result = Integer.parseInt(item.attributes.value(name));
+    }
+    return result;
+  }
+
+  @Override
+  public long longAttribute(String barcode, String name) {
+    InventoryItem1 item = this.itemWith(barcode, name);
+    int slot = this.schema.slot(name);
+    long result;
+    if (slot >= 0 && this.schema.type(slot) != Inventory.AttributeType.DOUBLE) {
+      result = item.values[slot];
+    } else {
+      result = Long.parseLong(item.attributes.value(name));
+    }
+    return result;
+  }
+
+  @Override
+  public double doubleAttribute(String barcode, String name) {
+    InventoryItem1 item = this.itemWith(barcode, name);
+    int slot = this.schema.slot(name);
+    double result;
+    if (slot < 0) {
+      result = Double.parseDouble(item.attributes.value(name));
+    } else if (this.schema.type(slot) == Inventory.AttributeType.DOUBLE) {
+      result = Double.longBitsToDouble(item.values[slot]);
+    } else {
+      result = item.values[slot];
+    }
+    return result;
+  }
+
+  /**
+   * Sets attribute {@code name} of the item with {@code barcode} to
+   * {@code content}, adding it if the item does not have it.
+   *
+   * @param barcode
+   *            the item's barcode
+   * @param name
+   *            the attribute name
+   * @param content
+   *            the attribute content
+   * @requires an item with {@code barcode} is in {@code this} and [content
+   *           is a value of the type name is declared with]
+   * @updates this
+   * @ensures getAttribute(barcode, name) = content
+   */
+  private void putAttribute(String barcode, String name, String content) {
+    long value = this.encode(name, content);
+    InventoryItem1 item = this.writableItem(barcode);
+    this.storeContent(item, name, content);
+    this.attributeChanged(barcode, item, name, content, value);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.attribute(barcode, name, content));
+    }
+  }
+
+  @Override
+  public void setIntAttribute(String barcode, String name, int value) {
+    this.putAttribute(barcode, name, Integer.toString(value));
+  }
+
+  @Override
+  public void setLongAttribute(String barcode, String name, long value) {
+    this.putAttribute(barcode, name, Long.toString(value));
+  }
+
+  @Override
+  public void setDoubleAttribute(String barcode, String name, double value) {
+    this.putAttribute(barcode, name, Double.toString(value));
+  }
+
+  @Override
+  public Set<String> lowStockItems() {
+    Set<String> result;
+    if (this.lowStock == null) {
+      /*
+       * A snapshot has no low-stock index of its own, so scan its items
+       */
+      result = super.lowStockItems();
+    } else {
+      result = ReadOnlySet.of(this.lowStock);
+    }
+    return result;
+  }
+
+  /**
+   * Adds an item with all of its fields at once, for bulk loaders that would
+   * otherwise need add, setName, setQuantity and addAttribute per item.
+   *
+   * @param barcode
+   *            the item's barcode
+   * @param name
+   *            the item's name
+   * @param quantity
+   *            the item's quantity
+   * @param attributes
+   *            the item's attributes, which {@code this} takes ownership of,
+   *            or null for none
+   * @requires an item with {@code barcode} is not already in {@code this}
+   *           and quantity >= 0
+   * @updates this
+   * @ensures this = #this * item, where item has the given fields
+   */
+  void insert(String barcode, String name, int quantity,
+      AttributeMap attributes) {
+    int hashBucket = mod(barcode.hashCode(), this.hashTable.length);
+    Map1L<String, InventoryItem1> bucket = this.writableBucket(hashBucket);
+    assert !bucket.hasKey(barcode)
+        : "Violation of: an item with barcode is not already in this";
+    InventoryItem1 item = new InventoryItem1();
+    item.name = name;
+    item.quantity = quantity;
+    if (attributes != null && attributes.size() > 0) {
+      item.attributes = attributes;
+      if (attributes.hasKey(REORDER_POINT)) {
+        item.reorderPoint = parseCount(attributes.value(REORDER_POINT));
+      }
+      if (attributes.hasKey(ON_ORDER)) {
+        item.onOrder = parseCount(attributes.value(ON_ORDER));
+      }
+      this.indexValues(item);
+      this.acquireAll(item, null);
+    }
+    if (bucket.size() == 0) {
+      this.markOccupied(hashBucket);
+    }
+    bucket.add(barcode, item);
+    this.indexName(name, barcode);
+    this.restock(barcode, item);
+    this.size++;
+    if (this.size > this.threshold
+        && this.hashTable.length <= Integer.MAX_VALUE / GROWTH_FACTOR) {
+      this.rehash(this.hashTable.length * GROWTH_FACTOR);
+    }
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.added(barcode, name));
+      if (quantity != 0) {
+        this.fire(InventoryEvent.quantity(barcode, quantity, quantity));
+      }
+      if (item.attributes != null) {
+        for (Map.Pair<String, String> attr : item.attributes) {
+          this.fire(InventoryEvent.attribute(barcode, attr.key(), attr.value()));
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean[] applyBatch(Sequence<InventoryOp> ops) {
+    this.checkWritable();
+    InventoryOp[] batch = new InventoryOp[ops.length()];
+    int adds = 0;
+    int n = 0;
+    for (InventoryOp op : ops) {
+      batch[n] = op;
+      if (op.kind() == InventoryOp.Kind.ADD) {
+        adds++;
+      }
+      n++;
+    }
+    /*
+     * Grow once, up front, so that no add in the pass moves the buckets
+     */
+    long needed = (long) this.size + adds;
+    if (needed > this.threshold && needed <= Integer.MAX_VALUE) {
+      int newSize = tableSizeFor((int) needed, this.loadFactor);
+      if (newSize > this.hashTable.length) {
+        this.rehash(newSize);
+      }
+    }
+    int[] bucket = new int[n];
+    for (int i = 0; i < n; i++) {
+      bucket[i] = mod(batch[i].barcode().hashCode(), this.hashTable.length);
+    }
+    boolean[] results = new boolean[n];
+    String barcode = null;
+    InventoryItem1 item = null;
+    for (int i : InventoryOp.orderByGroup(bucket)) {
+      InventoryOp op = batch[i];
+      Map1L<String, InventoryItem1> b = this.writableBucket(bucket[i]);
+      if (!op.barcode().equals(barcode)) {
+        /*
+         * Resolve each run of operations on one barcode once
+         */
+        barcode = op.barcode();
+        item = null;
+        if (b.hasKey(barcode)) {
+          item = this.writableItem(b, barcode);
+        }
+      }
+      if (op.kind() == InventoryOp.Kind.ADD) {
+        results[i] = item == null;
+        if (results[i]) {
+          item = new InventoryItem1();
+          item.name = op.name();
+          if (b.size() == 0) {
+            this.markOccupied(bucket[i]);
+          }
+          b.add(barcode, item);
+          this.indexName(item.name, barcode);
+          this.restock(barcode, item);
+          this.size++;
+        }
+      } else if (item != null) {
+        switch (op.kind()) {
+          case ADJUST:
+            results[i] = item.quantity + op.delta() >= 0;
+            if (results[i]) {
+              item.quantity += op.delta();
+              this.restock(barcode, item);
+            }
+            break;
+          case SET_NAME:
+            this.unindexName(item.name, barcode);
+            item.name = op.name();
+            this.indexName(item.name, barcode);
+            results[i] = true;
+            break;
+          default:
+            long value = 0;
+            results[i] = true;
+            try {
+              value = this.encode(op.name(), op.content());
+            } catch (NumberFormatException e) {
+              results[i] = false;
+            }
+            if (results[i]) {
+              this.storeContent(item, op.name(), op.content());
+              this.attributeChanged(barcode, item, op.name(), op.content(),
+                  value);
+            }
+            break;
+        }
+      }
+      if (results[i] && this.hasListeners()) {
+        this.fire(InventoryEvent.applied(op, item.quantity));
+      }
+    }
+    if (this.size > this.threshold
+        && this.hashTable.length <= Integer.MAX_VALUE / GROWTH_FACTOR) {
+      this.rehash(this.hashTable.length * GROWTH_FACTOR);
+    }
+    return results;
+  }
+
+  @Override
+  public void forEachItem(Inventory.ItemVisitor visitor) {
+    for (int k = 0; k < this.visitCount(); k++) {
+      for (Map.Pair<String, InventoryItem1> p : this.hashTable[this.visitBucket(k)]) {
+        visitor.visit(p.key(), p.value());
+      }
+    }
+  }
+
+  @Override
+  public Queue<Inventory.InventoryItem> drain() {
+    this.checkWritable();
+    Queue<Inventory.InventoryItem> result = new Queue1L<Inventory.InventoryItem>();
+    for (int k = 0; k < this.occupiedCount; k++) {
+      for (Map.Pair<String, InventoryItem1> p : this.hashTable[this.occupied[k]]) {
+        InventoryItem1 item = p.value();
+        if (item.version != this.version) {
+          item = this.copyOf(item);
+        }
+        Map<String, String> attributes = item.ownAttributes();
+        if (!attributes.hasKey("barcode")) {
+          attributes.add("barcode", p.key());
+        }
+        result.enqueue(item);
+      }
+    }
+    this.createNewRep(this.initialHashTableSize);
+    if (this.hasListeners()) {
+      this.fire(InventoryEvent.reset());
+    }
+    return result;
+  }
+
+  @Override
+  public Inventory snapshot() {
+    if (this.frozen) {
+      return this;
+    }
+    /*
+     * From here on the table, its buckets and its items are shared, and are
+     * copied the first time this changes them
+     */
+    Inventory1 snapshot = new Inventory1(this);
+    this.version++;
+    this.tableShared = true;
+    return snapshot;
+  }
+
+  /**
+   * Returns the number of buckets to visit to see every item: the occupied
+   * ones, or every bucket of a snapshot, which has no occupied list.
+   *
+   * @return the number of buckets to visit
+   */
+  private int visitCount() {
+    int count = this.occupiedCount;
+    if (this.occupied == null) {
+      count = this.hashTable.length;
+    }
+    return count;
+  }
+
+  /**
+   * Returns the {@code k}-th bucket to visit.
+   *
+   * @param k
+   *            the position among the buckets to visit
+   * @return the bucket
+   * @requires 0 <= k < visitCount()
+   */
+  private int visitBucket(int k) {
+    int bucket = k;
+    if (this.occupied != null) {
+      bucket = this.occupied[k];
+    }
+    return bucket;
+  }
+
   @Override
   public Iterator<Inventory.InventoryItem> iterator() {
     return new Inventory1Iterator();
@@ -372,12 +1823,12 @@ public final class Inventory1 extends InventorySecondary {
   private final class Inventory1Iterator implements Iterator<Inventory.InventoryItem> {
 
     /**
-     * The index that the iterator is currently at within the hashMap.
+     * The position among the buckets to visit of the bucket being iterated.
      */
-    private int hashMapIndex;
+    private int occupiedIndex;
 
     /**
-     * The map iterator.
+     * The map iterator, or null before the first bucket is reached.
      */
     private Iterator<Map.Pair<String, InventoryItem1>> mapIterator;
 
@@ -385,26 +1836,23 @@ public final class Inventory1 extends InventorySecondary {
      * No-args constructor.
      */
     private Inventory1Iterator() {
-        this.hashMapIndex = 0;
-        this.mapIterator = Inventory1.this.hashTable[this.hashMapIndex].iterator();
+        this.occupiedIndex = -1;
+        this.mapIterator = null;
     }
 
     @Override
     public boolean hasNext() {
-      if (this.mapIterator.hasNext()) {
-        return true;
-      } else {
-        int tempHashMapIndex = this.hashMapIndex;
-        while (tempHashMapIndex < Inventory1.this.hashTable.length - 1) {
-          tempHashMapIndex++;
-          Iterator<Map.Pair<String, InventoryItem1>> tempMapIterator
-           = Inventory1.this.hashTable[tempHashMapIndex].iterator();
-          if (tempMapIterator.hasNext()) {
-            return true;
-          }
-        }
+      /*
+       * Advance through the occupied buckets only, never visiting an empty
+       * one
+       */
+      while ((this.mapIterator == null || !this.mapIterator.hasNext())
+          && this.occupiedIndex < Inventory1.this.visitCount() - 1) {
+        this.occupiedIndex++;
+        this.mapIterator = Inventory1.this.hashTable[
+            Inventory1.this.visitBucket(this.occupiedIndex)].iterator();
       }
-      return false;
+      return this.mapIterator != null && this.mapIterator.hasNext();
     }
 
     @Override
@@ -412,33 +1860,14 @@ public final class Inventory1 extends InventorySecondary {
       if (!this.hasNext()) {
         throw new NoSuchElementException();
       }
-      if (this.mapIterator.hasNext()) {
-        Map.Pair<String, InventoryItem1> result = this.mapIterator.next();
-        if (result.value().attributes.hasKey("barcode")) {
-          result.value().attributes.remove("barcode");
-        }
-        result.value().attributes().add("barcode", result.key());
-        return result.value();
-      } else {
-        while (this.hashMapIndex < Inventory1.this.hashTable.length - 1) {
-          this.hashMapIndex++;
-          this.mapIterator = Inventory1.this.hashTable[this.hashMapIndex].iterator();
-          if (this.mapIterator.hasNext()) {
-            Map.Pair<String, InventoryItem1> result = this.mapIterator.next();
-            if (result.value().attributes.hasKey("barcode")) {
-              result.value().attributes.remove("barcode");
-            }
-            result.value().attributes().add("barcode", result.key());
-            return result.value();
-          }
-        }
-      }
+      Map.Pair<String, InventoryItem1> result = this.mapIterator.next();
       /*
-       * This return statement will never execute.  The only case in which one of
-       * the above returns would not next element is when this does not have next,
-       * in which case a NoSuchElementException is thrown.
+       * Hand out a copy carrying the barcode, so that iterating never
+       * changes a stored item; forEachItem visits without copying
        */
-      return null;
+      InventoryItem1 item = Inventory1.this.copyOf(result.value());
+      item.ownAttributes().add("barcode", result.key());
+      return item;
     }
 
   }
@@ -0,0 +1,1240 @@
+package components.inventory;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.set.Set;
+
+/**
+ * Inventory represented as parallel arrays of barcodes, names, quantities, and
+ * attribute maps, indexed by an open-addressing hash table with linear
+ * probing.
+ *
+ * <p>
+ * Items are stored densely in positions [0, size) of the parallel arrays, so
+ * there is no per-item object and no per-bucket map. The index {@code slots}
+ * holds, for each occupied slot, one more than the position of the item whose
+ * barcode hashes to (or was displaced into) that slot; 0 marks an empty slot.
+ * Removal moves the last item into the hole and closes the probe sequence by
+ * shifting later slots back, so no tombstones are needed.
+ *
+ * <p>
+ * Barcodes made only of digits (without a leading zero, and short enough to
+ * fit) are encoded once into a {@code long} and compared as such; their
+ * {@code barcodes} entry is null and the string is rebuilt only when an item
+ * leaves {@code this}. Other barcodes are hashed and compared as strings. Both
+ * kinds share the same index.
+ *
+ * <p>
+ * {@code snapshot} is O(1): the snapshot shares the arrays, the name chains
+ * and the attribute maps with {@code this}. The representation is split into
+ * four parts (the barcode index, the names, the quantities and the
+ * attributes), and {@code this} copies a part the first time it changes it
+ * after a snapshot was taken, so a run of quantity changes copies only
+ * {@code quantities}. An attribute map is copied the first time its own item
+ * changes it.
+ *
+ * @author Jacob Witt
+ */
+public final class Inventory2 extends InventorySecondary {
+
+    /*
+     * Private Members
+     */
+
+    /**
+     * Default number of items the arrays can hold before growing.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Maximum number of slots in the index.
+     */
+    private static final int MAXIMUM_SLOTS = 1 << 30;
+
+    /**
+     * Multiplier used to spread hash codes over the index.
+     */
+    private static final int HASH_MIXER = 0x9E3779B9;
+
+    /**
+     * Number of bits to shift right when folding a mixed hash code.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    /**
+     * Number of bits to shift right when folding a long key into an int.
+     */
+    private static final int LONG_SHIFT = 32;
+
+    /**
+     * Maximum number of digits in a barcode encoded as a long.
+     */
+    private static final int MAXIMUM_DIGITS = 18;
+
+    /**
+     * Radix of numeric barcodes.
+     */
+    private static final int RADIX = 10;
+
+    /**
+     * Value of {@code numericKeys} for items whose barcode is not numeric.
+     */
+    private static final long NOT_NUMERIC = -1;
+
+    /**
+     * Part of the representation made of {@code barcodes},
+     * {@code numericKeys}, {@code hashes} and {@code slots}.
+     */
+    private static final int KEYS = 1;
+
+    /**
+     * Part of the representation made of {@code names}, {@code nameHeads},
+     * {@code nameNext} and {@code namePrev}.
+     */
+    private static final int NAMES = 2;
+
+    /**
+     * Part of the representation made of {@code quantities}.
+     */
+    private static final int QUANTITIES = 4;
+
+    /**
+     * Part of the representation made of the {@code attributes} array.
+     */
+    private static final int ATTRIBUTES = 8;
+
+    /**
+     * Every part of the representation.
+     */
+    private static final int ALL_PARTS = KEYS | NAMES | QUANTITIES | ATTRIBUTES;
+
+    /**
+     * Item barcodes, by position; null for items with a numeric barcode.
+     */
+    private String[] barcodes;
+
+    /**
+     * Encoded numeric barcodes, by position; NOT_NUMERIC for items whose
+     * barcode is kept in {@code barcodes}.
+     */
+    private long[] numericKeys;
+
+    /**
+     * Spread hash codes of item barcodes, by position.
+     */
+    private int[] hashes;
+
+    /**
+     * Item names, by position.
+     */
+    private String[] names;
+
+    /**
+     * Item quantities, by position.
+     */
+    private int[] quantities;
+
+    /**
+     * Item attributes, by position; null for items without attributes.
+     */
+    private Map<String, String>[] attributes;
+
+    /**
+     * Open-addressing index from barcode hash to position + 1.
+     */
+    private int[] slots;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Position of one item with each name, the head of that name's chain.
+     */
+    private Map<String, Integer> nameHeads;
+
+    /**
+     * Next item with the same name, by position, as position + 1; 0 ends the
+     * chain.
+     */
+    private int[] nameNext;
+
+    /**
+     * Previous item with the same name, by position, as position + 1; 0 for
+     * the head of the chain.
+     */
+    private int[] namePrev;
+
+    /**
+     * Capacity requested by the constructor, used by {@code clear} and
+     * {@code transferFrom}.
+     */
+    private final int initialCapacity;
+
+    /**
+     * Parts of the representation shared with a snapshot, which must be
+     * copied before they are changed.
+     */
+    private int shared;
+
+    /**
+     * Positions whose attribute map is not shared with a snapshot, or null if
+     * no snapshot shares any attribute map.
+     */
+    private BitSet ownedAttributes;
+
+    /**
+     * Whether {@code this} is a read-only snapshot.
+     */
+    private boolean frozen;
+
+    /**
+     * Returns the smallest power of two number of slots that keeps the index
+     * at most half full when holding {@code capacity} items.
+     *
+     * @param capacity
+     *            the number of items to hold
+     * @return the number of slots to allocate
+     * @requires capacity > 0
+     * @ensures slotsFor is a power of 2 and slotsFor >= 2 * capacity
+     */
+    private static int slotsFor(int capacity) {
+        int n = 1;
+        while (n < 2 * (long) capacity && n < MAXIMUM_SLOTS) {
+            n *= 2;
+        }
+        return n;
+    }
+
+    /**
+     * Spreads the hash code of {@code barcode} so that its low bits are
+     * usable as an index position.
+     *
+     * @param barcode
+     *            the barcode to hash
+     * @return the spread hash code
+     */
+    private static int hash(String barcode) {
+        int h = barcode.hashCode() * HASH_MIXER;
+        return h ^ (h >>> HASH_SHIFT);
+    }
+
+    /**
+     * Spreads the numeric barcode {@code key} so that its low bits are usable
+     * as an index position.
+     *
+     * @param key
+     *            the encoded barcode to hash
+     * @return the spread hash code
+     */
+    private static int hash(long key) {
+        int h = (int) (key ^ (key >>> LONG_SHIFT)) * HASH_MIXER;
+        return h ^ (h >>> HASH_SHIFT);
+    }
+
+    /**
+     * Returns {@code barcode} encoded as a long if it is made only of digits,
+     * has no leading zero, and has at most MAXIMUM_DIGITS digits.
+     *
+     * @param barcode
+     *            the barcode to encode
+     * @return the value of {@code barcode}, or NOT_NUMERIC
+     * @ensures numericKey = NOT_NUMERIC or
+     * Long.toString(numericKey) = barcode
+     */
+    private static long numericKey(String barcode) {
+        int length = barcode.length();
+        if (length == 0 || length > MAXIMUM_DIGITS
+                || (barcode.charAt(0) == '0' && length > 1)) {
+            return NOT_NUMERIC;
+        }
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = barcode.charAt(i) - '0';
+            if (digit < 0 || digit >= RADIX) {
+                return NOT_NUMERIC;
+            }
+            key = key * RADIX + digit;
+        }
+        return key;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param capacity
+     *            the number of items the arrays can hold before growing
+     * @requires capacity > 0
+     * @ensures <pre>
+     * |$this.barcodes| = capacity  and
+     * $this.slots = [all zeros, of length slotsFor(capacity)]  and
+     * $this.size = 0
+     * </pre>
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void createNewRep(int capacity) {
+        this.barcodes = new String[capacity];
+        this.numericKeys = new long[capacity];
+        this.hashes = new int[capacity];
+        this.names = new String[capacity];
+        this.quantities = new int[capacity];
+        this.attributes = new Map[capacity];
+        this.slots = new int[slotsFor(capacity)];
+        this.size = 0;
+        this.nameHeads = new Map1L<String, Integer>();
+        this.nameNext = new int[capacity];
+        this.namePrev = new int[capacity];
+        this.shared = 0;
+        this.ownedAttributes = null;
+    }
+
+    /**
+     * Throws if {@code this} is a snapshot.
+     *
+     * @throws UnsupportedOperationException
+     *             if {@code this} is a snapshot
+     */
+    private void checkWritable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(
+                    "Inventory snapshots are read-only");
+        }
+    }
+
+    /**
+     * Copies those of {@code parts} that may be shared with a snapshot, so
+     * that they can be changed.
+     *
+     * @param parts
+     *            the parts about to be changed
+     * @throws UnsupportedOperationException
+     *             if {@code this} is a snapshot
+     * @updates this
+     * @ensures this = #this and $this.shared = #$this.shared \ parts
+     */
+    private void writable(int parts) {
+        this.checkWritable();
+        int copy = this.shared & parts;
+        if ((copy & KEYS) != 0) {
+            this.barcodes = this.barcodes.clone();
+            this.numericKeys = this.numericKeys.clone();
+            this.hashes = this.hashes.clone();
+            this.slots = this.slots.clone();
+        }
+        if ((copy & NAMES) != 0) {
+            this.names = this.names.clone();
+            this.nameNext = this.nameNext.clone();
+            this.namePrev = this.namePrev.clone();
+            Map<String, Integer> heads = new Map1L<String, Integer>();
+            for (Map.Pair<String, Integer> h : this.nameHeads) {
+                heads.add(h.key(), h.value());
+            }
+            this.nameHeads = heads;
+        }
+        if ((copy & QUANTITIES) != 0) {
+            this.quantities = this.quantities.clone();
+        }
+        if ((copy & ATTRIBUTES) != 0) {
+            this.attributes = this.attributes.clone();
+        }
+        this.shared &= ~parts;
+    }
+
+    /**
+     * Returns the attribute map of the item at position {@code p}, first
+     * copying it if it may be shared with a snapshot.
+     *
+     * @param p
+     *            the position of the item
+     * @return its attribute map, which may be changed, or null if it has none
+     * @requires 0 <= p < $this.size and ATTRIBUTES is not in $this.shared
+     * @updates $this.attributes, $this.ownedAttributes
+     */
+    private Map<String, String> writableAttributes(int p) {
+        Map<String, String> attr = this.attributes[p];
+        if (this.ownedAttributes != null && !this.ownedAttributes.get(p)) {
+            if (attr != null) {
+                Map<String, String> copy = new Map1L<String, String>();
+                for (Map.Pair<String, String> a : attr) {
+                    copy.add(a.key(), a.value());
+                }
+                attr = copy;
+                this.attributes[p] = attr;
+            }
+            this.ownedAttributes.set(p);
+        }
+        return attr;
+    }
+
+    /**
+     * Links the item at position {@code p} into the chain of items with its
+     * name, just after the head so that the head need not change.
+     *
+     * @param p
+     *            the position of an item not in any chain
+     * @updates $this.nameHeads, $this.nameNext, $this.namePrev
+     */
+    private void indexName(int p) {
+        String name = this.names[p];
+        this.namePrev[p] = 0;
+        if (this.nameHeads.hasKey(name)) {
+            int head = this.nameHeads.value(name);
+            int next = this.nameNext[head];
+            this.nameNext[p] = next;
+            this.namePrev[p] = head + 1;
+            if (next != 0) {
+                this.namePrev[next - 1] = p + 1;
+            }
+            this.nameNext[head] = p + 1;
+        } else {
+            this.nameNext[p] = 0;
+            this.nameHeads.add(name, p);
+        }
+    }
+
+    /**
+     * Unlinks the item at position {@code p} from the chain of items with its
+     * name.
+     *
+     * @param p
+     *            the position of an item in a chain
+     * @updates $this.nameHeads, $this.nameNext, $this.namePrev
+     */
+    private void unindexName(int p) {
+        int prev = this.namePrev[p];
+        int next = this.nameNext[p];
+        if (prev == 0) {
+            if (next == 0) {
+                this.nameHeads.remove(this.names[p]);
+            } else {
+                this.nameHeads.replaceValue(this.names[p], next - 1);
+            }
+        } else {
+            this.nameNext[prev - 1] = next;
+        }
+        if (next != 0) {
+            this.namePrev[next - 1] = prev;
+        }
+    }
+
+    /**
+     * Makes the chain of items with the name of the item at position
+     * {@code from} refer to position {@code to} instead.
+     *
+     * @param from
+     *            the old position of the item
+     * @param to
+     *            its new position
+     * @updates $this.nameHeads, $this.nameNext, $this.namePrev
+     */
+    private void moveName(int from, int to) {
+        int prev = this.namePrev[from];
+        int next = this.nameNext[from];
+        if (prev == 0) {
+            this.nameHeads.replaceValue(this.names[from], to);
+        } else {
+            this.nameNext[prev - 1] = to + 1;
+        }
+        if (next != 0) {
+            this.namePrev[next - 1] = to + 1;
+        }
+        this.namePrev[to] = prev;
+        this.nameNext[to] = next;
+    }
+
+    /**
+     * Returns the position of the item with the non-numeric {@code barcode},
+     * or -1 if there is no such item.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param h
+     *            the spread hash code of {@code barcode}
+     * @return the position of the item, or -1
+     */
+    private int find(String barcode, int h) {
+        int mask = this.slots.length - 1;
+        int i = h & mask;
+        int s = this.slots[i];
+        while (s != 0) {
+            int p = s - 1;
+            if (this.hashes[p] == h && this.barcodes[p] != null
+                    && this.barcodes[p].equals(barcode)) {
+                return p;
+            }
+            i = (i + 1) & mask;
+            s = this.slots[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the item with numeric barcode {@code key}, or
+     * -1 if there is no such item.
+     *
+     * @param key
+     *            the item's encoded barcode
+     * @return the position of the item, or -1
+     * @requires key >= 0
+     */
+    private int find(long key) {
+        int mask = this.slots.length - 1;
+        int i = hash(key) & mask;
+        int s = this.slots[i];
+        while (s != 0) {
+            int p = s - 1;
+            if (this.numericKeys[p] == key) {
+                return p;
+            }
+            i = (i + 1) & mask;
+            s = this.slots[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the item with {@code barcode}, or -1 if there is
+     * no such item.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @return the position of the item, or -1
+     */
+    private int find(String barcode) {
+        long key = numericKey(barcode);
+        if (key != NOT_NUMERIC) {
+            return this.find(key);
+        }
+        return this.find(barcode, hash(barcode));
+    }
+
+    /**
+     * Returns the position of the item with {@code barcode}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @return the position of the item
+     * @requires an item with {@code barcode} is in {@code this}
+     */
+    private int position(String barcode) {
+        int p = this.find(barcode);
+        assert p >= 0 : "Violation of: an item with barcode is in this";
+        return p;
+    }
+
+    /**
+     * Returns the barcode of the item at position {@code p}.
+     *
+     * @param p
+     *            the position of the item
+     * @return the item's barcode
+     * @requires 0 <= p < $this.size
+     */
+    private String barcodeAt(int p) {
+        String barcode = this.barcodes[p];
+        if (barcode == null) {
+            barcode = Long.toString(this.numericKeys[p]);
+        }
+        return barcode;
+    }
+
+    /**
+     * Returns the index slot that refers to position {@code p}.
+     *
+     * @param p
+     *            the position of an item
+     * @return the slot holding p + 1
+     * @requires 0 <= p < $this.size
+     */
+    private int slotOf(int p) {
+        int mask = this.slots.length - 1;
+        int i = this.hashes[p] & mask;
+        while (this.slots[i] != p + 1) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Places position {@code p} in the first free slot of its probe sequence.
+     *
+     * @param p
+     *            the position of an item not yet in the index
+     * @updates $this.slots
+     */
+    private void insertSlot(int p) {
+        int mask = this.slots.length - 1;
+        int i = this.hashes[p] & mask;
+        while (this.slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        this.slots[i] = p + 1;
+    }
+
+    /**
+     * Empties slot {@code i}, shifting back any later slots of the same
+     * cluster that could no longer be reached.
+     *
+     * @param i
+     *            the slot to empty
+     * @updates $this.slots
+     */
+    private void deleteSlot(int i) {
+        int mask = this.slots.length - 1;
+        int hole = i;
+        int j = (hole + 1) & mask;
+        while (this.slots[j] != 0) {
+            int home = this.hashes[this.slots[j] - 1] & mask;
+            /*
+             * The entry at j may move into the hole unless its home slot lies
+             * cyclically in (hole, j]
+             */
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                this.slots[hole] = this.slots[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        this.slots[hole] = 0;
+    }
+
+    /**
+     * Removes the item at position {@code p} from the arrays and the index,
+     * moving the last item into its place.
+     *
+     * @param p
+     *            the position to remove
+     * @requires 0 <= p < $this.size
+     * @updates this
+     */
+    private void removeAt(int p) {
+        this.unindexName(p);
+        this.deleteSlot(this.slotOf(p));
+        int last = this.size - 1;
+        if (p != last) {
+            this.slots[this.slotOf(last)] = p + 1;
+            this.moveName(last, p);
+            this.barcodes[p] = this.barcodes[last];
+            this.numericKeys[p] = this.numericKeys[last];
+            this.hashes[p] = this.hashes[last];
+            this.names[p] = this.names[last];
+            this.quantities[p] = this.quantities[last];
+            this.attributes[p] = this.attributes[last];
+            if (this.ownedAttributes != null) {
+                this.ownedAttributes.set(p, this.ownedAttributes.get(last));
+            }
+        }
+        if (this.ownedAttributes != null) {
+            this.ownedAttributes.clear(last);
+        }
+        this.barcodes[last] = null;
+        this.names[last] = null;
+        this.attributes[last] = null;
+        this.size--;
+    }
+
+    /**
+     * Grows the arrays to hold {@code capacity} items, rebuilding the index
+     * if it would become more than half full.
+     *
+     * @param capacity
+     *            the new capacity
+     * @requires capacity > $this.size
+     * @updates this
+     * @ensures this = #this and |$this.barcodes| = capacity
+     */
+    private void grow(int capacity) {
+        this.barcodes = Arrays.copyOf(this.barcodes, capacity);
+        this.numericKeys = Arrays.copyOf(this.numericKeys, capacity);
+        this.hashes = Arrays.copyOf(this.hashes, capacity);
+        this.names = Arrays.copyOf(this.names, capacity);
+        this.quantities = Arrays.copyOf(this.quantities, capacity);
+        this.attributes = Arrays.copyOf(this.attributes, capacity);
+        this.nameNext = Arrays.copyOf(this.nameNext, capacity);
+        this.namePrev = Arrays.copyOf(this.namePrev, capacity);
+        int slotCount = slotsFor(capacity);
+        if (slotCount > this.slots.length) {
+            this.slots = new int[slotCount];
+            for (int p = 0; p < this.size; p++) {
+                this.insertSlot(p);
+            }
+        }
+    }
+
+    /**
+     * Removes the item at position {@code p} and returns it as an
+     * {@code InventoryItem2}.
+     *
+     * @param p
+     *            the position of the item
+     * @return the removed item
+     * @requires 0 <= p < $this.size and $this.shared = {}
+     * @updates this
+     */
+    private InventoryItem2 detach(int p) {
+        InventoryItem2 item = new InventoryItem2();
+        item.name = this.names[p];
+        item.quantity = this.quantities[p];
+        Map<String, String> attr = this.writableAttributes(p);
+        if (attr != null) {
+            item.attributes.transferFrom(attr);
+        }
+        this.removeAt(p);
+        return item;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Inventory2() {
+        this.initialCapacity = DEFAULT_CAPACITY;
+        this.createNewRep(this.initialCapacity);
+    }
+
+    /**
+     * Constructor presizing the arrays for {@code expectedSize} items.
+     *
+     * @param expectedSize
+     *            the number of items {@code this} is expected to hold
+     * @requires expectedSize >= 0
+     */
+    public Inventory2(int expectedSize) {
+        assert expectedSize >= 0 : "Violation of: expectedSize >= 0";
+        this.initialCapacity = Math.max(DEFAULT_CAPACITY, expectedSize);
+        this.createNewRep(this.initialCapacity);
+    }
+
+    /**
+     * Constructor of a read-only snapshot sharing the representation of
+     * {@code source}.
+     *
+     * @param source
+     *            the inventory being snapshotted, which must then treat every
+     *            part of its representation as shared
+     */
+    private Inventory2(Inventory2 source) {
+        this.initialCapacity = source.initialCapacity;
+        this.barcodes = source.barcodes;
+        this.numericKeys = source.numericKeys;
+        this.hashes = source.hashes;
+        this.names = source.names;
+        this.quantities = source.quantities;
+        this.attributes = source.attributes;
+        this.slots = source.slots;
+        this.size = source.size;
+        this.nameHeads = source.nameHeads;
+        this.nameNext = source.nameNext;
+        this.namePrev = source.namePrev;
+        this.frozen = true;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public Inventory newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public void clear() {
+        this.checkWritable();
+        this.createNewRep(this.initialCapacity);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+    }
+
+    @Override
+    public void transferFrom(Inventory source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Inventory2 : "Violation of: source is of "
+                + "dynamic type Inventory2";
+        Inventory2 localSource = (Inventory2) source;
+        this.checkWritable();
+        localSource.checkWritable();
+        this.barcodes = localSource.barcodes;
+        this.numericKeys = localSource.numericKeys;
+        this.hashes = localSource.hashes;
+        this.names = localSource.names;
+        this.quantities = localSource.quantities;
+        this.attributes = localSource.attributes;
+        this.slots = localSource.slots;
+        this.size = localSource.size;
+        this.nameHeads = localSource.nameHeads;
+        this.nameNext = localSource.nameNext;
+        this.namePrev = localSource.namePrev;
+        this.shared = localSource.shared;
+        this.ownedAttributes = localSource.ownedAttributes;
+        localSource.createNewRep(localSource.initialCapacity);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+        if (localSource.hasListeners()) {
+            localSource.fire(InventoryEvent.reset());
+        }
+    }
+
+    /**
+     * InventoryItem representation used for items leaving {@code this}.
+     */
+    public class InventoryItem2 extends InventoryItemSecondary {
+
+        /**
+         * Item quantity.
+         */
+        private int quantity;
+
+        /**
+         * Item name.
+         */
+        private String name;
+
+        /**
+         * Item attributes.
+         */
+        private Map<String, String> attributes;
+
+        /**
+         * Creator of initial representation.
+         *
+         * @ensures this.quantity = 0 and this.name = "" and
+         * this.attributes = <>
+         */
+        private void createNewRep() {
+            this.quantity = 0;
+            this.name = "";
+            this.attributes = new Map1L<String, String>();
+        }
+
+        /**
+         * No-argument constructor.
+         */
+        public InventoryItem2() {
+            this.createNewRep();
+        }
+
+        @Override
+        public final InventoryItem2 newInstance() {
+            return new InventoryItem2();
+        }
+
+        @Override
+        public final void clear() {
+            this.createNewRep();
+        }
+
+        @Override
+        public final void transferFrom(InventoryItem source) {
+            assert source != null : "Violation of: source is not null";
+            assert source != this : "Violation of: source is not this";
+            assert source instanceof InventoryItem2 : "Violation of: source is "
+                    + "of dynamic type InventoryItem2";
+            InventoryItem2 localSource = (InventoryItem2) source;
+            this.attributes = localSource.attributes;
+            this.name = localSource.name;
+            this.quantity = localSource.quantity;
+            localSource.createNewRep();
+        }
+
+        @Override
+        public final String name() {
+            return this.name;
+        }
+
+        @Override
+        public final int quantity() {
+            return this.quantity;
+        }
+
+        @Override
+        public final Map<String, String> attributes() {
+            return this.attributes;
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(String barcode) {
+        assert this.find(barcode) < 0 : "Violation of: an item with barcode "
+                + "is not already in this";
+        this.writable(ALL_PARTS);
+        if (this.size == this.barcodes.length) {
+            this.grow((int) Math.min(Integer.MAX_VALUE - 1,
+                    2L * this.barcodes.length));
+        }
+        int p = this.size;
+        long key = numericKey(barcode);
+        if (key != NOT_NUMERIC) {
+            this.barcodes[p] = null;
+            this.hashes[p] = hash(key);
+        } else {
+            this.barcodes[p] = barcode;
+            this.hashes[p] = hash(barcode);
+        }
+        this.numericKeys[p] = key;
+        this.names[p] = "";
+        this.quantities[p] = 0;
+        this.attributes[p] = null;
+        this.insertSlot(p);
+        this.indexName(p);
+        this.size++;
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.added(barcode, ""));
+        }
+    }
+
+    @Override
+    public Inventory.InventoryItem remove(String barcode) {
+        this.writable(ALL_PARTS);
+        InventoryItem2 item = this.detach(this.position(barcode));
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.removed(barcode));
+        }
+        return item;
+    }
+
+    @Override
+    public Inventory.InventoryItem removeAny() {
+        this.writable(ALL_PARTS);
+        assert this.size > 0 : "Violation of: this.size > 0";
+        String barcode = this.barcodeAt(this.size - 1);
+        InventoryItem2 item = this.detach(this.size - 1);
+        item.attributes.add("barcode", barcode);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.removed(barcode));
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void increment(String barcode) {
+        this.writable(QUANTITIES);
+        int p = this.position(barcode);
+        this.quantities[p]++;
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, 1, this.quantities[p]));
+        }
+    }
+
+    @Override
+    public void decrement(String barcode) {
+        this.writable(QUANTITIES);
+        int p = this.position(barcode);
+        this.quantities[p]--;
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, -1, this.quantities[p]));
+        }
+    }
+
+    @Override
+    public void adjustQuantity(String barcode, int delta) {
+        this.writable(QUANTITIES);
+        int p = this.position(barcode);
+        assert this.quantities[p] + delta >= 0
+                : "Violation of: quantity(barcode) + delta >= 0";
+        this.quantities[p] += delta;
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, delta, this.quantities[p]));
+        }
+    }
+
+    @Override
+    public boolean tryReserve(String barcode, int amount) {
+        assert amount >= 0 : "Violation of: amount >= 0";
+        this.writable(QUANTITIES);
+        int p = this.position(barcode);
+        boolean reserved = this.quantities[p] >= amount;
+        if (reserved) {
+            this.quantities[p] -= amount;
+            if (this.hasListeners()) {
+                this.fire(InventoryEvent.quantity(barcode, -amount,
+                        this.quantities[p]));
+            }
+        }
+        return reserved;
+    }
+
+    @Override
+    public int quantity(String barcode) {
+        return this.quantities[this.position(barcode)];
+    }
+
+    @Override
+    public String name(String barcode) {
+        return this.names[this.position(barcode)];
+    }
+
+    @Override
+    public void setName(String barcode, String name) {
+        this.writable(NAMES);
+        int p = this.position(barcode);
+        this.unindexName(p);
+        this.names[p] = name;
+        this.indexName(p);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.renamed(barcode, name));
+        }
+    }
+
+    @Override
+    public void addAttribute(String barcode, String name, String content) {
+        this.writable(ATTRIBUTES);
+        int p = this.position(barcode);
+        Map<String, String> attr = this.writableAttributes(p);
+        if (attr == null) {
+            attr = new Map1L<String, String>();
+            this.attributes[p] = attr;
+        }
+        assert !attr.hasKey(name)
+                : "Violation of: attributes(barcode) does not contain {@code name}";
+        attr.add(name, content);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, name, content));
+        }
+    }
+
+    @Override
+    public String getAttribute(String barcode, String name) {
+        int p = this.position(barcode);
+        assert this.attributes[p] != null && this.attributes[p].hasKey(name)
+                : "Violation of: attributes(barcode) contains {@code name}";
+        return this.attributes[p].value(name);
+    }
+
+    @Override
+    public String removeAttribute(String barcode, String name) {
+        this.writable(ATTRIBUTES);
+        int p = this.position(barcode);
+        Map<String, String> attr = this.writableAttributes(p);
+        assert attr != null && attr.hasKey(name)
+                : "Violation of: attributes(barcode) contains {@code name}";
+        String val = attr.remove(name).value();
+        if (attr.size() == 0) {
+            this.attributes[p] = null;
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, name, null));
+        }
+        return val;
+    }
+
+    @Override
+    public Set<String> attributes(String barcode) {
+        return new AttributeNames(this.attributes[this.position(barcode)]);
+    }
+
+    @Override
+    public boolean contains(String barcode) {
+        return this.find(barcode) >= 0;
+    }
+
+    /*
+     * Secondary methods overridden for efficiency ----------------------------
+     */
+
+    @Override
+    public void setQuantity(String barcode, int quantity) {
+        assert quantity >= 0 : "Violation of: quantity >= 0";
+        this.writable(QUANTITIES);
+        int p = this.position(barcode);
+        int delta = quantity - this.quantities[p];
+        this.quantities[p] = quantity;
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, delta, quantity));
+        }
+    }
+
+    @Override
+    public boolean hasAttribute(String barcode, String name) {
+        if (this.size == 0) {
+            return false;
+        }
+        Map<String, String> attr = this.attributes[this.position(barcode)];
+        return attr != null && attr.hasKey(name);
+    }
+
+    @Override
+    public String search(String name) {
+        String result = "";
+        if (this.nameHeads.hasKey(name)) {
+            result = this.barcodeAt(this.nameHeads.value(name));
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachItem(Inventory.ItemVisitor visitor) {
+        Cursor cursor = new Cursor();
+        for (int p = 0; p < this.size; p++) {
+            cursor.position = p;
+            visitor.visit(this.barcodeAt(p), cursor);
+        }
+    }
+
+    /**
+     * Read-only item reused by {@code forEachItem} to present each position in
+     * turn.
+     */
+    private final class Cursor extends InventoryItemSecondary {
+
+        /**
+         * The position currently presented.
+         */
+        private int position;
+
+        /**
+         * Attributes presented for items without an attribute map.
+         */
+        private final Map<String, String> noAttributes =
+                new Map1L<String, String>();
+
+        @Override
+        public InventoryItem newInstance() {
+            return new InventoryItem2();
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("Cursor is read-only");
+        }
+
+        @Override
+        public void transferFrom(InventoryItem source) {
+            throw new UnsupportedOperationException("Cursor is read-only");
+        }
+
+        @Override
+        public String name() {
+            return Inventory2.this.names[this.position];
+        }
+
+        @Override
+        public int quantity() {
+            return Inventory2.this.quantities[this.position];
+        }
+
+        @Override
+        public Map<String, String> attributes() {
+            Map<String, String> attr = Inventory2.this.attributes[this.position];
+            if (attr == null) {
+                attr = this.noAttributes;
+            }
+            return attr;
+        }
+    }
+
+    @Override
+    public Queue<Inventory.InventoryItem> drain() {
+        this.writable(ATTRIBUTES);
+        Queue<Inventory.InventoryItem> result = new Queue1L<Inventory.InventoryItem>();
+        for (int p = 0; p < this.size; p++) {
+            InventoryItem2 item = new InventoryItem2();
+            item.name = this.names[p];
+            item.quantity = this.quantities[p];
+            Map<String, String> attr = this.writableAttributes(p);
+            if (attr != null) {
+                item.attributes.transferFrom(attr);
+            }
+            item.attributes.add("barcode", this.barcodeAt(p));
+            result.enqueue(item);
+        }
+        this.createNewRep(this.initialCapacity);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+        return result;
+    }
+
+    @Override
+    public Inventory snapshot() {
+        if (this.frozen) {
+            return this;
+        }
+        /*
+         * From here on every part and every attribute map is shared, and is
+         * copied the first time this changes it
+         */
+        Inventory2 snapshot = new Inventory2(this);
+        this.shared = ALL_PARTS;
+        this.ownedAttributes = new BitSet();
+        return snapshot;
+    }
+
+    @Override
+    public Iterator<Inventory.InventoryItem> iterator() {
+        return new Inventory2Iterator();
+    }
+
+    /**
+     * Iterator implementation.
+     */
+    private final class Inventory2Iterator
+            implements Iterator<Inventory.InventoryItem> {
+
+        /**
+         * The position of the next item to return.
+         */
+        private int position;
+
+        /**
+         * No-args constructor.
+         */
+        private Inventory2Iterator() {
+            this.position = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.position < Inventory2.this.size;
+        }
+
+        @Override
+        public Inventory.InventoryItem next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int p = this.position;
+            this.position++;
+            InventoryItem2 item = new InventoryItem2();
+            item.name = Inventory2.this.names[p];
+            item.quantity = Inventory2.this.quantities[p];
+            Map<String, String> attr = Inventory2.this.attributes[p];
+            if (attr != null) {
+                for (Map.Pair<String, String> pair : attr) {
+                    item.attributes.add(pair.key(), pair.value());
+                }
+            }
+            item.attributes.add("barcode", Inventory2.this.barcodeAt(p));
+            return item;
+        }
+
+    }
+
+}
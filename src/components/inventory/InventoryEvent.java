@@ -0,0 +1,308 @@
+package components.inventory;
+
+/**
+ * One change to an inventory, reported to each {@code Inventory.ChangeListener}
+ * registered with it.
+ *
+ * <p>
+ * Events are immutable and are made with the static factory methods. Each
+ * describes the change as the kernel call that would make it, so a secondary
+ * method is reported as the kernel changes it amounts to: {@code setQuantity},
+ * for example, is one QUANTITY event carrying the difference, and
+ * {@code add(barcode, name)} is ADDED followed by NAME, or a single ADDED
+ * carrying the name where an implementation adds the item in one step.
+ *
+ * @author Jacob Witt
+ */
+public final class InventoryEvent {
+
+    /**
+     * The kinds of event.
+     */
+    public enum Kind {
+        /**
+         * An item was added, with a name and a quantity of 0.
+         */
+        ADDED,
+        /**
+         * An item was removed.
+         */
+        REMOVED,
+        /**
+         * An item's quantity changed by a delta.
+         */
+        QUANTITY,
+        /**
+         * An item was renamed.
+         */
+        NAME,
+        /**
+         * An attribute was added, replaced or, when the content is null,
+         * removed.
+         */
+        ATTRIBUTE,
+        /**
+         * Every item may have changed, as after {@code clear},
+         * {@code transferFrom} or {@code drain}; the barcode is "".
+         */
+        RESET
+    }
+
+    /**
+     * Event for RESET, which has no other fields.
+     */
+    private static final InventoryEvent RESET = new InventoryEvent(Kind.RESET,
+            "", null, null, 0, 0);
+
+    /**
+     * The kind of this event.
+     */
+    private final Kind kind;
+
+    /**
+     * The barcode of the item changed.
+     */
+    private final String barcode;
+
+    /**
+     * The item name for ADDED and NAME, or the attribute name for ATTRIBUTE.
+     */
+    private final String name;
+
+    /**
+     * The attribute content for ATTRIBUTE, or null if it was removed.
+     */
+    private final String content;
+
+    /**
+     * The quantity change for QUANTITY.
+     */
+    private final int delta;
+
+    /**
+     * The quantity after the change for QUANTITY.
+     */
+    private final int quantity;
+
+    /**
+     * Constructor from all fields.
+     *
+     * @param kind
+     *            the kind of event
+     * @param barcode
+     *            the barcode
+     * @param name
+     *            the item or attribute name
+     * @param content
+     *            the attribute content
+     * @param delta
+     *            the quantity change
+     * @param quantity
+     *            the quantity after the change
+     */
+    private InventoryEvent(Kind kind, String barcode, String name,
+            String content, int delta, int quantity) {
+        assert barcode != null : "Violation of: barcode is not null";
+        this.kind = kind;
+        this.barcode = barcode;
+        this.name = name;
+        this.content = content;
+        this.delta = delta;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Returns an event for adding an item with {@code barcode} and
+     * {@code name}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param name
+     *            the item's name
+     * @return the event
+     */
+    public static InventoryEvent added(String barcode, String name) {
+        return new InventoryEvent(Kind.ADDED, barcode, name, null, 0, 0);
+    }
+
+    /**
+     * Returns an event for removing the item with {@code barcode}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @return the event
+     */
+    public static InventoryEvent removed(String barcode) {
+        return new InventoryEvent(Kind.REMOVED, barcode, null, null, 0, 0);
+    }
+
+    /**
+     * Returns an event for changing the quantity of the item with
+     * {@code barcode} by {@code delta} to {@code quantity}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param delta
+     *            the change in quantity
+     * @param quantity
+     *            the quantity after the change
+     * @return the event
+     */
+    public static InventoryEvent quantity(String barcode, int delta,
+            int quantity) {
+        return new InventoryEvent(Kind.QUANTITY, barcode, null, null, delta,
+                quantity);
+    }
+
+    /**
+     * Returns an event for renaming the item with {@code barcode} to
+     * {@code name}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param name
+     *            the new name
+     * @return the event
+     */
+    public static InventoryEvent renamed(String barcode, String name) {
+        return new InventoryEvent(Kind.NAME, barcode, name, null, 0, 0);
+    }
+
+    /**
+     * Returns an event for setting attribute {@code name} of the item with
+     * {@code barcode} to {@code content}, or removing it if {@code content}
+     * is null.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the attribute content, or null if it was removed
+     * @return the event
+     */
+    public static InventoryEvent attribute(String barcode, String name,
+            String content) {
+        return new InventoryEvent(Kind.ATTRIBUTE, barcode, name, content, 0, 0);
+    }
+
+    /**
+     * Returns the event for applying {@code op}, for implementations of
+     * {@code applyBatch} that apply operations directly.
+     *
+     * @param op
+     *            the operation applied
+     * @param quantity
+     *            the item's quantity after {@code op} was applied
+     * @return the event
+     */
+    static InventoryEvent applied(InventoryOp op, int quantity) {
+        InventoryEvent result;
+        switch (op.kind()) {
+            case ADD:
+                result = added(op.barcode(), op.name());
+                break;
+            case ADJUST:
+                result = quantity(op.barcode(), op.delta(), quantity);
+                break;
+            case SET_NAME:
+                result = renamed(op.barcode(), op.name());
+                break;
+            default:
+                result = attribute(op.barcode(), op.name(), op.content());
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the event for a change to every item.
+     *
+     * @return the event
+     */
+    public static InventoryEvent reset() {
+        return RESET;
+    }
+
+    /**
+     * Returns the kind of this event.
+     *
+     * @return the kind
+     */
+    public Kind kind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the barcode of the item changed.
+     *
+     * @return the barcode
+     */
+    public String barcode() {
+        return this.barcode;
+    }
+
+    /**
+     * Returns the item name for ADDED and NAME, or the attribute name for
+     * ATTRIBUTE.
+     *
+     * @return the name
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Returns the attribute content for ATTRIBUTE, or null if it was removed.
+     *
+     * @return the content
+     */
+    public String content() {
+        return this.content;
+    }
+
+    /**
+     * Returns the quantity change for QUANTITY.
+     *
+     * @return the change
+     */
+    public int delta() {
+        return this.delta;
+    }
+
+    /**
+     * Returns the quantity after the change for QUANTITY.
+     *
+     * @return the quantity
+     */
+    public int quantity() {
+        return this.quantity;
+    }
+
+    @Override
+    public String toString() {
+        String result;
+        switch (this.kind) {
+            case ADDED:
+            case NAME:
+                result = this.kind + "(" + this.barcode + ", " + this.name + ")";
+                break;
+            case REMOVED:
+                result = this.kind + "(" + this.barcode + ")";
+                break;
+            case QUANTITY:
+                result = this.kind + "(" + this.barcode + ", " + this.delta
+                        + ", " + this.quantity + ")";
+                break;
+            case ATTRIBUTE:
+                result = this.kind + "(" + this.barcode + ", " + this.name
+                        + ", " + this.content + ")";
+                break;
+            default:
+                result = this.kind.toString();
+                break;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,152 @@
+package components.inventory;
+import java.util.concurrent.locks.ReentrantLock;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * Change listener that collects events and passes them on in batches.
+ *
+ * <p>
+ * Register a batcher with {@code Inventory.addListener}; it delivers the
+ * events collected so far to its {@code BatchListener} whenever
+ * {@code batchSize} have been collected and whenever {@code flush} is called,
+ * such as once per user action or per timer tick. Consecutive QUANTITY events
+ * for the same barcode are merged into one carrying their total delta, so a
+ * burst of updates to a hot item costs the receiver one event.
+ *
+ * <p>
+ * Events are collected under the lock of {@code this}, which is never held
+ * while a batch is delivered. Batches are taken and delivered under a
+ * separate delivery lock, so they reach the receiver one at a time and in
+ * the order their events were collected, even when several threads fill
+ * batches at once.
+ *
+ * @author Jacob Witt
+ */
+public final class InventoryEventBatcher implements Inventory.ChangeListener {
+
+    /**
+     * Callback receiving each batch of events.
+     */
+    public interface BatchListener {
+
+        /**
+         * Receives one batch.
+         *
+         * @param events
+         *            the events, oldest first; the sequence belongs to the
+         *            receiver
+         */
+        void changed(Sequence<InventoryEvent> events);
+    }
+
+    /*
+     * Private Members
+     */
+
+    /**
+     * Number of events that triggers delivery.
+     */
+    private final int batchSize;
+
+    /**
+     * The receiver of the batches.
+     */
+    private final BatchListener target;
+
+    /**
+     * Events collected and not yet delivered.
+     */
+    private Sequence<InventoryEvent> pending;
+
+    /**
+     * Held while a batch is taken and delivered; never acquired while the
+     * lock of {@code this} is held.
+     */
+    private final ReentrantLock delivery = new ReentrantLock();
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor delivering to {@code target} every {@code batchSize}
+     * events.
+     *
+     * @param batchSize
+     *            the number of events per batch; batches may be smaller when
+     *            {@code flush} is called, and larger when other threads add
+     *            events while a full batch waits for the one before it
+     * @param target
+     *            the receiver of the batches
+     * @requires batchSize > 0
+     */
+    public InventoryEventBatcher(int batchSize, BatchListener target) {
+        assert batchSize > 0 : "Violation of: batchSize > 0";
+        assert target != null : "Violation of: target is not null";
+        this.batchSize = batchSize;
+        this.target = target;
+        this.pending = new Sequence1L<InventoryEvent>();
+    }
+
+    @Override
+    public void changed(InventoryEvent event) {
+        boolean full;
+        synchronized (this) {
+            int n = this.pending.length();
+            InventoryEvent last = null;
+            if (n > 0) {
+                last = this.pending.entry(n - 1);
+            }
+            if (last != null && event.kind() == InventoryEvent.Kind.QUANTITY
+                    && last.kind() == InventoryEvent.Kind.QUANTITY
+                    && last.barcode().equals(event.barcode())) {
+                this.pending.replaceEntry(n - 1, InventoryEvent.quantity(
+                        event.barcode(), last.delta() + event.delta(),
+                        event.quantity()));
+            } else {
+                this.pending.add(n, event);
+            }
+            full = this.pending.length() >= this.batchSize;
+        }
+        if (full) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Delivers the events collected so far, if there are any, after any
+     * batch already being delivered.
+     */
+    public void flush() {
+        this.delivery.lock();
+        try {
+            Sequence<InventoryEvent> batch = null;
+            synchronized (this) {
+                if (this.pending.length() > 0) {
+                    batch = this.take();
+                }
+            }
+            if (batch != null) {
+                this.target.changed(batch);
+            }
+        } finally {
+            this.delivery.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the events collected so far.
+     *
+     * @return the collected events
+     * @requires the caller holds the lock of {@code this}
+     * @ensures take = #pending and pending = <>
+     */
+    private Sequence<InventoryEvent> take() {
+        Sequence<InventoryEvent> batch = this.pending;
+        this.pending = new Sequence1L<InventoryEvent>();
+        return batch;
+    }
+
+}
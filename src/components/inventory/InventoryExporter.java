@@ -0,0 +1,394 @@
+package components.inventory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+import components.map.Map;
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Streaming exporter of an inventory to CSV or JSON Lines.
+ *
+ * <p>
+ * Items are visited with {@code forEachItem}, so exporting does not modify
+ * the inventory, and each item is formatted into one reused buffer and then
+ * written, so memory use does not grow with the size of the inventory.
+ *
+ * <p>
+ * CSV output has a header row of {@code barcode,name,quantity} followed by
+ * one column per attribute name used by any item, and can be read back by
+ * {@code InventoryImporter}; a field is quoted when it contains a comma, quote
+ * or line break. JSON Lines output has one object per line, such as
+ * {@code {"barcode":"1001","name":"Apple","quantity":3,"attributes":{}}}. A
+ * "barcode" attribute is not exported, as the barcode is already a field.
+ *
+ * @author Jacob Witt
+ */
+public final class InventoryExporter {
+
+    /**
+     * Size of the byte buffer used when writing to a channel.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Chars below this are ASCII and encode to a single UTF-8 byte.
+     */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /**
+     * Initial capacity of the line buffer.
+     */
+    private static final int LINE_CAPACITY = 256;
+
+    /**
+     * Hex digits for JSON \\u escapes.
+     */
+    private static final String HEX = "0123456789abcdef";
+
+    /**
+     * Number of hex digits in a JSON \\u escape.
+     */
+    private static final int HEX_DIGITS = 4;
+
+    /**
+     * Bits per hex digit.
+     */
+    private static final int HEX_BITS = 4;
+
+    /**
+     * Mask of one hex digit.
+     */
+    private static final int HEX_MASK = 0xF;
+
+    /**
+     * No instances.
+     */
+    private InventoryExporter() {
+    }
+
+    /**
+     * Appendable that encodes to UTF-8 in a reused buffer and writes the
+     * buffer to a channel whenever it fills.
+     */
+    private static final class ChannelAppendable implements Appendable {
+
+        /**
+         * The destination.
+         */
+        private final WritableByteChannel channel;
+
+        /**
+         * Encoded bytes not yet written; in write mode.
+         */
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * The UTF-8 encoder.
+         */
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        /**
+         * Constructor writing to {@code channel}.
+         *
+         * @param channel
+         *            the destination
+         */
+        private ChannelAppendable(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes the buffered bytes to the channel.
+         *
+         * @throws IOException
+         *             if writing fails
+         */
+        private void flush() throws IOException {
+            this.bytes.flip();
+            while (this.bytes.hasRemaining()) {
+                this.channel.write(this.bytes);
+            }
+            this.bytes.clear();
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            int n = csq.length();
+            if (this.bytes.remaining() < n) {
+                this.flush();
+            }
+            /*
+             * Copy ASCII straight into the buffer; hand anything else to the
+             * encoder
+             */
+            int i = 0;
+            if (this.bytes.remaining() >= n) {
+                while (i < n && csq.charAt(i) < ASCII_LIMIT) {
+                    this.bytes.put((byte) csq.charAt(i));
+                    i++;
+                }
+            }
+            if (i < n) {
+                this.encode(CharBuffer.wrap(csq, i, n));
+            }
+            return this;
+        }
+
+        /**
+         * Encodes {@code chars} into the buffer, flushing it as it fills.
+         *
+         * @param chars
+         *            the characters to encode
+         * @throws IOException
+         *             if writing fails
+         */
+        private void encode(CharBuffer chars) throws IOException {
+            CoderResult result = this.encoder.encode(chars, this.bytes, false);
+            while (result.isOverflow()) {
+                this.flush();
+                result = this.encoder.encode(chars, this.bytes, false);
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end)
+                throws IOException {
+            return this.append(csq.subSequence(start, end));
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            return this.append(String.valueOf(c));
+        }
+    }
+
+    /**
+     * Appends {@code s} to {@code line} as a CSV field.
+     *
+     * @param line
+     *            the line being built
+     * @param s
+     *            the field
+     */
+    private static void csvField(StringBuilder line, String s) {
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quote) {
+            line.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        } else {
+            line.append(s);
+        }
+    }
+
+    /**
+     * Appends {@code s} to {@code line} as a JSON string.
+     *
+     * @param line
+     *            the line being built
+     * @param s
+     *            the string
+     */
+    private static void jsonString(StringBuilder line, String s) {
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        line.append("\\u");
+                        for (int d = HEX_DIGITS - 1; d >= 0; d--) {
+                            line.append(HEX.charAt((c >> (d * HEX_BITS)) & HEX_MASK));
+                        }
+                    } else {
+                        line.append(c);
+                    }
+                    break;
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Writes {@code inventory} to {@code out} as CSV.
+     *
+     * @param inventory
+     *            the inventory to export
+     * @param out
+     *            the destination
+     * @throws UncheckedIOException
+     *             if writing fails
+     */
+    public static void writeCsv(Inventory inventory, Appendable out) {
+        /*
+         * A first pass finds the attribute columns
+         */
+        Set<String> names = new Set1L<String>();
+        inventory.forEachItem((barcode, item) -> {
+            for (Map.Pair<String, String> attr : item.attributes()) {
+                if (!attr.key().equals("barcode") && !names.contains(attr.key())) {
+                    names.add(attr.key());
+                }
+            }
+        });
+        String[] columns = new String[names.size()];
+        int c = 0;
+        for (String name : names) {
+            columns[c] = name;
+            c++;
+        }
+        StringBuilder line = new StringBuilder(LINE_CAPACITY);
+        line.append("barcode,name,quantity");
+        for (String column : columns) {
+            line.append(',');
+            csvField(line, column);
+        }
+        line.append('\n');
+        try {
+            out.append(line);
+            inventory.forEachItem((barcode, item) -> {
+                line.setLength(0);
+                csvField(line, barcode);
+                line.append(',');
+                csvField(line, item.name());
+                line.append(',').append(item.quantity());
+                Map<String, String> attributes = item.attributes();
+                for (String column : columns) {
+                    line.append(',');
+                    if (attributes.hasKey(column)) {
+                        csvField(line, attributes.value(column));
+                    }
+                }
+                line.append('\n');
+                try {
+                    out.append(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes {@code inventory} to {@code out} as JSON Lines.
+     *
+     * @param inventory
+     *            the inventory to export
+     * @param out
+     *            the destination
+     * @throws UncheckedIOException
+     *             if writing fails
+     */
+    public static void writeJsonLines(Inventory inventory, Appendable out) {
+        StringBuilder line = new StringBuilder(LINE_CAPACITY);
+        inventory.forEachItem((barcode, item) -> {
+            line.setLength(0);
+            line.append("{\"barcode\":");
+            jsonString(line, barcode);
+            line.append(",\"name\":");
+            jsonString(line, item.name());
+            line.append(",\"quantity\":").append(item.quantity());
+            line.append(",\"attributes\":{");
+            boolean first = true;
+            Map<String, String> attributes = item.attributes();
+            if (attributes.size() > 0) {
+                for (Map.Pair<String, String> attr : attributes) {
+                    if (!attr.key().equals("barcode")) {
+                        if (!first) {
+                            line.append(',');
+                        }
+                        first = false;
+                        jsonString(line, attr.key());
+                        line.append(':');
+                        jsonString(line, attr.value());
+                    }
+                }
+            }
+            line.append("}}\n");
+            try {
+                out.append(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes {@code inventory} to {@code channel} as UTF-8 CSV.
+     *
+     * @param inventory
+     *            the inventory to export
+     * @param channel
+     *            the destination, which is not closed
+     * @throws UncheckedIOException
+     *             if writing fails
+     */
+    public static void writeCsv(Inventory inventory, WritableByteChannel channel) {
+        ChannelAppendable out = new ChannelAppendable(channel);
+        writeCsv(inventory, out);
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes {@code inventory} to {@code channel} as UTF-8 JSON Lines.
+     *
+     * @param inventory
+     *            the inventory to export
+     * @param channel
+     *            the destination, which is not closed
+     * @throws UncheckedIOException
+     *             if writing fails
+     */
+    public static void writeJsonLines(Inventory inventory,
+            WritableByteChannel channel) {
+        ChannelAppendable out = new ChannelAppendable(channel);
+        writeJsonLines(inventory, out);
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
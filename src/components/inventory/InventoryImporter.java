@@ -0,0 +1,615 @@
+package components.inventory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming, parallel importer of delimited text (CSV or TSV) into an
+ * {@code Inventory1}.
+ *
+ * <p>
+ * The first row is a header naming the columns. The columns named
+ * {@code barcode} (required), {@code name} and {@code quantity}, ignoring case,
+ * fill those fields; every other column becomes an attribute with the
+ * column's name, omitted for rows where the cell is empty. Fields may be
+ * quoted with {@code "}, with {@code ""} standing for a quote inside a quoted
+ * field, and rows end with {@code \n} or {@code \r\n}. Rows with an empty
+ * barcode, such as blank lines, are skipped. A row whose barcode is already
+ * in the inventory adds its quantity to the existing item and is otherwise
+ * ignored.
+ *
+ * <p>
+ * The file is read through a {@code FileChannel} in large chunks, each cut at
+ * the last row boundary. The chunks are parsed in parallel, at most a fixed
+ * number at a time so that memory stays bounded, and their rows are inserted
+ * in file order, in one step each, into an inventory presized from the first
+ * chunk.
+ *
+ * @author Jacob Witt
+ */
+public final class InventoryImporter {
+
+    /**
+     * Delimiter of comma-separated values.
+     */
+    public static final char CSV = ',';
+
+    /**
+     * Delimiter of tab-separated values.
+     */
+    public static final char TSV = '\t';
+
+    /**
+     * Bytes read per chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << 22;
+
+    /**
+     * Number of chunks that may be in flight per parsing thread.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * The quote character.
+     */
+    private static final byte QUOTE = '"';
+
+    /**
+     * The row terminator.
+     */
+    private static final byte NEWLINE = '\n';
+
+    /**
+     * Carriage return, dropped before a row terminator.
+     */
+    private static final byte RETURN = '\r';
+
+    /**
+     * Byte order mark that may begin a UTF-8 file.
+     */
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB,
+        (byte) 0xBF};
+
+    /**
+     * No instances.
+     */
+    private InventoryImporter() {
+    }
+
+    /**
+     * Positions of the fields of the header.
+     */
+    private static final class Columns {
+
+        /**
+         * Position of the barcode column.
+         */
+        private int barcode = -1;
+
+        /**
+         * Position of the name column, or -1 if there is none.
+         */
+        private int name = -1;
+
+        /**
+         * Position of the quantity column, or -1 if there is none.
+         */
+        private int quantity = -1;
+
+        /**
+         * The header's column names.
+         */
+        private String[] names;
+    }
+
+    /**
+     * Rows parsed from one chunk.
+     */
+    private static final class Rows {
+
+        /**
+         * Number of rows.
+         */
+        private int count;
+
+        /**
+         * Barcode of each row.
+         */
+        private String[] barcodes = new String[16];
+
+        /**
+         * Name of each row.
+         */
+        private String[] names = new String[16];
+
+        /**
+         * Quantity of each row.
+         */
+        private int[] quantities = new int[16];
+
+        /**
+         * Attributes of each row, or null for none.
+         */
+        private AttributeMap[] attributes = new AttributeMap[16];
+
+        /**
+         * Appends a row.
+         *
+         * @param barcode
+         *            the barcode
+         * @param name
+         *            the name
+         * @param quantity
+         *            the quantity
+         * @param attrs
+         *            the attributes, or null
+         */
+        private void add(String barcode, String name, int quantity,
+                AttributeMap attrs) {
+            if (this.count == this.barcodes.length) {
+                int length = 2 * this.count;
+                this.barcodes = Arrays.copyOf(this.barcodes, length);
+                this.names = Arrays.copyOf(this.names, length);
+                this.quantities = Arrays.copyOf(this.quantities, length);
+                this.attributes = Arrays.copyOf(this.attributes, length);
+            }
+            this.barcodes[this.count] = barcode;
+            this.names[this.count] = name;
+            this.quantities[this.count] = quantity;
+            this.attributes[this.count] = attrs;
+            this.count++;
+        }
+    }
+
+    /**
+     * Parses the fields of the row starting at {@code start} into
+     * {@code fields}, setting missing fields to "".
+     *
+     * @param bytes
+     *            the chunk
+     * @param start
+     *            the position of the row
+     * @param end
+     *            the end of the chunk's complete rows
+     * @param delimiter
+     *            the field delimiter
+     * @param fields
+     *            the fields of the row; extra fields are dropped
+     * @return the position after the row's terminator
+     */
+    private static int parseRow(byte[] bytes, int start, int end,
+            byte delimiter, String[] fields) {
+        Arrays.fill(fields, "");
+        int pos = start;
+        int field = 0;
+        boolean rowDone = pos >= end;
+        while (!rowDone) {
+            String value;
+            if (bytes[pos] == QUOTE) {
+                /*
+                 * Quoted field: find the closing quote, then copy the field,
+                 * turning each "" into "
+                 */
+                int open = pos + 1;
+                int close = open;
+                int escapes = 0;
+                while (close < end && (bytes[close] != QUOTE
+                        || (close + 1 < end && bytes[close + 1] == QUOTE))) {
+                    if (bytes[close] == QUOTE) {
+                        escapes++;
+                        close++;
+                    }
+                    close++;
+                }
+                if (escapes == 0) {
+                    value = new String(bytes, open, close - open,
+                            StandardCharsets.UTF_8);
+                } else {
+                    byte[] out = new byte[close - open - escapes];
+                    int n = 0;
+                    int i = open;
+                    while (i < close) {
+                        out[n] = bytes[i];
+                        n++;
+                        if (bytes[i] == QUOTE) {
+                            i++;
+                        }
+                        i++;
+                    }
+                    value = new String(out, StandardCharsets.UTF_8);
+                }
+                pos = Math.min(close + 1, end);
+                while (pos < end && bytes[pos] != delimiter
+                        && bytes[pos] != NEWLINE) {
+                    pos++;
+                }
+            } else {
+                int fieldStart = pos;
+                while (pos < end && bytes[pos] != delimiter
+                        && bytes[pos] != NEWLINE) {
+                    pos++;
+                }
+                int fieldEnd = pos;
+                if (fieldEnd > fieldStart && bytes[fieldEnd - 1] == RETURN
+                        && (pos == end || bytes[pos] == NEWLINE)) {
+                    fieldEnd--;
+                }
+                value = new String(bytes, fieldStart, fieldEnd - fieldStart,
+                        StandardCharsets.UTF_8);
+            }
+            if (field < fields.length) {
+                fields[field] = value;
+            }
+            field++;
+            if (pos < end && bytes[pos] == delimiter) {
+                pos++;
+            } else {
+                pos++;
+                rowDone = true;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Parses the complete rows in [{@code start}, {@code end}) of a chunk.
+     *
+     * @param bytes
+     *            the chunk
+     * @param start
+     *            the position of the first row
+     * @param end
+     *            the end of the last row
+     * @param delimiter
+     *            the field delimiter
+     * @param columns
+     *            the header's columns
+     * @return the rows
+     */
+    private static Rows parseChunk(byte[] bytes, int start, int end,
+            byte delimiter, Columns columns) {
+        Rows rows = new Rows();
+        String[] fields = new String[columns.names.length];
+        int pos = start;
+        while (pos < end) {
+            pos = parseRow(bytes, pos, end, delimiter, fields);
+            if (fields[columns.barcode].length() > 0) {
+                String barcode = fields[columns.barcode];
+                String name = "";
+                if (columns.name >= 0) {
+                    name = fields[columns.name];
+                }
+                int quantity = 0;
+                if (columns.quantity >= 0
+                        && fields[columns.quantity].trim().length() > 0) {
+                    try {
+                        quantity = Integer.parseInt(fields[columns.quantity].trim());
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Bad quantity \""
+                                + fields[columns.quantity] + "\" for barcode "
+                                + barcode, e);
+                    }
+                    if (quantity < 0) {
+                        throw new IllegalArgumentException("Negative quantity "
+                                + quantity + " for barcode " + barcode);
+                    }
+                }
+                AttributeMap attrs = null;
+                for (int i = 0; i < fields.length; i++) {
+                    if (i != columns.barcode && i != columns.name
+                            && i != columns.quantity && fields[i].length() > 0) {
+                        if (attrs == null) {
+                            attrs = new AttributeMap();
+                        }
+                        if (!attrs.hasKey(columns.names[i])) {
+                            attrs.add(columns.names[i], fields[i]);
+                        }
+                    }
+                }
+                rows.add(barcode, name, quantity, attrs);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the position of the delimiter or row terminator that ends the
+     * field starting at {@code pos}, or {@code end} if there is none. As in
+     * {@code parseRow}, only a quote that starts the field opens a quoted
+     * field; any other quote is part of the content.
+     *
+     * @param bytes
+     *            the chunk
+     * @param pos
+     *            the start of the field
+     * @param end
+     *            the end of the bytes to scan
+     * @param delimiter
+     *            the field delimiter
+     * @return the end of the field
+     */
+    private static int fieldEnd(byte[] bytes, int pos, int end,
+            byte delimiter) {
+        int i = pos;
+        if (i < end && bytes[i] == QUOTE) {
+            i++;
+            while (i < end && (bytes[i] != QUOTE
+                    || (i + 1 < end && bytes[i + 1] == QUOTE))) {
+                if (bytes[i] == QUOTE) {
+                    i++;
+                }
+                i++;
+            }
+            i++;
+        }
+        while (i < end && bytes[i] != delimiter && bytes[i] != NEWLINE) {
+            i++;
+        }
+        return Math.min(i, end);
+    }
+
+    /**
+     * Returns the position after the last row terminator in
+     * [0, {@code length}) that is not inside a quoted field, or 0 if there is
+     * none.
+     *
+     * @param bytes
+     *            the chunk, starting at a row boundary
+     * @param length
+     *            the number of bytes in the chunk
+     * @param delimiter
+     *            the field delimiter
+     * @return the end of the chunk's complete rows
+     */
+    private static int lastRowEnd(byte[] bytes, int length, byte delimiter) {
+        int result = 0;
+        int pos = fieldEnd(bytes, 0, length, delimiter);
+        while (pos < length) {
+            if (bytes[pos] == NEWLINE) {
+                result = pos + 1;
+            }
+            pos = fieldEnd(bytes, pos + 1, length, delimiter);
+        }
+        return result;
+    }
+
+    /**
+     * Reads from {@code channel} into {@code bytes}, from {@code offset},
+     * until it is full or the file ends.
+     *
+     * @param channel
+     *            the file
+     * @param bytes
+     *            the destination
+     * @param offset
+     *            the position to start filling
+     * @return the number of bytes in {@code bytes}
+     * @throws IOException
+     *             if reading fails
+     */
+    private static int fill(FileChannel channel, byte[] bytes, int offset)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(bytes, offset, bytes.length - offset);
+        while (b.hasRemaining() && channel.read(b) >= 0) {
+            /*
+             * Keep reading
+             */
+        }
+        return b.position();
+    }
+
+    /**
+     * Inserts {@code rows} into {@code target}.
+     *
+     * @param rows
+     *            the rows
+     * @param target
+     *            the inventory
+     * @updates target
+     */
+    private static void insert(Rows rows, Inventory1 target) {
+        for (int i = 0; i < rows.count; i++) {
+            String barcode = rows.barcodes[i];
+            if (target.contains(barcode)) {
+                target.adjustQuantity(barcode, rows.quantities[i]);
+            } else {
+                target.insert(barcode, rows.names[i], rows.quantities[i],
+                        rows.attributes[i]);
+            }
+        }
+    }
+
+    /**
+     * Waits for the oldest chunk in {@code inFlight} and inserts its rows.
+     *
+     * @param inFlight
+     *            the chunks being parsed, oldest first
+     * @param target
+     *            the inventory
+     * @updates inFlight, target
+     */
+    private static void insertOldest(Deque<Future<Rows>> inFlight,
+            Inventory1 target) {
+        try {
+            insert(inFlight.removeFirst().get(), target);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during import", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Parses the header row of a chunk.
+     *
+     * @param bytes
+     *            the chunk
+     * @param end
+     *            the end of the chunk's complete rows
+     * @param delimiter
+     *            the field delimiter
+     * @param columns
+     *            the columns to fill in
+     * @return the position after the header
+     */
+    private static int parseHeader(byte[] bytes, int end, byte delimiter,
+            Columns columns) {
+        int start = 0;
+        if (end >= UTF8_BOM.length && bytes[0] == UTF8_BOM[0]
+                && bytes[1] == UTF8_BOM[1] && bytes[2] == UTF8_BOM[2]) {
+            start = UTF8_BOM.length;
+        }
+        int width = 1;
+        int field = fieldEnd(bytes, start, end, delimiter);
+        while (field < end && bytes[field] == delimiter) {
+            width++;
+            field = fieldEnd(bytes, field + 1, end, delimiter);
+        }
+        columns.names = new String[width];
+        int pos = parseRow(bytes, start, end, delimiter, columns.names);
+        for (int i = 0; i < width; i++) {
+            String column = columns.names[i].trim();
+            if (column.equalsIgnoreCase("barcode") && columns.barcode < 0) {
+                columns.barcode = i;
+            } else if (column.equalsIgnoreCase("name") && columns.name < 0) {
+                columns.name = i;
+            } else if (column.equalsIgnoreCase("quantity")
+                    && columns.quantity < 0) {
+                columns.quantity = i;
+            }
+        }
+        if (columns.barcode < 0) {
+            throw new IllegalArgumentException("Header has no barcode column");
+        }
+        return pos;
+    }
+
+    /**
+     * Imports the delimited file {@code file}, parsing on one thread per
+     * available processor.
+     *
+     * @param file
+     *            the file to import
+     * @param delimiter
+     *            the field delimiter, such as {@code CSV} or {@code TSV}
+     * @return the imported inventory
+     * @throws UncheckedIOException
+     *             if reading fails
+     * @throws IllegalArgumentException
+     *             if the header has no barcode column or a quantity is not a
+     *             non-negative integer
+     * @requires delimiter is an ASCII character other than {@code "},
+     *           {@code \r} and {@code \n}
+     */
+    public static Inventory1 read(Path file, char delimiter) {
+        return read(file, delimiter, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Imports the delimited file {@code file}, parsing on {@code threads}
+     * threads.
+     *
+     * @param file
+     *            the file to import
+     * @param delimiter
+     *            the field delimiter, such as {@code CSV} or {@code TSV}
+     * @param threads
+     *            the number of parsing threads
+     * @return the imported inventory
+     * @throws UncheckedIOException
+     *             if reading fails
+     * @throws IllegalArgumentException
+     *             if the header has no barcode column or a quantity is not a
+     *             non-negative integer
+     * @requires delimiter is an ASCII character other than {@code "},
+     *           {@code \r} and {@code \n}, and threads > 0
+     */
+    public static Inventory1 read(Path file, char delimiter, int threads) {
+        assert delimiter < 0x80 && delimiter != QUOTE && delimiter != NEWLINE
+                && delimiter != RETURN : "Violation of: delimiter is valid";
+        assert threads > 0 : "Violation of: threads > 0";
+        byte delim = (byte) delimiter;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "inventory-import");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<Rows>> inFlight = new ArrayDeque<Future<Rows>>();
+        Inventory1 result = null;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            Columns columns = null;
+            byte[] carry = new byte[0];
+            int carryLength = 0;
+            boolean eof = false;
+            while (!eof) {
+                byte[] chunk = new byte[Math.max(CHUNK_SIZE, 2 * carryLength)];
+                System.arraycopy(carry, 0, chunk, 0, carryLength);
+                int length = fill(channel, chunk, carryLength);
+                eof = length < chunk.length;
+                int end = length;
+                if (!eof) {
+                    end = lastRowEnd(chunk, length, delim);
+                }
+                carryLength = length - end;
+                carry = Arrays.copyOfRange(chunk, end, length);
+                int start = 0;
+                if (end > 0 && columns == null) {
+                    columns = new Columns();
+                    start = parseHeader(chunk, end, delim, columns);
+                    /*
+                     * Presize from the density of rows in the first chunk
+                     */
+                    long rows = 0;
+                    for (int i = start; i < end; i++) {
+                        if (chunk[i] == NEWLINE) {
+                            rows++;
+                        }
+                    }
+                    long estimate = (rows + 1) * fileSize / Math.max(1, end);
+                    result = new Inventory1((int) Math.min(estimate,
+                            Integer.MAX_VALUE / 2));
+                }
+                if (end > start) {
+                    final byte[] bytes = chunk;
+                    final int from = start;
+                    final int to = end;
+                    final Columns cols = columns;
+                    inFlight.addLast(pool.submit(
+                            () -> parseChunk(bytes, from, to, delim, cols)));
+                    if (inFlight.size() >= CHUNKS_PER_THREAD * threads) {
+                        insertOldest(inFlight, result);
+                    }
+                }
+            }
+            if (result == null) {
+                throw new IllegalArgumentException("File has no header row");
+            }
+            while (!inFlight.isEmpty()) {
+                insertOldest(inFlight, result);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+}
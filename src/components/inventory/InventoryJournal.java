@@ -0,0 +1,569 @@
+package components.inventory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of inventory mutations, with group commit.
+ *
+ * <p>
+ * Each record is laid out as
+ *
+ * <pre>
+ * [int length][int crc32 of body][body = byte op, fields...]
+ * </pre>
+ *
+ * where a string field is an int byte count followed by its UTF-8 bytes and
+ * an int field is 4 bytes, all big-endian.
+ *
+ * <p>
+ * Appending a record only buffers it and returns its number; {@code commit}
+ * then waits until that record is forced to the device. Commits use a
+ * leader/follower protocol: the first waiting thread becomes the leader and
+ * takes every record buffered so far as its group. It then writes and forces
+ * the group with no lock held, while later records gather in a second buffer.
+ * Threads whose records are in the group wait for the leader to finish, and
+ * the next waiter leads the next group. One force thus makes durable the
+ * records of every thread that appended while the previous force was in
+ * progress. No record is left buffered once its {@code commit} returns. If a
+ * write or force fails, the journal is unusable from then on, since what
+ * reached the device is unknown. On replay, a torn or corrupt record at the
+ * tail (from a crash mid-write) ends the journal and is truncated away.
+ *
+ * @author Jacob Witt
+ */
+final class InventoryJournal implements Closeable {
+
+    /*
+     * Record op codes
+     */
+
+    /**
+     * add(barcode).
+     */
+    static final byte ADD = 1;
+
+    /**
+     * remove(barcode).
+     */
+    static final byte REMOVE = 2;
+
+    /**
+     * increment(barcode).
+     */
+    static final byte INCREMENT = 3;
+
+    /**
+     * decrement(barcode).
+     */
+    static final byte DECREMENT = 4;
+
+    /**
+     * adjustQuantity(barcode, delta).
+     */
+    static final byte ADJUST = 5;
+
+    /**
+     * setName(barcode, name).
+     */
+    static final byte SET_NAME = 6;
+
+    /**
+     * addAttribute(barcode, name, content).
+     */
+    static final byte ADD_ATTRIBUTE = 7;
+
+    /**
+     * removeAttribute(barcode, name).
+     */
+    static final byte REMOVE_ATTRIBUTE = 8;
+
+    /**
+     * clear().
+     */
+    static final byte CLEAR = 9;
+
+    /**
+     * placeOrder(barcode, amount).
+     */
+    static final byte PLACE_ORDER = 10;
+
+    /**
+     * receiveOrder(barcode, amount).
+     */
+    static final byte RECEIVE_ORDER = 11;
+
+    /**
+     * Bytes of the length and checksum preceding each record body.
+     */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Initial capacity of the record buffer.
+     */
+    private static final int INITIAL_BUFFER = 8192;
+
+    /**
+     * The journal file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Lock guarding every field below except {@code channel}, which only the
+     * leader writes, and only while not holding the lock.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Signalled whenever a group commit finishes.
+     */
+    private final Condition committed;
+
+    /**
+     * Records appended but not yet taken by a leader; in write mode.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Empty buffer to swap in for {@code buffer} when a leader takes it, or
+     * null while a commit is in progress.
+     */
+    private ByteBuffer spare;
+
+    /**
+     * Number of records appended since the journal was opened.
+     */
+    private long appended;
+
+    /**
+     * Number of records appended since the journal was opened that are
+     * known to be on the device.
+     */
+    private long durable;
+
+    /**
+     * Whether a leader is writing a group.
+     */
+    private boolean committing;
+
+    /**
+     * The failure of an earlier write or force, or null.
+     */
+    private IOException failure;
+
+    /**
+     * Checksum calculator, reused for every record.
+     */
+    private final CRC32 crc;
+
+    /**
+     * Opens (creating if needed) the journal at {@code file}.
+     *
+     * @param file
+     *            the journal file
+     */
+    InventoryJournal(Path file) {
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.lock = new ReentrantLock();
+        this.committed = this.lock.newCondition();
+        this.buffer = ByteBuffer.allocate(INITIAL_BUFFER);
+        this.spare = ByteBuffer.allocate(INITIAL_BUFFER);
+        this.appended = 0;
+        this.durable = 0;
+        this.committing = false;
+        this.failure = null;
+        this.crc = new CRC32();
+    }
+
+    /**
+     * Reads from {@code channel} until {@code b} is full or the end of the
+     * file is reached.
+     *
+     * @param b
+     *            the buffer to fill
+     * @return whether {@code b} was filled
+     * @throws IOException
+     *             if reading fails
+     */
+    private boolean readFully(ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            if (this.channel.read(b) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a string field from {@code body}.
+     *
+     * @param body
+     *            the record body, positioned at the field
+     * @return the string
+     */
+    private static String readString(ByteBuffer body) {
+        int n = body.getInt();
+        String s = new String(body.array(), body.arrayOffset() + body.position(),
+                n, StandardCharsets.UTF_8);
+        body.position(body.position() + n);
+        return s;
+    }
+
+    /**
+     * Applies the record in {@code body} to {@code target}.
+     *
+     * @param body
+     *            the record body, positioned at its op code
+     * @param target
+     *            the inventory to update
+     */
+    private static void apply(ByteBuffer body, Inventory target) {
+        byte op = body.get();
+        String barcode = readString(body);
+        switch (op) {
+            case ADD:
+                target.add(barcode);
+                break;
+            case REMOVE:
+                target.remove(barcode);
+                break;
+            case INCREMENT:
+                target.increment(barcode);
+                break;
+            case DECREMENT:
+                target.decrement(barcode);
+                break;
+            case ADJUST:
+                target.adjustQuantity(barcode, body.getInt());
+                break;
+            case SET_NAME:
+                target.setName(barcode, readString(body));
+                break;
+            case ADD_ATTRIBUTE:
+                String name = readString(body);
+                target.addAttribute(barcode, name, readString(body));
+                break;
+            case REMOVE_ATTRIBUTE:
+                target.removeAttribute(barcode, readString(body));
+                break;
+            case CLEAR:
+                target.clear();
+                break;
+            case PLACE_ORDER:
+                target.placeOrder(barcode, body.getInt());
+                break;
+            case RECEIVE_ORDER:
+                target.receiveOrder(barcode, body.getInt());
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal op " + op);
+        }
+    }
+
+    /**
+     * Applies every intact record of the journal, in order, to
+     * {@code target}, truncates any torn tail, and positions the journal for
+     * appending.
+     *
+     * @param target
+     *            the inventory to rebuild
+     * @updates target
+     */
+    void replay(Inventory target) {
+        try {
+            long size = this.channel.size();
+            long good = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            this.channel.position(0);
+            boolean intact = true;
+            while (intact) {
+                header.clear();
+                intact = this.readFully(header);
+                if (intact) {
+                    header.flip();
+                    int length = header.getInt();
+                    int checksum = header.getInt();
+                    intact = length > 0 && length <= size - good - HEADER_BYTES;
+                    if (intact) {
+                        ByteBuffer body = ByteBuffer.allocate(length);
+                        intact = this.readFully(body);
+                        this.crc.reset();
+                        this.crc.update(body.array(), 0, length);
+                        intact = intact && (int) this.crc.getValue() == checksum;
+                        if (intact) {
+                            body.flip();
+                            apply(body, target);
+                            good += HEADER_BYTES + length;
+                        }
+                    }
+                }
+            }
+            this.channel.truncate(good);
+            this.channel.position(good);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes room for at least {@code bytes} more bytes in {@code buffer}.
+     *
+     * @param bytes
+     *            the number of bytes needed
+     */
+    private void ensureRoom(int bytes) {
+        if (this.buffer.remaining() < bytes) {
+            int capacity = Math.max(this.buffer.capacity() * 2,
+                    this.buffer.position() + bytes);
+            ByteBuffer larger = ByteBuffer.allocate(capacity);
+            this.buffer.flip();
+            larger.put(this.buffer);
+            this.buffer = larger;
+        }
+    }
+
+    /**
+     * Appends a string field to {@code buffer}.
+     *
+     * @param s
+     *            the string
+     */
+    private void putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        this.ensureRoom(Integer.BYTES + bytes.length);
+        this.buffer.putInt(bytes.length);
+        this.buffer.put(bytes);
+    }
+
+    /**
+     * Starts a record with op code {@code op} and barcode field
+     * {@code barcode}.
+     *
+     * @param op
+     *            the op code
+     * @param barcode
+     *            the barcode
+     * @return the position of the record's header in {@code buffer}
+     */
+    private int begin(byte op, String barcode) {
+        this.ensureRoom(HEADER_BYTES + 1);
+        int start = this.buffer.position();
+        this.buffer.position(start + HEADER_BYTES);
+        this.buffer.put(op);
+        this.putString(barcode);
+        return start;
+    }
+
+    /**
+     * Fills in the header of the record started at {@code start}.
+     *
+     * @param start
+     *            the position of the record's header in {@code buffer}
+     * @return the number of the record
+     */
+    private long end(int start) {
+        int bodyStart = start + HEADER_BYTES;
+        int length = this.buffer.position() - bodyStart;
+        this.crc.reset();
+        this.crc.update(this.buffer.array(), bodyStart, length);
+        this.buffer.putInt(start, length);
+        this.buffer.putInt(start + Integer.BYTES, (int) this.crc.getValue());
+        this.appended++;
+        return this.appended;
+    }
+
+    /**
+     * Throws if an earlier write or force failed.
+     *
+     * @throws UncheckedIOException
+     *             if an earlier write or force failed
+     * @requires the caller holds {@code lock}
+     */
+    private void checkFailure() {
+        if (this.failure != null) {
+            throw new UncheckedIOException("Journal write failed earlier",
+                    this.failure);
+        }
+    }
+
+    /**
+     * Appends a record with only a barcode field.
+     *
+     * @param op
+     *            the op code
+     * @param barcode
+     *            the barcode
+     * @return the number of the record, to pass to {@code commit}
+     */
+    long append(byte op, String barcode) {
+        this.lock.lock();
+        try {
+            this.checkFailure();
+            return this.end(this.begin(op, barcode));
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record with a barcode and an int field.
+     *
+     * @param op
+     *            the op code
+     * @param barcode
+     *            the barcode
+     * @param value
+     *            the int field
+     * @return the number of the record, to pass to {@code commit}
+     */
+    long append(byte op, String barcode, int value) {
+        this.lock.lock();
+        try {
+            this.checkFailure();
+            int start = this.begin(op, barcode);
+            this.ensureRoom(Integer.BYTES);
+            this.buffer.putInt(value);
+            return this.end(start);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record with a barcode and one or more string fields.
+     *
+     * @param op
+     *            the op code
+     * @param barcode
+     *            the barcode
+     * @param fields
+     *            the string fields
+     * @return the number of the record, to pass to {@code commit}
+     */
+    long append(byte op, String barcode, String... fields) {
+        this.lock.lock();
+        try {
+            this.checkFailure();
+            int start = this.begin(op, barcode);
+            for (String field : fields) {
+                this.putString(field);
+            }
+            return this.end(start);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of the last record appended.
+     *
+     * @return the number of the last record, or 0 if none has been appended
+     */
+    long last() {
+        this.lock.lock();
+        try {
+            return this.appended;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until record {@code record}, and so every record before it, is
+     * forced to the device, leading a group commit if no other thread is.
+     *
+     * @param record
+     *            the number of a record returned by {@code append}, or 0
+     * @throws UncheckedIOException
+     *             if writing or forcing the journal fails, now or earlier
+     */
+    void commit(long record) {
+        this.lock.lock();
+        try {
+            while (this.durable < record) {
+                this.checkFailure();
+                if (this.committing) {
+                    this.committed.awaitUninterruptibly();
+                } else {
+                    this.lead();
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces every record appended so far as one group, releasing
+     * {@code lock} while doing so, so that other threads may append the next
+     * group meanwhile.
+     *
+     * @throws UncheckedIOException
+     *             if writing or forcing the journal fails
+     * @requires the caller holds {@code lock} and no commit is in progress
+     */
+    private void lead() {
+        ByteBuffer group = this.buffer;
+        long last = this.appended;
+        this.buffer = this.spare;
+        this.spare = null;
+        this.committing = true;
+        IOException failed = null;
+        this.lock.unlock();
+        try {
+            group.flip();
+            while (group.hasRemaining()) {
+                this.channel.write(group);
+            }
+            this.channel.force(false);
+        } catch (IOException e) {
+            failed = e;
+        } finally {
+            this.lock.lock();
+        }
+        group.clear();
+        this.spare = group;
+        this.committing = false;
+        if (failed == null) {
+            this.durable = last;
+        } else {
+            this.failure = failed;
+        }
+        this.committed.signalAll();
+        this.checkFailure();
+    }
+
+    /**
+     * Waits until every record appended so far is forced to the device.
+     *
+     * @throws UncheckedIOException
+     *             if writing or forcing the journal fails, now or earlier
+     */
+    void sync() {
+        this.commit(this.last());
+    }
+
+    @Override
+    public void close() {
+        this.sync();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -73,6 +73,19 @@ Iterable<Inventory.InventoryItem> {
     */
   void decrement(String barcode);
 
+    /**
+    * Changes the quantity of the item with barcode {@code barcode} by
+    * {@code delta}.
+    *
+    * @param barcode the item's barcode
+    * @param delta the amount to add to the quantity (negative to subtract)
+    * @requires an item with {@code barcode} is in {@code this} and
+    * quantity(barcode) + delta >= 0
+    * @updates this
+    * @ensures quantity(barcode) = #quantity(barcode) + delta
+    */
+    void adjustQuantity(String barcode, int delta);
+
   /**
     * Returns the quantity of the item with barcode {@code barcode}.
     *
@@ -116,7 +129,8 @@ Iterable<Inventory.InventoryItem> {
     * @param content the content of the new attribute
     * @requires an item with {@code barcode} is in {@code this} and
     * attributes(barcode) does not contain {@code name} and {@code name} is not
-    * "barcode"
+    * "barcode" and [content parses as the type name is declared with, if name
+    * is declared INT, LONG or DOUBLE]
     * @updates this
     * @ensures getAttribute(barcode, name) = content
     */
@@ -164,6 +178,11 @@ Iterable<Inventory.InventoryItem> {
     * @ensures attributes(barcode) = [the complete set of attributes
     * associated with the specified item], or an empty set if the item has
     * no attributes
+    *
+    * <p>
+    * Implementations may return a read-only view of the item's attributes
+    * rather than a copy; callers that need to modify the set, or to keep it
+    * while {@code this} changes, should copy it.
     */
     Set<String> attributes(String barcode);
 
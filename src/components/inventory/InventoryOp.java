@@ -0,0 +1,244 @@
+package components.inventory;
+import java.util.Arrays;
+
+/**
+ * One operation of a batch passed to {@code Inventory.applyBatch}.
+ *
+ * <p>
+ * Operations are immutable and are made with the static factory methods. An
+ * operation that cannot be applied (for example, adding a barcode that is
+ * already present) is skipped rather than violating a precondition, and
+ * {@code applyBatch} reports it as failed.
+ *
+ * @author Jacob Witt
+ */
+public final class InventoryOp {
+
+    /**
+     * The kinds of operation.
+     */
+    public enum Kind {
+        /**
+         * Add a new item with a name; fails if the barcode is present.
+         */
+        ADD,
+        /**
+         * Change an item's quantity by a delta; fails if the barcode is absent
+         * or the quantity would become negative.
+         */
+        ADJUST,
+        /**
+         * Rename an item; fails if the barcode is absent.
+         */
+        SET_NAME,
+        /**
+         * Add an attribute, or replace its content if it exists; fails if the
+         * barcode is absent or the content does not parse as the type the
+         * attribute is declared with.
+         */
+        PUT_ATTRIBUTE
+    }
+
+    /**
+     * The kind of this operation.
+     */
+    private final Kind kind;
+
+    /**
+     * The barcode of the item operated on.
+     */
+    private final String barcode;
+
+    /**
+     * The item name for ADD and SET_NAME, or the attribute name for
+     * PUT_ATTRIBUTE.
+     */
+    private final String name;
+
+    /**
+     * The attribute content for PUT_ATTRIBUTE.
+     */
+    private final String content;
+
+    /**
+     * The quantity change for ADJUST.
+     */
+    private final int delta;
+
+    /**
+     * Constructor from all fields.
+     *
+     * @param kind
+     *            the kind of operation
+     * @param barcode
+     *            the barcode
+     * @param name
+     *            the item or attribute name
+     * @param content
+     *            the attribute content
+     * @param delta
+     *            the quantity change
+     */
+    private InventoryOp(Kind kind, String barcode, String name, String content,
+            int delta) {
+        assert barcode != null : "Violation of: barcode is not null";
+        this.kind = kind;
+        this.barcode = barcode;
+        this.name = name;
+        this.content = content;
+        this.delta = delta;
+    }
+
+    /**
+     * Returns an operation adding an item with {@code barcode} and
+     * {@code name}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param name
+     *            the item's name
+     * @return the operation
+     */
+    public static InventoryOp add(String barcode, String name) {
+        return new InventoryOp(Kind.ADD, barcode, name, null, 0);
+    }
+
+    /**
+     * Returns an operation changing the quantity of the item with
+     * {@code barcode} by {@code delta}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param delta
+     *            the change in quantity
+     * @return the operation
+     */
+    public static InventoryOp adjust(String barcode, int delta) {
+        return new InventoryOp(Kind.ADJUST, barcode, null, null, delta);
+    }
+
+    /**
+     * Returns an operation renaming the item with {@code barcode} to
+     * {@code name}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param name
+     *            the new name
+     * @return the operation
+     */
+    public static InventoryOp setName(String barcode, String name) {
+        return new InventoryOp(Kind.SET_NAME, barcode, name, null, 0);
+    }
+
+    /**
+     * Returns an operation setting attribute {@code name} of the item with
+     * {@code barcode} to {@code content}.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the attribute content
+     * @return the operation
+     */
+    public static InventoryOp putAttribute(String barcode, String name,
+            String content) {
+        return new InventoryOp(Kind.PUT_ATTRIBUTE, barcode, name, content, 0);
+    }
+
+    /**
+     * Returns the kind of this operation.
+     *
+     * @return the kind
+     */
+    public Kind kind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the barcode of the item operated on.
+     *
+     * @return the barcode
+     */
+    public String barcode() {
+        return this.barcode;
+    }
+
+    /**
+     * Returns the item name for ADD and SET_NAME, or the attribute name for
+     * PUT_ATTRIBUTE.
+     *
+     * @return the name
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Returns the attribute content for PUT_ATTRIBUTE.
+     *
+     * @return the content
+     */
+    public String content() {
+        return this.content;
+    }
+
+    /**
+     * Returns the quantity change for ADJUST.
+     *
+     * @return the change
+     */
+    public int delta() {
+        return this.delta;
+    }
+
+    /**
+     * Returns the positions 0 through |group| - 1 ordered by {@code group},
+     * keeping positions with equal groups in their original order, so that
+     * implementations can apply a batch one bucket or stripe at a time while
+     * preserving the order of operations on each barcode.
+     *
+     * @param group
+     *            the group (bucket or stripe) of each position
+     * @return the ordered positions
+     * @requires every entry of group >= 0
+     */
+    static int[] orderByGroup(int[] group) {
+        /*
+         * Packing the position into the low half of each key makes the sort
+         * stable without boxing
+         */
+        long[] keys = new long[group.length];
+        for (int i = 0; i < group.length; i++) {
+            keys[i] = ((long) group[i] << Integer.SIZE) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[group.length];
+        for (int i = 0; i < group.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    @Override
+    public String toString() {
+        String result;
+        switch (this.kind) {
+            case ADD:
+            case SET_NAME:
+                result = this.kind + "(" + this.barcode + ", " + this.name + ")";
+                break;
+            case ADJUST:
+                result = this.kind + "(" + this.barcode + ", " + this.delta + ")";
+                break;
+            default:
+                result = this.kind + "(" + this.barcode + ", " + this.name + ", "
+                        + this.content + ")";
+                break;
+        }
+        return result;
+    }
+
+}
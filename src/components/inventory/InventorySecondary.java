@@ -1,11 +1,14 @@
 package components.inventory;
-import components.queue.Queue;
-import components.queue.Queue1L;
 import components.set.Set;
+import components.set.Set1L;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import components.map.Map;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.sequence.Sequence;
 
 /**
  * The abstract class containing secondary and object methods for Inventory.
@@ -14,6 +17,29 @@ import components.map.Map;
  */
 public abstract class InventorySecondary implements Inventory {
 
+    /**
+     * Attribute holding an item's reorder point.
+     */
+    static final String REORDER_POINT = "Reorder Point";
+
+    /**
+     * Attribute holding the number of units of an item on order; an item with
+     * nothing on order does not have it.
+     */
+    static final String ON_ORDER = "On Order";
+
+    /**
+     * No listeners.
+     */
+    private static final Inventory.ChangeListener[] NO_LISTENERS =
+            new Inventory.ChangeListener[0];
+
+    /**
+     * The registered listeners; the array is replaced rather than changed, so
+     * events can be fired without a lock while listeners come and go.
+     */
+    private volatile Inventory.ChangeListener[] listeners = NO_LISTENERS;
+
     /**
      * Abstract class for InventoryItem.
      */
@@ -76,18 +102,16 @@ public abstract class InventorySecondary implements Inventory {
 
     @Override
     public String toString() {
-        String result = "<";
+        StringBuilder result = new StringBuilder("<");
         Iterator<Inventory.InventoryItem> it = this.iterator();
         while (it.hasNext()) {
-            Inventory.InventoryItem i = it.next();
-            result += i;
-            result += ", ";
-        }
-        if (result.length() > 1) {
-            result = result.substring(0, result.length() - 2);
+            result.append(it.next());
+            if (it.hasNext()) {
+                result.append(", ");
+            }
         }
-        result += ">";
-        return result;
+        result.append('>');
+        return result.toString();
     }
 
     /**
@@ -110,14 +134,12 @@ public abstract class InventorySecondary implements Inventory {
                 return false;
             }
             /*
-             * Check equality with iterator
+             * Look up each item of this in inv by barcode, since the two
+             * inventories need not iterate in the same order
              */
-            Iterator<Inventory.InventoryItem> it1 = this.iterator();
-            Iterator<Inventory.InventoryItem> it2 = inv.iterator();
-            while (it1.hasNext()) {
-                Inventory.InventoryItem item1 = it1.next();
-                Inventory.InventoryItem item2 = it2.next();
-                if (!item1.equals(item2)) {
+            for (Inventory.InventoryItem item : this) {
+                String barcode = item.attributes().value("barcode");
+                if (!inv.contains(barcode) || !sameItem(barcode, item, inv)) {
                     return false;
                 }
             }
@@ -125,6 +147,41 @@ public abstract class InventorySecondary implements Inventory {
         }
     }
 
+    /**
+     * Returns whether the item with {@code barcode} in {@code inv} has the same
+     * name, quantity, and attributes as {@code item}, ignoring the "barcode"
+     * attribute.
+     *
+     * @param barcode the item's barcode
+     * @param item the item to compare against
+     * @param inv the inventory holding the other item
+     * @return whether the two items are equal
+     * @requires an item with {@code barcode} is in {@code inv}
+     */
+    private static boolean sameItem(String barcode, Inventory.InventoryItem item,
+            Inventory inv) {
+        if (inv.quantity(barcode) != item.quantity()
+                || !inv.name(barcode).equals(item.name())) {
+            return false;
+        }
+        int count = 0;
+        for (Map.Pair<String, String> attr : item.attributes()) {
+            if (!attr.key().equals("barcode")) {
+                if (!inv.hasAttribute(barcode, attr.key()) || !inv
+                        .getAttribute(barcode, attr.key()).equals(attr.value())) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        Set<String> otherNames = inv.attributes(barcode);
+        int otherCount = otherNames.size();
+        if (otherNames.contains("barcode")) {
+            otherCount--;
+        }
+        return count == otherCount;
+    }
+
     @Override
     public int hashCode() {
         return this.size();
@@ -142,33 +199,14 @@ public abstract class InventorySecondary implements Inventory {
     @Override
     public String search(String name) {
         /*
-         * Remove the items from the inventory and add them to a queue
+         * Walk the items in place rather than draining and rebuilding this
          */
-        Queue<Inventory.InventoryItem> temp = new Queue1L<Inventory.InventoryItem>();
         String result = "";
-        while (this.size() > 0) {
-            Inventory.InventoryItem current = this.removeAny();
-            temp.enqueue(current);
-        }
-        /*
-         * Find the right name and restore this
-         */
-        while (temp.length() > 0) {
-            Inventory.InventoryItem current = temp.dequeue();
-            Map<String, String> attr = current.attributes();
-            String barcode = attr.value("barcode");
-            this.add(barcode);
-            for (int i = 0; i < current.quantity(); i++) {
-                this.increment(barcode);
-            }
-            this.setName(barcode, current.name());
+        Iterator<Inventory.InventoryItem> it = this.iterator();
+        while (result.isEmpty() && it.hasNext()) {
+            Inventory.InventoryItem current = it.next();
             if (current.name().equals(name)) {
-                result = barcode;
-            }
-            while (attr.size() > 0) {
-                Map.Pair<String, String> currentAttribute = attr.removeAny();
-                this.addAttribute(barcode, currentAttribute.key(),
-                currentAttribute.value());
+                result = current.attributes().value("barcode");
             }
         }
         return result;
@@ -182,16 +220,23 @@ public abstract class InventorySecondary implements Inventory {
 
     @Override
     public void setQuantity(String barcode, int quantity) {
-        int currentQuantity = this.quantity(barcode);
-        while (currentQuantity < quantity) {
-            this.increment(barcode);
-            currentQuantity = this.quantity(barcode);
+        this.adjustQuantity(barcode, quantity - this.quantity(barcode));
+    }
 
+    @Override
+    public boolean tryReserve(String barcode, int amount) {
+        assert amount >= 0 : "Violation of: amount >= 0";
+        boolean reserved = this.quantity(barcode) >= amount;
+        if (reserved) {
+            this.adjustQuantity(barcode, -amount);
         }
-        while (currentQuantity > quantity) {
-            this.decrement(barcode);
-            currentQuantity = this.quantity(barcode);
-        }
+        return reserved;
+    }
+
+    @Override
+    public void release(String barcode, int amount) {
+        assert amount >= 0 : "Violation of: amount >= 0";
+        this.adjustQuantity(barcode, amount);
     }
 
     @Override
@@ -210,28 +255,295 @@ public abstract class InventorySecondary implements Inventory {
         return val;
     }
 
+    @Override
+    public void forEachItem(Inventory.ItemVisitor visitor) {
+        for (Inventory.InventoryItem item : this) {
+            visitor.visit(item.attributes().value("barcode"), item);
+        }
+    }
+
+    @Override
+    public Queue<Inventory.InventoryItem> drain() {
+        Queue<Inventory.InventoryItem> result = new Queue1L<Inventory.InventoryItem>();
+        while (this.size() > 0) {
+            result.enqueue(this.removeAny());
+        }
+        return result;
+    }
+
+    /**
+     * Applies {@code op} to {@code this} if it can be applied.
+     *
+     * @param op
+     *            the operation
+     * @return whether {@code op} was applied
+     * @updates this
+     */
+    private boolean apply(InventoryOp op) {
+        String barcode = op.barcode();
+        boolean applied = op.kind() == InventoryOp.Kind.ADD
+                ? !this.contains(barcode) : this.contains(barcode);
+        if (applied) {
+            switch (op.kind()) {
+                case ADD:
+                    this.add(barcode, op.name());
+                    break;
+                case ADJUST:
+                    applied = this.quantity(barcode) + op.delta() >= 0;
+                    if (applied) {
+                        this.adjustQuantity(barcode, op.delta());
+                    }
+                    break;
+                case SET_NAME:
+                    this.setName(barcode, op.name());
+                    break;
+                default:
+                    if (this.hasAttribute(barcode, op.name())) {
+                        this.setAttribute(barcode, op.name(), op.content());
+                    } else {
+                        this.addAttribute(barcode, op.name(), op.content());
+                    }
+                    break;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public boolean[] applyBatch(Sequence<InventoryOp> ops) {
+        boolean[] results = new boolean[ops.length()];
+        int i = 0;
+        for (InventoryOp op : ops) {
+            results[i] = this.apply(op);
+            i++;
+        }
+        return results;
+    }
+
+    /**
+     * Returns the count, such as a reorder point, held in attribute
+     * {@code content}.
+     *
+     * @param content
+     *            the attribute content
+     * @return the count, or 0 if {@code content} is not a non-negative
+     *         integer
+     */
+    static int parseCount(String content) {
+        int result = 0;
+        try {
+            result = Math.max(0, Integer.parseInt(content));
+        } catch (NumberFormatException e) {
+            /*
+             * Content set by hand that is not a number counts as 0
+             */
+        }
+        return result;
+    }
+
+    /**
+     * Sets attribute {@code name} of the item with {@code barcode} to
+     * {@code content}, adding it if the item does not have it.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param name
+     *            the attribute name
+     * @param content
+     *            the attribute content
+     * @requires an item with {@code barcode} is in {@code this}
+     * @updates this
+     * @ensures getAttribute(barcode, name) = content
+     */
+    private void putAttribute(String barcode, String name, String content) {
+        if (this.hasAttribute(barcode, name)) {
+            this.setAttribute(barcode, name, content);
+        } else {
+            this.addAttribute(barcode, name, content);
+        }
+    }
+
+    @Override
+    public void setReorderPoint(String barcode, int reorderPoint) {
+        assert reorderPoint >= 0 : "Violation of: reorderPoint >= 0";
+        this.putAttribute(barcode, REORDER_POINT, Integer.toString(reorderPoint));
+    }
+
+    @Override
+    public int reorderPoint(String barcode) {
+        int result = 0;
+        if (this.hasAttribute(barcode, REORDER_POINT)) {
+            result = parseCount(this.getAttribute(barcode, REORDER_POINT));
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> lowStockItems() {
+        Set<String> result = new Set1L<String>();
+        this.forEachItem((barcode, item) -> {
+            Map<String, String> attributes = item.attributes();
+            int reorderPoint = 0;
+            if (attributes.hasKey(REORDER_POINT)) {
+                reorderPoint = parseCount(attributes.value(REORDER_POINT));
+            }
+            if (item.quantity() <= reorderPoint && !attributes.hasKey(ON_ORDER)) {
+                result.add(barcode);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sets the "On Order" attribute of the item with {@code barcode} to
+     * {@code count}, removing it if {@code count} is 0.
+     *
+     * @param barcode
+     *            the item's barcode
+     * @param count
+     *            the number on order
+     * @requires an item with {@code barcode} is in {@code this} and count >= 0
+     * @updates this
+     * @ensures onOrder(barcode) = count
+     */
+    private void storeOnOrder(String barcode, int count) {
+        if (count > 0) {
+            this.putAttribute(barcode, ON_ORDER, Integer.toString(count));
+        } else if (this.hasAttribute(barcode, ON_ORDER)) {
+            this.removeAttribute(barcode, ON_ORDER);
+        }
+    }
+
+    @Override
+    public void placeOrder(String barcode, int amount) {
+        assert amount > 0 : "Violation of: amount > 0";
+        this.storeOnOrder(barcode, this.onOrder(barcode) + amount);
+    }
+
+    @Override
+    public void receiveOrder(String barcode, int amount) {
+        int onOrder = this.onOrder(barcode);
+        assert amount > 0 : "Violation of: amount > 0";
+        assert amount <= onOrder : "Violation of: amount <= onOrder(barcode)";
+        this.adjustQuantity(barcode, amount);
+        this.storeOnOrder(barcode, onOrder - amount);
+    }
+
+    @Override
+    public int onOrder(String barcode) {
+        int result = 0;
+        if (this.hasAttribute(barcode, ON_ORDER)) {
+            result = parseCount(this.getAttribute(barcode, ON_ORDER));
+        }
+        return result;
+    }
+
+    @Override
+    public void declareAttribute(String name, Inventory.AttributeType type) {
+        assert name != null : "Violation of: name is not null";
+        assert type != null : "Violation of: type is not null";
+        /*
+         * Attributes kept only as strings need no declaration; the typed
+         * getters parse them
+         */
+    }
+
+    @Override
+    public int intAttribute(String barcode, String name) {
+        return Integer.parseInt(this.getAttribute(barcode, name));
+    }
+
+    @Override
+    public long longAttribute(String barcode, String name) {
+        return Long.parseLong(this.getAttribute(barcode, name));
+    }
+
+    @Override
+    public double doubleAttribute(String barcode, String name) {
+        return Double.parseDouble(this.getAttribute(barcode, name));
+    }
+
+    @Override
+    public void setIntAttribute(String barcode, String name, int value) {
+        this.putAttribute(barcode, name, Integer.toString(value));
+    }
+
+    @Override
+    public void setLongAttribute(String barcode, String name, long value) {
+        this.putAttribute(barcode, name, Long.toString(value));
+    }
+
+    @Override
+    public void setDoubleAttribute(String barcode, String name, double value) {
+        this.putAttribute(barcode, name, Double.toString(value));
+    }
+
+    @Override
+    public final synchronized void addListener(Inventory.ChangeListener listener) {
+        assert listener != null : "Violation of: listener is not null";
+        Inventory.ChangeListener[] grown = Arrays.copyOf(this.listeners,
+                this.listeners.length + 1);
+        grown[grown.length - 1] = listener;
+        this.listeners = grown;
+    }
+
+    @Override
+    public final synchronized void removeListener(
+            Inventory.ChangeListener listener) {
+        Inventory.ChangeListener[] current = this.listeners;
+        int i = current.length - 1;
+        while (i >= 0 && current[i] != listener) {
+            i--;
+        }
+        if (i >= 0) {
+            Inventory.ChangeListener[] shrunk =
+                    new Inventory.ChangeListener[current.length - 1];
+            System.arraycopy(current, 0, shrunk, 0, i);
+            System.arraycopy(current, i + 1, shrunk, i, shrunk.length - i);
+            this.listeners = shrunk;
+        }
+    }
+
+    /**
+     * Reports whether any listener is registered, so that implementations
+     * need not build events no one will receive.
+     *
+     * @return true iff a listener is registered with {@code this}
+     */
+    protected final boolean hasListeners() {
+        return this.listeners.length > 0;
+    }
+
+    /**
+     * Passes {@code event} to every registered listener.
+     *
+     * @param event
+     *            the change just made to {@code this}
+     */
+    protected final void fire(InventoryEvent event) {
+        for (Inventory.ChangeListener listener : this.listeners) {
+            listener.changed(event);
+        }
+    }
+
     @Override
     public void combine(Inventory i) {
-        while (i.size() > 0) {
-            Inventory.InventoryItem current = i.removeAny();
+        Queue<Inventory.InventoryItem> items = i.drain();
+        while (items.length() > 0) {
+            Inventory.InventoryItem current = items.dequeue();
             Map<String, String> attr = current.attributes();
             if (this.contains(attr.value("barcode"))) {
                 /*
                  * An item with the barcode is already in this
                  */
-                for (int k = 0; k < current.quantity(); k++) {
-                    this.increment(attr.value("barcode"));
-                }
+                this.adjustQuantity(attr.value("barcode"), current.quantity());
             } else {
                 /*
                  * An item with the barcode is not in this
                  */
                 String barcode = attr.remove("barcode").value();
-                this.add(barcode);
-                for (int k = 0; k < current.quantity(); k++) {
-                    this.increment(barcode);
-                }
-                this.setName(barcode, current.name());
+                this.add(barcode, current.name());
+                this.adjustQuantity(barcode, current.quantity());
                 while (attr.size() > 0) {
                     Map.Pair<String, String> currentAttr = attr.removeAny();
                     this.addAttribute(barcode, currentAttr.key(), currentAttr.value());
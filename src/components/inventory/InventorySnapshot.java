@@ -0,0 +1,615 @@
+package components.inventory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import components.map.Map;
+
+/**
+ * Reads and writes whole inventories in a compact binary snapshot format.
+ *
+ * <p>
+ * A snapshot is laid out as
+ *
+ * <pre>
+ * [int magic "INVS"][byte version][varint item count]
+ * then per item:
+ * [string barcode][string name][varint quantity][varint attribute count]
+ * [string attribute name][string attribute content]...
+ * </pre>
+ *
+ * where a varint is an unsigned LEB128 integer and a string is a varint byte
+ * count followed by its UTF-8 bytes. Because the item count comes first,
+ * {@code read} presizes the table once and inserts each item with all of its
+ * fields in one step.
+ *
+ * <p>
+ * {@code writeIndexed} writes the indexed variant opened by
+ * {@code MappedInventory}:
+ *
+ * <pre>
+ * [int magic "INVX"][byte version]
+ * [item record]... (each laid out as above, from barcode onwards)
+ * [slot]... (slotCount slots of [int hash][int record offset], 0 if empty)
+ * [int slotCount][int item count][int index offset][int magic "INVX"]
+ * </pre>
+ *
+ * The slots form an open-addressing hash table, probed linearly from
+ * {@code indexHash(barcode) & (slotCount - 1)}, so one barcode can be found
+ * without reading any other record. An indexed snapshot must be smaller than
+ * 2 GiB.
+ *
+ * @author Jacob Witt
+ */
+public final class InventorySnapshot {
+
+    /**
+     * First four bytes of every snapshot: "INVS".
+     */
+    static final int MAGIC = 0x494E5653;
+
+    /**
+     * Format version written by {@code write}.
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * First and last four bytes of every indexed snapshot: "INVX".
+     */
+    static final int INDEXED_MAGIC = 0x494E5658;
+
+    /**
+     * Bytes in each slot of an indexed snapshot's index.
+     */
+    static final int SLOT_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Bytes in the footer of an indexed snapshot.
+     */
+    static final int FOOTER_BYTES = 4 * Integer.BYTES;
+
+    /**
+     * Number of bits to shift right when spreading a hash code.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    /**
+     * Size of the read and write buffers.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Bits of payload in each varint byte.
+     */
+    static final int VARINT_BITS = 7;
+
+    /**
+     * Mask of the payload bits of a varint byte.
+     */
+    static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Bit set in every varint byte but the last.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Mask of a byte's bits.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * No instances.
+     */
+    private InventorySnapshot() {
+    }
+
+    /**
+     * Returns the hash of {@code barcode} stored in, and used to probe, the
+     * index of an indexed snapshot.
+     *
+     * @param barcode
+     *            the barcode
+     * @return the hash
+     */
+    static int indexHash(String barcode) {
+        int h = barcode.hashCode();
+        return h ^ (h >>> HASH_SHIFT);
+    }
+
+    /**
+     * Buffered output of varints and strings.
+     */
+    private static final class Output {
+
+        /**
+         * The destination.
+         */
+        private final OutputStream out;
+
+        /**
+         * Bytes not yet written to {@code out}.
+         */
+        private final byte[] buf = new byte[BUFFER_SIZE];
+
+        /**
+         * Number of bytes in {@code buf}.
+         */
+        private int count;
+
+        /**
+         * Number of bytes already written to {@code out}.
+         */
+        private long flushed;
+
+        /**
+         * Constructor writing to {@code out}.
+         *
+         * @param out
+         *            the destination
+         */
+        private Output(OutputStream out) {
+            this.out = out;
+            this.count = 0;
+            this.flushed = 0;
+        }
+
+        /**
+         * Returns the number of bytes written so far, including buffered
+         * ones.
+         *
+         * @return the number of bytes
+         */
+        private long position() {
+            return this.flushed + this.count;
+        }
+
+        /**
+         * Makes room for {@code n} bytes in {@code buf}, if it can hold them.
+         *
+         * @param n
+         *            the number of bytes needed
+         * @throws IOException
+         *             if writing fails
+         */
+        private void room(int n) throws IOException {
+            if (this.count + n > this.buf.length) {
+                this.flush();
+            }
+        }
+
+        /**
+         * Writes the buffered bytes to {@code out}.
+         *
+         * @throws IOException
+         *             if writing fails
+         */
+        private void flush() throws IOException {
+            this.out.write(this.buf, 0, this.count);
+            this.flushed += this.count;
+            this.count = 0;
+        }
+
+        /**
+         * Writes a big-endian int.
+         *
+         * @param v
+         *            the value
+         * @throws IOException
+         *             if writing fails
+         */
+        private void writeInt(int v) throws IOException {
+            this.room(Integer.BYTES);
+            for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                this.buf[this.count] = (byte) (v >>> shift);
+                this.count++;
+            }
+        }
+
+        /**
+         * Writes one byte.
+         *
+         * @param b
+         *            the byte
+         * @throws IOException
+         *             if writing fails
+         */
+        private void writeByte(byte b) throws IOException {
+            this.room(1);
+            this.buf[this.count] = b;
+            this.count++;
+        }
+
+        /**
+         * Writes an unsigned varint.
+         *
+         * @param v
+         *            the value
+         * @throws IOException
+         *             if writing fails
+         * @requires v >= 0
+         */
+        private void writeVarint(int v) throws IOException {
+            this.room(Integer.BYTES + 1);
+            int rest = v;
+            while ((rest & ~VARINT_MASK) != 0) {
+                this.buf[this.count] = (byte) ((rest & VARINT_MASK) | VARINT_MORE);
+                this.count++;
+                rest >>>= VARINT_BITS;
+            }
+            this.buf[this.count] = (byte) rest;
+            this.count++;
+        }
+
+        /**
+         * Writes a string.
+         *
+         * @param s
+         *            the string
+         * @throws IOException
+         *             if writing fails
+         */
+        private void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            this.writeVarint(bytes.length);
+            if (bytes.length > this.buf.length) {
+                this.flush();
+                this.out.write(bytes);
+                this.flushed += bytes.length;
+            } else {
+                this.room(bytes.length);
+                System.arraycopy(bytes, 0, this.buf, this.count, bytes.length);
+                this.count += bytes.length;
+            }
+        }
+
+        /**
+         * Writes one item record. A "barcode" attribute is not written, as
+         * the barcode is already a field, just as {@code InventoryExporter}
+         * leaves it out.
+         *
+         * @param barcode
+         *            the item's barcode
+         * @param item
+         *            the item
+         * @throws IOException
+         *             if writing fails
+         */
+        private void writeItem(String barcode, Inventory.InventoryItem item)
+                throws IOException {
+            this.writeString(barcode);
+            this.writeString(item.name());
+            this.writeVarint(item.quantity());
+            Map<String, String> attributes = item.attributes();
+            int attributeCount = attributes.size();
+            if (attributes.hasKey("barcode")) {
+                attributeCount--;
+            }
+            this.writeVarint(attributeCount);
+            for (Map.Pair<String, String> attr : attributes) {
+                if (!attr.key().equals("barcode")) {
+                    this.writeString(attr.key());
+                    this.writeString(attr.value());
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffered input of varints and strings.
+     */
+    private static final class Input {
+
+        /**
+         * The source.
+         */
+        private final InputStream in;
+
+        /**
+         * Bytes read from {@code in}.
+         */
+        private final byte[] buf = new byte[BUFFER_SIZE];
+
+        /**
+         * Position of the next unread byte in {@code buf}.
+         */
+        private int pos;
+
+        /**
+         * Number of bytes in {@code buf}.
+         */
+        private int limit;
+
+        /**
+         * Constructor reading from {@code in}.
+         *
+         * @param in
+         *            the source
+         */
+        private Input(InputStream in) {
+            this.in = in;
+            this.pos = 0;
+            this.limit = 0;
+        }
+
+        /**
+         * Reads one byte.
+         *
+         * @return the byte
+         * @throws IOException
+         *             if reading fails or the snapshot ends early
+         */
+        private byte readByte() throws IOException {
+            if (this.pos == this.limit) {
+                this.limit = this.in.read(this.buf);
+                this.pos = 0;
+                if (this.limit <= 0) {
+                    this.limit = 0;
+                    throw new IOException("Truncated inventory snapshot");
+                }
+            }
+            byte b = this.buf[this.pos];
+            this.pos++;
+            return b;
+        }
+
+        /**
+         * Reads a big-endian int.
+         *
+         * @return the value
+         * @throws IOException
+         *             if reading fails or the snapshot ends early
+         */
+        private int readInt() throws IOException {
+            int v = 0;
+            for (int i = 0; i < Integer.BYTES; i++) {
+                v = (v << Byte.SIZE) | (this.readByte() & BYTE_MASK);
+            }
+            return v;
+        }
+
+        /**
+         * Reads an unsigned varint.
+         *
+         * @return the value
+         * @throws IOException
+         *             if reading fails, the snapshot ends early, or the varint
+         *             is malformed
+         */
+        private int readVarint() throws IOException {
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift >= Integer.SIZE) {
+                    throw new IOException("Malformed varint in inventory snapshot");
+                }
+                b = this.readByte();
+                v |= (b & VARINT_MASK) << shift;
+                shift += VARINT_BITS;
+            } while ((b & VARINT_MORE) != 0);
+            if (v < 0) {
+                throw new IOException("Malformed varint in inventory snapshot");
+            }
+            return v;
+        }
+
+        /**
+         * Reads a string.
+         *
+         * @return the string
+         * @throws IOException
+         *             if reading fails or the snapshot ends early
+         */
+        private String readString() throws IOException {
+            int n = this.readVarint();
+            String s;
+            if (this.limit - this.pos >= n) {
+                /*
+                 * The common case: decode straight from the buffer
+                 */
+                s = new String(this.buf, this.pos, n, StandardCharsets.UTF_8);
+                this.pos += n;
+            } else {
+                byte[] bytes = new byte[n];
+                int have = this.limit - this.pos;
+                System.arraycopy(this.buf, this.pos, bytes, 0, have);
+                this.pos = this.limit;
+                while (have < n) {
+                    int read = this.in.read(bytes, have, n - have);
+                    if (read < 0) {
+                        throw new IOException("Truncated inventory snapshot");
+                    }
+                    have += read;
+                }
+                s = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Writes a snapshot of {@code inventory} to {@code out}, which is not
+     * closed.
+     *
+     * @param inventory
+     *            the inventory to write
+     * @param out
+     *            the destination
+     * @throws UncheckedIOException
+     *             if writing fails
+     */
+    public static void write(Inventory inventory, OutputStream out) {
+        Output o = new Output(out);
+        try {
+            o.writeInt(MAGIC);
+            o.writeByte(VERSION);
+            o.writeVarint(inventory.size());
+            /*
+             * The visitor cannot throw IOException, so it is wrapped in the
+             * UncheckedIOException this method throws anyway, and passes
+             * through unchanged
+             */
+            inventory.forEachItem((barcode, item) -> {
+                try {
+                    o.writeItem(barcode, item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            o.flush();
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of {@code inventory} to {@code file}, replacing it.
+     *
+     * @param inventory
+     *            the inventory to write
+     * @param file
+     *            the snapshot file
+     * @throws UncheckedIOException
+     *             if writing fails
+     */
+    public static void write(Inventory inventory, Path file) {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(inventory, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes an indexed snapshot of {@code inventory}, for
+     * {@code MappedInventory}, to {@code file}, replacing it.
+     *
+     * @param inventory
+     *            the inventory to write
+     * @param file
+     *            the snapshot file
+     * @throws UncheckedIOException
+     *             if writing fails or the snapshot would reach 2 GiB
+     */
+    public static void writeIndexed(Inventory inventory, Path file) {
+        int slotCount = 2;
+        while (slotCount / 2 < inventory.size()) {
+            slotCount *= 2;
+        }
+        int[] slots = new int[2 * slotCount];
+        int mask = slotCount - 1;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            Output o = new Output(out);
+            o.writeInt(INDEXED_MAGIC);
+            o.writeByte(VERSION);
+            inventory.forEachItem((barcode, item) -> {
+                try {
+                    long offset = o.position();
+                    if (offset > Integer.MAX_VALUE) {
+                        throw new IOException("Indexed snapshot exceeds 2 GiB");
+                    }
+                    int hash = indexHash(barcode);
+                    int i = hash & mask;
+                    while (slots[2 * i + 1] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[2 * i] = hash;
+                    slots[2 * i + 1] = (int) offset;
+                    o.writeItem(barcode, item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long indexOffset = o.position();
+            if (indexOffset + (long) SLOT_BYTES * slotCount
+                    + FOOTER_BYTES > Integer.MAX_VALUE) {
+                throw new IOException("Indexed snapshot exceeds 2 GiB");
+            }
+            for (int slot : slots) {
+                o.writeInt(slot);
+            }
+            o.writeInt(slotCount);
+            o.writeInt(inventory.size());
+            o.writeInt((int) indexOffset);
+            o.writeInt(INDEXED_MAGIC);
+            o.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a snapshot from {@code in}, which is not closed.
+     *
+     * @param in
+     *            the source
+     * @return the inventory read
+     * @throws UncheckedIOException
+     *             if reading fails or {@code in} does not hold a valid
+     *             snapshot
+     */
+    public static Inventory1 read(InputStream in) {
+        Input i = new Input(in);
+        try {
+            if (i.readInt() != MAGIC || i.readByte() != VERSION) {
+                throw new IOException("Not an inventory snapshot");
+            }
+            int count = i.readVarint();
+            Inventory1 result = new Inventory1(count);
+            for (int k = 0; k < count; k++) {
+                String barcode = i.readString();
+                if (result.contains(barcode)) {
+                    throw new IOException("Duplicate barcode " + barcode);
+                }
+                String name = i.readString();
+                int quantity = i.readVarint();
+                int attributeCount = i.readVarint();
+                AttributeMap attributes = null;
+                if (attributeCount > 0) {
+                    attributes = new AttributeMap();
+                }
+                for (int a = 0; a < attributeCount; a++) {
+                    String key = i.readString();
+                    if (key.equals("barcode")) {
+                        throw new IOException("Attribute named barcode of "
+                                + barcode);
+                    }
+                    if (attributes.hasKey(key)) {
+                        throw new IOException("Duplicate attribute " + key
+                                + " of " + barcode);
+                    }
+                    attributes.add(key, i.readString());
+                }
+                result.insert(barcode, name, quantity, attributes);
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a snapshot from {@code file}.
+     *
+     * @param file
+     *            the snapshot file
+     * @return the inventory read
+     * @throws UncheckedIOException
+     *             if reading fails or {@code file} does not hold a valid
+     *             snapshot
+     */
+    public static Inventory1 read(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,473 @@
+package components.inventory;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import components.queue.Queue;
+import components.sequence.Sequence;
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Durable inventory represented as an {@code Inventory1} plus a write-ahead
+ * journal file of every mutating kernel call.
+ *
+ * <p>
+ * Constructing a {@code JournaledInventory} replays its journal to rebuild the
+ * inventory. Each mutation is checked and applied in memory and appended to the
+ * journal while holding a private lock. It then waits, without the lock, until
+ * its record is forced to the device, so every change is durable once the call
+ * that made it returns. Threads that change {@code this} at the same time share
+ * one force: the records appended while a force is in progress are written and
+ * forced together by the next (see {@code InventoryJournal}). Every method is
+ * atomic except the secondary methods not overridden here, which are journaled
+ * and committed as the kernel calls they make; {@code applyBatch},
+ * {@code combine}, {@code transferFrom}, {@code tryReserve} and {@code release}
+ * hold the lock throughout and commit all their records with one wait. Since
+ * the lock is private, a client that synchronizes on {@code this} neither
+ * blocks these methods nor delays their commits. {@code attributes} and
+ * {@code lowStockItems} return copies. Change listeners are called with the
+ * lock held. Call {@code close} when done.
+ *
+ * @author Jacob Witt
+ */
+public final class JournaledInventory extends InventorySecondary
+        implements Closeable {
+
+    /*
+     * Private Members
+     */
+
+    /**
+     * The in-memory representation.
+     */
+    private final Inventory1 rep;
+
+    /**
+     * The journal of mutations to {@code rep}.
+     */
+    private final InventoryJournal journal;
+
+    /**
+     * The lock guarding {@code rep} and the order of records in
+     * {@code journal}; a thread that holds it while committing is inside a
+     * method that commits on its behalf.
+     */
+    private final Object lock = new Object();
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the journal at {@code file}, which is created if it
+     * does not exist.
+     *
+     * @param file
+     *            the journal file
+     */
+    public JournaledInventory(Path file) {
+        this.rep = new Inventory1();
+        this.journal = new InventoryJournal(file);
+        this.journal.replay(this.rep);
+        this.rep.addListener(this::fire);
+    }
+
+    /**
+     * Waits until record {@code record} of the journal is on the device,
+     * unless the calling thread holds {@code lock}, in which case an
+     * enclosing call commits it.
+     *
+     * @param record
+     *            the number of the record
+     */
+    private void commit(long record) {
+        if (!Thread.holdsLock(this.lock)) {
+            this.journal.commit(record);
+        }
+    }
+
+    /**
+     * Closes the journal; {@code this} must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (this.lock) {
+            this.journal.close();
+        }
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public Inventory newInstance() {
+        /*
+         * A second journal on the same file would interleave with this one,
+         * so new instances are in memory only
+         */
+        return new Inventory1();
+    }
+
+    @Override
+    public void clear() {
+        long record;
+        synchronized (this.lock) {
+            this.rep.clear();
+            record = this.journal.append(InventoryJournal.CLEAR, "");
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public void transferFrom(Inventory source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        long record;
+        synchronized (this.lock) {
+            this.clear();
+            super.combine(source);
+            record = this.journal.last();
+        }
+        this.commit(record);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(String barcode) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.add(barcode);
+            record = this.journal.append(InventoryJournal.ADD, barcode);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public Inventory.InventoryItem remove(String barcode) {
+        Inventory.InventoryItem item;
+        long record;
+        synchronized (this.lock) {
+            item = this.rep.remove(barcode);
+            record = this.journal.append(InventoryJournal.REMOVE, barcode);
+        }
+        this.commit(record);
+        return item;
+    }
+
+    @Override
+    public Inventory.InventoryItem removeAny() {
+        Inventory.InventoryItem item;
+        long record;
+        synchronized (this.lock) {
+            item = this.rep.removeAny();
+            record = this.journal.append(InventoryJournal.REMOVE,
+                    item.attributes().value("barcode"));
+        }
+        this.commit(record);
+        return item;
+    }
+
+    @Override
+    public int size() {
+        synchronized (this.lock) {
+            return this.rep.size();
+        }
+    }
+
+    @Override
+    public void increment(String barcode) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.increment(barcode);
+            record = this.journal.append(InventoryJournal.INCREMENT, barcode);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public void decrement(String barcode) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.decrement(barcode);
+            record = this.journal.append(InventoryJournal.DECREMENT, barcode);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public void adjustQuantity(String barcode, int delta) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.adjustQuantity(barcode, delta);
+            record = this.journal.append(InventoryJournal.ADJUST, barcode,
+                    delta);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public int quantity(String barcode) {
+        synchronized (this.lock) {
+            return this.rep.quantity(barcode);
+        }
+    }
+
+    @Override
+    public String name(String barcode) {
+        synchronized (this.lock) {
+            return this.rep.name(barcode);
+        }
+    }
+
+    @Override
+    public void setName(String barcode, String name) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.setName(barcode, name);
+            record = this.journal.append(InventoryJournal.SET_NAME, barcode,
+                    name);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public void addAttribute(String barcode, String name, String content) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.addAttribute(barcode, name, content);
+            record = this.journal.append(InventoryJournal.ADD_ATTRIBUTE,
+                    barcode, name, content);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public void placeOrder(String barcode, int amount) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.placeOrder(barcode, amount);
+            record = this.journal.append(InventoryJournal.PLACE_ORDER, barcode,
+                    amount);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public void receiveOrder(String barcode, int amount) {
+        long record;
+        synchronized (this.lock) {
+            this.rep.receiveOrder(barcode, amount);
+            record = this.journal.append(InventoryJournal.RECEIVE_ORDER,
+                    barcode, amount);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public String getAttribute(String barcode, String name) {
+        synchronized (this.lock) {
+            return this.rep.getAttribute(barcode, name);
+        }
+    }
+
+    @Override
+    public String removeAttribute(String barcode, String name) {
+        String content;
+        long record;
+        synchronized (this.lock) {
+            content = this.rep.removeAttribute(barcode, name);
+            record = this.journal.append(InventoryJournal.REMOVE_ATTRIBUTE,
+                    barcode, name);
+        }
+        this.commit(record);
+        return content;
+    }
+
+    @Override
+    public Set<String> attributes(String barcode) {
+        synchronized (this.lock) {
+            /*
+             * A view could change under the caller once the lock is released,
+             * so this returns a copy
+             */
+            Set<String> result = new Set1L<String>();
+            for (String name : this.rep.attributes(barcode)) {
+                result.add(name);
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public boolean contains(String barcode) {
+        synchronized (this.lock) {
+            return this.rep.contains(barcode);
+        }
+    }
+
+    /*
+     * Secondary methods overridden to use the faster rep ---------------------
+     */
+
+    @Override
+    public boolean[] applyBatch(Sequence<InventoryOp> ops) {
+        boolean[] results;
+        long record;
+        synchronized (this.lock) {
+            results = super.applyBatch(ops);
+            record = this.journal.last();
+        }
+        this.commit(record);
+        return results;
+    }
+
+    @Override
+    public boolean tryReserve(String barcode, int amount) {
+        assert amount >= 0 : "Violation of: amount >= 0";
+        long record;
+        synchronized (this.lock) {
+            if (!this.rep.tryReserve(barcode, amount)) {
+                return false;
+            }
+            record = this.journal.append(InventoryJournal.ADJUST, barcode,
+                    -amount);
+        }
+        this.commit(record);
+        return true;
+    }
+
+    @Override
+    public void release(String barcode, int amount) {
+        assert amount >= 0 : "Violation of: amount >= 0";
+        long record;
+        synchronized (this.lock) {
+            this.rep.release(barcode, amount);
+            record = this.journal.append(InventoryJournal.ADJUST, barcode,
+                    amount);
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public void combine(Inventory i) {
+        long record;
+        synchronized (this.lock) {
+            super.combine(i);
+            record = this.journal.last();
+        }
+        this.commit(record);
+    }
+
+    @Override
+    public String search(String name) {
+        synchronized (this.lock) {
+            return this.rep.search(name);
+        }
+    }
+
+    @Override
+    public boolean hasAttribute(String barcode, String name) {
+        synchronized (this.lock) {
+            return this.rep.hasAttribute(barcode, name);
+        }
+    }
+
+    @Override
+    public int reorderPoint(String barcode) {
+        synchronized (this.lock) {
+            return this.rep.reorderPoint(barcode);
+        }
+    }
+
+    @Override
+    public Set<String> lowStockItems() {
+        synchronized (this.lock) {
+            /*
+             * rep's view would change under the caller, so this returns a copy
+             */
+            Set<String> result = new Set1L<String>();
+            for (String barcode : this.rep.lowStockItems()) {
+                result.add(barcode);
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public int onOrder(String barcode) {
+        synchronized (this.lock) {
+            return this.rep.onOrder(barcode);
+        }
+    }
+
+    @Override
+    public void declareAttribute(String name, Inventory.AttributeType type) {
+        synchronized (this.lock) {
+            this.rep.declareAttribute(name, type);
+        }
+    }
+
+    @Override
+    public int intAttribute(String barcode, String name) {
+        synchronized (this.lock) {
+            return this.rep.intAttribute(barcode, name);
+        }
+    }
+
+    @Override
+    public long longAttribute(String barcode, String name) {
+        synchronized (this.lock) {
+            return this.rep.longAttribute(barcode, name);
+        }
+    }
+
+    @Override
+    public double doubleAttribute(String barcode, String name) {
+        synchronized (this.lock) {
+            return this.rep.doubleAttribute(barcode, name);
+        }
+    }
+
+    @Override
+    public void forEachItem(Inventory.ItemVisitor visitor) {
+        synchronized (this.lock) {
+            this.rep.forEachItem(visitor);
+        }
+    }
+
+    @Override
+    public Queue<Inventory.InventoryItem> drain() {
+        Queue<Inventory.InventoryItem> result;
+        long record;
+        synchronized (this.lock) {
+            result = this.rep.drain();
+            record = this.journal.append(InventoryJournal.CLEAR, "");
+        }
+        this.commit(record);
+        return result;
+    }
+
+    @Override
+    public Inventory snapshot() {
+        synchronized (this.lock) {
+            return this.rep.snapshot();
+        }
+    }
+
+    @Override
+    public Iterator<Inventory.InventoryItem> iterator() {
+        synchronized (this.lock) {
+            /*
+             * Iterating rep would add barcode attributes to its items that are
+             * not in the journal, so iterate a snapshot instead
+             */
+            return this.rep.snapshot().iterator();
+        }
+    }
+
+}
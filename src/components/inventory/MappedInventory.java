@@ -0,0 +1,718 @@
+package components.inventory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import components.map.Map;
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Inventory represented as a memory-mapped indexed snapshot (written by
+ * {@code InventorySnapshot.writeIndexed}) plus an {@code Inventory1} overlay
+ * of the items materialized from it.
+ *
+ * <p>
+ * Opening maps the file and reads only its footer, so lookups can be served
+ * immediately. {@code contains}, {@code quantity} and {@code hasAttribute}
+ * read the mapped record in place. Every other access to an item, and every change to it,
+ * materializes it into the overlay first; from then on its mapped record is
+ * ignored. The snapshot file is never written, so changes last only as long
+ * as {@code this}.
+ *
+ * <p>
+ * {@code snapshot} is O(1): the snapshot shares the mapping, a snapshot of
+ * the overlay and the set of resolved barcodes, which {@code this} copies
+ * the first time it resolves another record. A snapshot decodes a mapped
+ * item afresh on each access instead of materializing it.
+ *
+ * @author Jacob Witt
+ */
+public final class MappedInventory extends InventorySecondary {
+
+    /*
+     * Private Members
+     */
+
+    /**
+     * The mapped snapshot, or null when there is none (or it was cleared).
+     */
+    private ByteBuffer data;
+
+    /**
+     * Number of slots in the mapped index, a power of 2.
+     */
+    private int slotCount;
+
+    /**
+     * Offset of the mapped index within {@code data}.
+     */
+    private int indexOffset;
+
+    /**
+     * Number of mapped items not yet resolved.
+     */
+    private int unresolved;
+
+    /**
+     * Barcodes whose mapped record has been materialized or removed, and so
+     * no longer describes an item of {@code this}.
+     */
+    private Set<String> resolved;
+
+    /**
+     * The materialized items, and items added since opening.
+     */
+    private Inventory1 overlay;
+
+    /**
+     * Next index slot to check when {@code removeAny} takes a mapped item.
+     */
+    private int nextSlot;
+
+    /**
+     * Whether {@code resolved} is shared with a snapshot.
+     */
+    private boolean resolvedShared;
+
+    /**
+     * Whether {@code this} is a read-only snapshot.
+     */
+    private boolean frozen;
+
+    /**
+     * Creator of initial representation.
+     *
+     * @ensures this has no mapped snapshot and an empty overlay
+     */
+    private void createNewRep() {
+        this.data = null;
+        this.slotCount = 0;
+        this.indexOffset = 0;
+        this.unresolved = 0;
+        this.resolved = new Set1L<String>();
+        this.overlay = new Inventory1();
+        this.nextSlot = 0;
+        this.resolvedShared = false;
+    }
+
+    /**
+     * Throws if {@code this} is a snapshot.
+     *
+     * @throws UnsupportedOperationException
+     *             if {@code this} is a snapshot
+     */
+    private void checkWritable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(
+                    "Inventory snapshots are read-only");
+        }
+    }
+
+    /**
+     * Reads mapped records from a position in {@code data}.
+     */
+    private final class Reader {
+
+        /**
+         * Position of the next byte to read.
+         */
+        private int pos;
+
+        /**
+         * Constructor reading from {@code pos}.
+         *
+         * @param pos
+         *            the position of the first byte
+         */
+        private Reader(int pos) {
+            this.pos = pos;
+        }
+
+        /**
+         * Reads an unsigned varint.
+         *
+         * @return the value
+         */
+        private int varint() {
+            ByteBuffer d = MappedInventory.this.data;
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = d.get(this.pos);
+                this.pos++;
+                v |= (b & InventorySnapshot.VARINT_MASK) << shift;
+                shift += InventorySnapshot.VARINT_BITS;
+            } while (b < 0);
+            return v;
+        }
+
+        /**
+         * Reads a string.
+         *
+         * @return the string
+         */
+        private String string() {
+            int n = this.varint();
+            byte[] bytes = new byte[n];
+            MappedInventory.this.data.get(this.pos, bytes);
+            this.pos += n;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Skips a string.
+         */
+        private void skipString() {
+            int n = this.varint();
+            this.pos += n;
+        }
+
+        /**
+         * Returns whether the next string equals {@code bytes}, reading it
+         * only if it does.
+         *
+         * @param bytes
+         *            the UTF-8 bytes to compare with
+         * @return true iff the string equals {@code bytes}
+         */
+        private boolean stringEquals(byte[] bytes) {
+            ByteBuffer d = MappedInventory.this.data;
+            boolean equal = this.varint() == bytes.length;
+            for (int i = 0; equal && i < bytes.length; i++) {
+                equal = d.get(this.pos + i) == bytes[i];
+            }
+            return equal;
+        }
+
+        /**
+         * Reads the next string and returns whether it equals {@code bytes},
+         * without decoding it.
+         *
+         * @param bytes
+         *            the UTF-8 bytes to compare with
+         * @return true iff the string equals {@code bytes}
+         */
+        private boolean skipStringEquals(byte[] bytes) {
+            int start = this.pos;
+            boolean equal = this.stringEquals(bytes);
+            this.pos = start;
+            this.skipString();
+            return equal;
+        }
+    }
+
+    /**
+     * Returns the offset of the mapped record for {@code barcode}, or 0 if
+     * there is none or it has been resolved.
+     *
+     * @param barcode
+     *            the barcode
+     * @return the record offset, or 0
+     */
+    private int find(String barcode) {
+        int result = 0;
+        if (this.unresolved > 0 && !this.resolved.contains(barcode)) {
+            byte[] bytes = barcode.getBytes(StandardCharsets.UTF_8);
+            int hash = InventorySnapshot.indexHash(barcode);
+            int mask = this.slotCount - 1;
+            int i = hash & mask;
+            int offset = this.slotOffset(i);
+            while (offset != 0 && result == 0) {
+                if (this.slotHash(i) == hash
+                        && new Reader(offset).stringEquals(bytes)) {
+                    result = offset;
+                }
+                i = (i + 1) & mask;
+                offset = this.slotOffset(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hash stored in index slot {@code i}.
+     *
+     * @param i
+     *            the slot
+     * @return the hash
+     */
+    private int slotHash(int i) {
+        return this.data.getInt(this.indexOffset + i * InventorySnapshot.SLOT_BYTES);
+    }
+
+    /**
+     * Returns the record offset stored in index slot {@code i}, or 0 if it is
+     * empty.
+     *
+     * @param i
+     *            the slot
+     * @return the record offset
+     */
+    private int slotOffset(int i) {
+        return this.data.getInt(this.indexOffset
+                + i * InventorySnapshot.SLOT_BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Decodes the rest of a mapped record, after its barcode, into
+     * {@code target}.
+     *
+     * @param r
+     *            the reader, positioned after the record's barcode
+     * @param barcode
+     *            the record's barcode
+     * @param target
+     *            the inventory to insert the item into
+     * @updates target
+     */
+    private static void decode(Reader r, String barcode, Inventory1 target) {
+        String name = r.string();
+        int quantity = r.varint();
+        int attributeCount = r.varint();
+        AttributeMap attributes = null;
+        if (attributeCount > 0) {
+            attributes = new AttributeMap();
+        }
+        for (int a = 0; a < attributeCount; a++) {
+            String key = r.string();
+            attributes.add(key, r.string());
+        }
+        target.insert(barcode, name, quantity, attributes);
+    }
+
+    /**
+     * Copies the mapped record at {@code offset} into the overlay and marks
+     * it resolved.
+     *
+     * @param offset
+     *            the record offset
+     * @return the record's barcode
+     */
+    private String materialize(int offset) {
+        Reader r = new Reader(offset);
+        String barcode = r.string();
+        decode(r, barcode, this.overlay);
+        if (this.resolvedShared) {
+            Set<String> copy = new Set1L<String>();
+            for (String b : this.resolved) {
+                copy.add(b);
+            }
+            this.resolved = copy;
+            this.resolvedShared = false;
+        }
+        this.resolved.add(barcode);
+        this.unresolved--;
+        return barcode;
+    }
+
+    /**
+     * Returns the overlay, with the item with {@code barcode} materialized
+     * into it; in a snapshot, whose overlay is read-only, a mapped item is
+     * instead decoded into a new inventory, which is returned.
+     *
+     * @param barcode
+     *            the barcode
+     * @return an inventory holding the item with {@code barcode}
+     * @requires an item with {@code barcode} is in {@code this}
+     */
+    private Inventory1 item(String barcode) {
+        Inventory1 result = this.overlay;
+        if (!this.overlay.contains(barcode)) {
+            int offset = this.find(barcode);
+            assert offset != 0 : "Violation of: an item with barcode is in this";
+            if (this.frozen) {
+                Reader r = new Reader(offset);
+                r.skipString();
+                result = new Inventory1();
+                decode(r, barcode, result);
+            } else {
+                this.materialize(offset);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor: an empty inventory with no snapshot.
+     */
+    public MappedInventory() {
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor opening the indexed snapshot at {@code file}.
+     *
+     * @param file
+     *            the indexed snapshot
+     * @throws UncheckedIOException
+     *             if the file cannot be mapped or is not an indexed snapshot
+     */
+    public MappedInventory(Path file) {
+        this.createNewRep();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < Integer.BYTES + 1 + InventorySnapshot.FOOTER_BYTES
+                    || length > Integer.MAX_VALUE) {
+                throw new IOException("Not an indexed inventory snapshot");
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    length);
+            int footer = (int) length - InventorySnapshot.FOOTER_BYTES;
+            int slots = mapped.getInt(footer);
+            int count = mapped.getInt(footer + Integer.BYTES);
+            int index = mapped.getInt(footer + 2 * Integer.BYTES);
+            if (mapped.getInt(0) != InventorySnapshot.INDEXED_MAGIC
+                    || mapped.get(Integer.BYTES) != InventorySnapshot.VERSION
+                    || mapped.getInt(footer + 3 * Integer.BYTES)
+                            != InventorySnapshot.INDEXED_MAGIC
+                    || Integer.bitCount(slots) != 1 || count < 0 || count >= slots
+                    || index < 0 || (long) index
+                            + (long) slots * InventorySnapshot.SLOT_BYTES != footer) {
+                throw new IOException("Not an indexed inventory snapshot");
+            }
+            this.data = mapped;
+            this.slotCount = slots;
+            this.indexOffset = index;
+            this.unresolved = count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Constructor of a read-only snapshot sharing the mapping and the
+     * resolved barcodes of {@code source}.
+     *
+     * @param source
+     *            the inventory being snapshotted, which must then treat its
+     *            resolved barcodes as shared
+     */
+    private MappedInventory(MappedInventory source) {
+        this.data = source.data;
+        this.slotCount = source.slotCount;
+        this.indexOffset = source.indexOffset;
+        this.unresolved = source.unresolved;
+        this.resolved = source.resolved;
+        this.overlay = (Inventory1) source.overlay.snapshot();
+        this.nextSlot = source.nextSlot;
+        this.frozen = true;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public Inventory newInstance() {
+        return new MappedInventory();
+    }
+
+    @Override
+    public void clear() {
+        this.checkWritable();
+        this.createNewRep();
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+    }
+
+    @Override
+    public void transferFrom(Inventory source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof MappedInventory : "Violation of: source is "
+                + "of dynamic type MappedInventory";
+        MappedInventory localSource = (MappedInventory) source;
+        this.checkWritable();
+        localSource.checkWritable();
+        this.data = localSource.data;
+        this.slotCount = localSource.slotCount;
+        this.indexOffset = localSource.indexOffset;
+        this.unresolved = localSource.unresolved;
+        this.resolved = localSource.resolved;
+        this.overlay = localSource.overlay;
+        this.nextSlot = localSource.nextSlot;
+        this.resolvedShared = localSource.resolvedShared;
+        localSource.createNewRep();
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+        if (localSource.hasListeners()) {
+            localSource.fire(InventoryEvent.reset());
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(String barcode) {
+        assert this.find(barcode) == 0 : "Violation of: an item with barcode "
+                + "is not already in this";
+        this.checkWritable();
+        this.overlay.add(barcode);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.added(barcode, ""));
+        }
+    }
+
+    @Override
+    public Inventory.InventoryItem remove(String barcode) {
+        this.checkWritable();
+        Inventory.InventoryItem item = this.item(barcode).remove(barcode);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.removed(barcode));
+        }
+        return item;
+    }
+
+    @Override
+    public Inventory.InventoryItem removeAny() {
+        this.checkWritable();
+        assert this.size() > 0 : "Violation of: this.size > 0";
+        if (this.overlay.size() == 0) {
+            /*
+             * Resolved records are never unresolved again, so the scan for an
+             * unresolved one can carry on from where the last one stopped
+             */
+            String barcode = null;
+            while (barcode == null) {
+                int offset = this.slotOffset(this.nextSlot);
+                this.nextSlot++;
+                if (offset != 0) {
+                    Reader r = new Reader(offset);
+                    String candidate = r.string();
+                    if (!this.resolved.contains(candidate)) {
+                        barcode = this.materialize(offset);
+                    }
+                }
+            }
+        }
+        Inventory.InventoryItem item = this.overlay.removeAny();
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.removed(item.attributes().value("barcode")));
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        return this.overlay.size() + this.unresolved;
+    }
+
+    @Override
+    public void increment(String barcode) {
+        this.checkWritable();
+        this.item(barcode).increment(barcode);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, 1,
+                    this.overlay.quantity(barcode)));
+        }
+    }
+
+    @Override
+    public void decrement(String barcode) {
+        this.checkWritable();
+        this.item(barcode).decrement(barcode);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, -1,
+                    this.overlay.quantity(barcode)));
+        }
+    }
+
+    @Override
+    public void adjustQuantity(String barcode, int delta) {
+        this.checkWritable();
+        this.item(barcode).adjustQuantity(barcode, delta);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.quantity(barcode, delta,
+                    this.overlay.quantity(barcode)));
+        }
+    }
+
+    @Override
+    public int quantity(String barcode) {
+        int result;
+        int offset = 0;
+        if (!this.overlay.contains(barcode)) {
+            offset = this.find(barcode);
+            assert offset != 0 : "Violation of: an item with barcode is in this";
+        }
+        if (offset != 0) {
+            Reader r = new Reader(offset);
+            r.skipString();
+            r.skipString();
+            result = r.varint();
+        } else {
+            result = this.overlay.quantity(barcode);
+        }
+        return result;
+    }
+
+    @Override
+    public String name(String barcode) {
+        return this.item(barcode).name(barcode);
+    }
+
+    @Override
+    public void setName(String barcode, String name) {
+        this.checkWritable();
+        this.item(barcode).setName(barcode, name);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.renamed(barcode, name));
+        }
+    }
+
+    @Override
+    public void addAttribute(String barcode, String name, String content) {
+        this.checkWritable();
+        this.item(barcode).addAttribute(barcode, name, content);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, name, content));
+        }
+    }
+
+    @Override
+    public String getAttribute(String barcode, String name) {
+        return this.item(barcode).getAttribute(barcode, name);
+    }
+
+    @Override
+    public String removeAttribute(String barcode, String name) {
+        this.checkWritable();
+        String content = this.item(barcode).removeAttribute(barcode, name);
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.attribute(barcode, name, null));
+        }
+        return content;
+    }
+
+    @Override
+    public Set<String> attributes(String barcode) {
+        return this.item(barcode).attributes(barcode);
+    }
+
+    @Override
+    public boolean contains(String barcode) {
+        return this.overlay.contains(barcode) || this.find(barcode) != 0;
+    }
+
+    /*
+     * Secondary methods overridden to avoid materializing items --------------
+     */
+
+    @Override
+    public boolean hasAttribute(String barcode, String name) {
+        boolean result = false;
+        int offset = 0;
+        if (!this.overlay.contains(barcode)) {
+            offset = this.find(barcode);
+            assert offset != 0 : "Violation of: an item with barcode is in this";
+        }
+        if (offset != 0) {
+            /*
+             * Compare the record's attribute names in place
+             */
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            Reader r = new Reader(offset);
+            r.skipString();
+            r.skipString();
+            r.varint();
+            int attributeCount = r.varint();
+            for (int a = 0; a < attributeCount && !result; a++) {
+                result = r.skipStringEquals(bytes);
+                r.skipString();
+            }
+        } else {
+            result = this.overlay.hasAttribute(barcode, name);
+        }
+        return result;
+    }
+
+    @Override
+    public String search(String name) {
+        String result = this.overlay.search(name);
+        if (result.length() == 0 && this.unresolved > 0) {
+            /*
+             * Compare names in place, without materializing the items scanned
+             */
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < this.slotCount && result.length() == 0; i++) {
+                int offset = this.slotOffset(i);
+                if (offset != 0) {
+                    Reader r = new Reader(offset);
+                    String barcode = r.string();
+                    if (r.stringEquals(bytes) && !this.resolved.contains(barcode)) {
+                        result = barcode;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachItem(Inventory.ItemVisitor visitor) {
+        this.overlay.forEachItem(visitor);
+        if (this.unresolved > 0) {
+            /*
+             * Mapped items are decoded into one scratch inventory, which is
+             * emptied after each visit, rather than materialized
+             */
+            Inventory1 scratch = new Inventory1();
+            for (int i = 0; i < this.slotCount; i++) {
+                int offset = this.slotOffset(i);
+                if (offset != 0) {
+                    Reader r = new Reader(offset);
+                    String barcode = r.string();
+                    if (!this.resolved.contains(barcode)) {
+                        decode(r, barcode, scratch);
+                        scratch.forEachItem(visitor);
+                        scratch.remove(barcode);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Inventory snapshot() {
+        if (this.frozen) {
+            return this;
+        }
+        MappedInventory snapshot = new MappedInventory(this);
+        this.resolvedShared = true;
+        return snapshot;
+    }
+
+    @Override
+    public Iterator<Inventory.InventoryItem> iterator() {
+        /*
+         * Iterate a copy, so that iterating neither materializes every item
+         * nor adds barcode attributes to the overlay's items
+         */
+        Inventory1 copy = new Inventory1(this.size());
+        this.forEachItem((barcode, item) -> {
+            AttributeMap attributes = new AttributeMap();
+            for (Map.Pair<String, String> attr : item.attributes()) {
+                attributes.add(attr.key(), attr.value());
+            }
+            copy.insert(barcode, item.name(), item.quantity(), attributes);
+        });
+        return copy.iterator();
+    }
+
+}
@@ -0,0 +1,116 @@
+package components.inventory;
+import java.util.Iterator;
+
+import components.set.Set;
+import components.set.Set1L;
+import components.set.SetSecondary;
+
+/**
+ * Read-only {@code Set} view of some collection kept by an inventory, such
+ * as its low-stock index or the attribute names of one item, so that callers
+ * see it without copying it.
+ *
+ * <p>
+ * Every method that would modify the set throws
+ * {@code UnsupportedOperationException}. {@code newInstance} returns an
+ * ordinary, modifiable {@code Set1L}. Subclasses supply {@code contains},
+ * {@code size} and {@code iterator}; {@code of} views a {@code Set}.
+ *
+ * @param <T>
+ *            type of {@code ReadOnlySet} entries
+ * @author Jacob Witt
+ */
+abstract class ReadOnlySet<T> extends SetSecondary<T> {
+
+    /**
+     * Read-only view of a {@code Set}.
+     *
+     * @param <T>
+     *            type of {@code SetView} entries
+     */
+    private static final class SetView<T> extends ReadOnlySet<T> {
+
+        /**
+         * The set viewed.
+         */
+        private final Set<T> set;
+
+        /**
+         * Constructor viewing {@code set}.
+         *
+         * @param set
+         *            the set to view
+         */
+        private SetView(Set<T> set) {
+            this.set = set;
+        }
+
+        @Override
+        public boolean contains(T x) {
+            return this.set.contains(x);
+        }
+
+        @Override
+        public int size() {
+            return this.set.size();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return this.set.iterator();
+        }
+    }
+
+    /**
+     * Returns a read-only view of {@code set}.
+     *
+     * @param <T>
+     *            type of the entries
+     * @param set
+     *            the set to view
+     * @return the view
+     * @ensures of = set
+     */
+    static <T> Set<T> of(Set<T> set) {
+        return new SetView<T>(set);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final Set<T> newInstance() {
+        return new Set1L<T>();
+    }
+
+    @Override
+    public final void clear() {
+        throw new UnsupportedOperationException("This set is read-only");
+    }
+
+    @Override
+    public final void transferFrom(Set<T> source) {
+        throw new UnsupportedOperationException("This set is read-only");
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        throw new UnsupportedOperationException("This set is read-only");
+    }
+
+    @Override
+    public final T remove(T x) {
+        throw new UnsupportedOperationException("This set is read-only");
+    }
+
+    @Override
+    public final T removeAny() {
+        throw new UnsupportedOperationException("This set is read-only");
+    }
+
+}
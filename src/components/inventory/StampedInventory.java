@@ -0,0 +1,627 @@
+package components.inventory;
+import java.util.Iterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+import components.queue.Queue;
+import components.sequence.Sequence;
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Thread-safe inventory for read-mostly use, represented as an
+ * {@code Inventory1} guarded by a {@code StampedLock}.
+ *
+ * <p>
+ * Writers take the exclusive write lock. Readers first read optimistically,
+ * taking no lock at all, and then validate the stamp; only when a write
+ * overlapped the read (or the read was torn and threw) is the read repeated
+ * under the shared read lock. Lookups such as {@code contains},
+ * {@code quantity} and {@code name} therefore never write to shared memory
+ * unless they race a writer. Every kernel method, and
+ * {@code add(barcode, name)}, {@code setQuantity}, {@code setAttribute},
+ * {@code hasAttribute}, {@code search}, {@code tryReserve}, {@code release},
+ * {@code setReorderPoint} and {@code applyBatch}, is atomic. The remaining
+ * secondary methods are sequences of atomic calls. {@code attributes} and
+ * {@code lowStockItems} return copies. Change listeners are called with the
+ * write lock held, so they must not call {@code this}. {@code snapshot} holds
+ * the write lock only long enough to mark the representation as shared, and
+ * iteration runs over a snapshot, so it takes no lock at all. Snapshots are
+ * reused until the next write, so repeated iteration between writes copies
+ * nothing.
+ *
+ * @author Jacob Witt
+ */
+public final class StampedInventory extends InventorySecondary {
+
+    /*
+     * Private Members
+     */
+
+    /**
+     * The guarded representation.
+     */
+    private Inventory1 rep;
+
+    /**
+     * Lock guarding {@code rep}.
+     */
+    private final StampedLock lock;
+
+    /**
+     * Lock held while write-locking two instances whose identity hash codes
+     * are equal, which {@code transferFrom} cannot otherwise order.
+     */
+    private static final Object TIE_LOCK = new Object();
+
+    /**
+     * Passes the changes {@code rep} reports on to the listeners of
+     * {@code this}.
+     */
+    private final Inventory.ChangeListener forward = this::fire;
+
+    /**
+     * A snapshot of {@code rep} and the optimistic stamp taken right after
+     * it; the snapshot is current while the stamp validates.
+     */
+    private static final class View {
+
+        /**
+         * The snapshot.
+         */
+        private final Inventory snapshot;
+
+        /**
+         * The stamp that stops validating at the next write.
+         */
+        private final long stamp;
+
+        /**
+         * Constructor from {@code snapshot} and {@code stamp}.
+         *
+         * @param snapshot
+         *            the snapshot
+         * @param stamp
+         *            the stamp
+         */
+        private View(Inventory snapshot, long stamp) {
+            this.snapshot = snapshot;
+            this.stamp = stamp;
+        }
+
+    }
+
+    /**
+     * The last snapshot taken, or null before the first.
+     */
+    private volatile View view;
+
+    /**
+     * Returns the value of {@code reader}, read optimistically and repeated
+     * under the read lock if a write overlapped it.
+     *
+     * @param <T>
+     *            type of the value read
+     * @param reader
+     *            the read, which must not modify {@code rep}
+     * @return the value read
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (this.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException | AssertionError e) {
+                /*
+                 * A torn read of a rep being written; read again under the lock
+                 */
+            }
+        }
+        stamp = this.lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a snapshot of {@code rep}, reusing the last one taken unless a
+     * write has happened since, so that reads between two writes share one
+     * copy-on-write epoch instead of starting one each.
+     *
+     * @return a read-only copy of {@code rep}
+     */
+    private Inventory currentSnapshot() {
+        View current = this.view;
+        if (current == null || !this.lock.validate(current.stamp)) {
+            /*
+             * Taking the snapshot only marks rep's table as shared, so the
+             * write lock is held for O(1) time; converting it to an
+             * optimistic stamp releases it without counting as a write
+             */
+            long stamp = this.lock.writeLock();
+            Inventory snapshot;
+            try {
+                snapshot = this.rep.snapshot();
+            } finally {
+                stamp = this.lock.tryConvertToOptimisticRead(stamp);
+            }
+            current = new View(snapshot, stamp);
+            this.view = current;
+        }
+        return current.snapshot;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public StampedInventory() {
+        this.rep = new Inventory1();
+        this.rep.addListener(this.forward);
+        this.lock = new StampedLock();
+    }
+
+    /**
+     * Constructor presized for {@code expectedSize} items.
+     *
+     * @param expectedSize
+     *            the number of items expected
+     * @requires expectedSize >= 0
+     */
+    public StampedInventory(int expectedSize) {
+        this.rep = new Inventory1(expectedSize);
+        this.rep.addListener(this.forward);
+        this.lock = new StampedLock();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public Inventory newInstance() {
+        return new StampedInventory();
+    }
+
+    @Override
+    public void clear() {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.clear();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void transferFrom(Inventory source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof StampedInventory : "Violation of: source is "
+                + "of dynamic type StampedInventory";
+        StampedInventory localSource = (StampedInventory) source;
+        /*
+         * Lock the two instances in order of identity hash code, so that two
+         * crossed transfers cannot deadlock
+         */
+        int hash = System.identityHashCode(this);
+        int sourceHash = System.identityHashCode(localSource);
+        long stamp;
+        long sourceStamp;
+        if (hash < sourceHash) {
+            stamp = this.lock.writeLock();
+            sourceStamp = localSource.lock.writeLock();
+        } else if (sourceHash < hash) {
+            sourceStamp = localSource.lock.writeLock();
+            stamp = this.lock.writeLock();
+        } else {
+            synchronized (TIE_LOCK) {
+                stamp = this.lock.writeLock();
+                sourceStamp = localSource.lock.writeLock();
+            }
+        }
+        try {
+            this.rep = localSource.rep;
+            this.rep.removeListener(localSource.forward);
+            this.rep.addListener(this.forward);
+            localSource.rep = new Inventory1();
+            localSource.rep.addListener(localSource.forward);
+        } finally {
+            this.lock.unlockWrite(stamp);
+            localSource.lock.unlockWrite(sourceStamp);
+        }
+        if (this.hasListeners()) {
+            this.fire(InventoryEvent.reset());
+        }
+        if (localSource.hasListeners()) {
+            localSource.fire(InventoryEvent.reset());
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(String barcode) {
+        this.add(barcode, "");
+    }
+
+    @Override
+    public Inventory.InventoryItem remove(String barcode) {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.rep.remove(barcode);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Inventory.InventoryItem removeAny() {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.rep.removeAny();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.read(() -> this.rep.size());
+    }
+
+    @Override
+    public void increment(String barcode) {
+        this.adjustQuantity(barcode, 1);
+    }
+
+    @Override
+    public void decrement(String barcode) {
+        this.adjustQuantity(barcode, -1);
+    }
+
+    @Override
+    public void adjustQuantity(String barcode, int delta) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.adjustQuantity(barcode, delta);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int quantity(String barcode) {
+        /*
+         * Written out rather than through read, like contains, so the hottest
+         * lookups neither allocate a lambda nor box their result
+         */
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int result = this.rep.quantity(barcode);
+                if (this.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException | AssertionError e) {
+                /*
+                 * A torn read of a rep being written; read again under the lock
+                 */
+            }
+        }
+        stamp = this.lock.readLock();
+        try {
+            return this.rep.quantity(barcode);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public String name(String barcode) {
+        return this.read(() -> this.rep.name(barcode));
+    }
+
+    @Override
+    public void setName(String barcode, String name) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.setName(barcode, name);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void addAttribute(String barcode, String name, String content) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.addAttribute(barcode, name, content);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public String getAttribute(String barcode, String name) {
+        return this.read(() -> this.rep.getAttribute(barcode, name));
+    }
+
+    @Override
+    public String removeAttribute(String barcode, String name) {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.rep.removeAttribute(barcode, name);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Set<String> attributes(String barcode) {
+        /*
+         * A view could change under the caller once the read ends, so this
+         * returns a copy
+         */
+        return this.read(() -> {
+            Set<String> result = new Set1L<String>();
+            for (String name : this.rep.attributes(barcode)) {
+                result.add(name);
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public boolean contains(String barcode) {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                boolean result = this.rep.contains(barcode);
+                if (this.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException | AssertionError e) {
+                /*
+                 * A torn read of a rep being written; read again under the lock
+                 */
+            }
+        }
+        stamp = this.lock.readLock();
+        try {
+            return this.rep.contains(barcode);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * Secondary methods overridden for atomicity -----------------------------
+     */
+
+    @Override
+    public String search(String name) {
+        return this.read(() -> this.rep.search(name));
+    }
+
+    @Override
+    public void add(String barcode, String name) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.add(barcode, name);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setQuantity(String barcode, int quantity) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.setQuantity(barcode, quantity);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setAttribute(String barcode, String name, String content) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.setAttribute(barcode, name, content);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean hasAttribute(String barcode, String name) {
+        return this.read(() -> this.rep.hasAttribute(barcode, name));
+    }
+
+    @Override
+    public void setReorderPoint(String barcode, int reorderPoint) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.setReorderPoint(barcode, reorderPoint);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int reorderPoint(String barcode) {
+        return this.read(() -> this.rep.reorderPoint(barcode));
+    }
+
+    @Override
+    public void placeOrder(String barcode, int amount) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.placeOrder(barcode, amount);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void receiveOrder(String barcode, int amount) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.receiveOrder(barcode, amount);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int onOrder(String barcode) {
+        return this.read(() -> this.rep.onOrder(barcode));
+    }
+
+    @Override
+    public void declareAttribute(String name, Inventory.AttributeType type) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.declareAttribute(name, type);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int intAttribute(String barcode, String name) {
+        return this.read(() -> this.rep.intAttribute(barcode, name));
+    }
+
+    @Override
+    public long longAttribute(String barcode, String name) {
+        return this.read(() -> this.rep.longAttribute(barcode, name));
+    }
+
+    @Override
+    public double doubleAttribute(String barcode, String name) {
+        return this.read(() -> this.rep.doubleAttribute(barcode, name));
+    }
+
+    @Override
+    public void setIntAttribute(String barcode, String name, int value) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.setIntAttribute(barcode, name, value);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setLongAttribute(String barcode, String name, long value) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.setLongAttribute(barcode, name, value);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setDoubleAttribute(String barcode, String name, double value) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.setDoubleAttribute(barcode, name, value);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Set<String> lowStockItems() {
+        /*
+         * rep's view would change under the caller, so this returns a copy
+         */
+        Set<String> result = new Set1L<String>();
+        long stamp = this.lock.readLock();
+        try {
+            for (String barcode : this.rep.lowStockItems()) {
+                result.add(barcode);
+            }
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean tryReserve(String barcode, int amount) {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.rep.tryReserve(barcode, amount);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void release(String barcode, int amount) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.rep.release(barcode, amount);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean[] applyBatch(Sequence<InventoryOp> ops) {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.rep.applyBatch(ops);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void forEachItem(Inventory.ItemVisitor visitor) {
+        long stamp = this.lock.readLock();
+        try {
+            this.rep.forEachItem(visitor);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Queue<Inventory.InventoryItem> drain() {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.rep.drain();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Inventory snapshot() {
+        return this.currentSnapshot();
+    }
+
+    @Override
+    public Iterator<Inventory.InventoryItem> iterator() {
+        /*
+         * Iterate a snapshot, so a slow iteration never holds up writers
+         */
+        return this.currentSnapshot().iterator();
+    }
+
+}
@@ -0,0 +1,93 @@
+package components.inventory;
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Reference-counted dictionary of the distinct contents of one attribute
+ * declared CATEGORY, so that the items of an inventory share one
+ * {@code String} per distinct content instead of each keeping its own copy.
+ *
+ * <p>
+ * Items keep the canonical {@code String} returned by {@code acquire}, which
+ * takes no more room than an integer code and, unlike a code, stays readable
+ * in snapshots and in items removed from the inventory. Two canonical
+ * contents of the same attribute are equal exactly when they are the same
+ * object, so {@code equals} between them stops at its identity test. A
+ * content is dropped once no item of the inventory holds it.
+ *
+ * @author Jacob Witt
+ */
+final class ValueDictionary {
+
+    /**
+     * A canonical content and the number of items holding it.
+     */
+    private static final class Entry {
+
+        /**
+         * The canonical content.
+         */
+        private final String content;
+
+        /**
+         * Number of items holding {@code content}.
+         */
+        private int references;
+
+        /**
+         * Constructor of an entry held by one item.
+         *
+         * @param content
+         *            the canonical content
+         */
+        private Entry(String content) {
+            this.content = content;
+            this.references = 1;
+        }
+    }
+
+    /**
+     * Entry for each distinct content.
+     */
+    private final Map<String, Entry> entries = new Map1L<String, Entry>();
+
+    /**
+     * Returns the canonical copy of {@code content}, counting one more item
+     * as holding it.
+     *
+     * @param content
+     *            the content
+     * @return the canonical copy, equal to {@code content}
+     * @updates this
+     */
+    String acquire(String content) {
+        String result = content;
+        if (this.entries.hasKey(content)) {
+            Entry entry = this.entries.value(content);
+            entry.references++;
+            result = entry.content;
+        } else {
+            this.entries.add(content, new Entry(content));
+        }
+        return result;
+    }
+
+    /**
+     * Counts one fewer item as holding {@code content}, dropping it when none
+     * does.
+     *
+     * @param content
+     *            the content
+     * @requires content was returned by {@code acquire} and not released as
+     *           often as acquired
+     * @updates this
+     */
+    void release(String content) {
+        Entry entry = this.entries.value(content);
+        entry.references--;
+        if (entry.references == 0) {
+            this.entries.remove(content);
+        }
+    }
+
+}
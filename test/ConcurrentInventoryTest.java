@@ -0,0 +1,379 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.util.function.IntConsumer;
+
+import components.inventory.ConcurrentInventory;
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.InventoryOp;
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * JUnit test fixture for {@code ConcurrentInventory}, checked against
+ * {@code Inventory1} and under concurrent use.
+ *
+ * @author Jacob Witt
+ */
+public class ConcurrentInventoryTest {
+    /**
+     * Number of threads used by the concurrent tests.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Create an inventory with the specified arguments.
+     *
+     * @param args
+     *      the barcodes add to the inventory
+     * @return
+     *      the created inventory
+     */
+    private Inventory createFromArgsTest(String... args) {
+        Inventory result = new ConcurrentInventory();
+        for (String s: args) {
+            result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Create a reference inventory with the specified arguments.
+     *
+     * @param args
+     *      the barcodes add to the inventory
+     * @return
+     *      the created inventory
+     */
+    private Inventory createFromArgsRef(String... args) {
+        Inventory result = new Inventory1();
+        for (String s: args) {
+            result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Runs {@code task} on THREADS threads at once, passing each its index,
+     * and waits for all of them.
+     *
+     * @param task
+     *      the work for each thread
+     * @throws InterruptedException
+     *      if interrupted while waiting
+     */
+    private static void runThreads(IntConsumer task)
+            throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int index = t;
+            threads[t] = new Thread(() -> task.accept(index));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+      /**
+       * Tests the kernel and secondary methods against Inventory1.
+       */
+      @Test
+      public final void testMatchesInventory1() {
+        Inventory test = createFromArgsTest("hey", "hi", "1001");
+        Inventory expected = createFromArgsRef("hey", "hi", "1001");
+        test.setName("hey", "Greeting");
+        expected.setName("hey", "Greeting");
+        test.setQuantity("1001", 4);
+        expected.setQuantity("1001", 4);
+        test.addAttribute("hi", "Attr", "Val");
+        expected.addAttribute("hi", "Attr", "Val");
+        test.setAttribute("hi", "Attr", "Val2");
+        expected.setAttribute("hi", "Attr", "Val2");
+        assertEquals(expected, test);
+        assertEquals(test, expected);
+        assertEquals("hey", test.search("Greeting"));
+        assertEquals(true, test.hasAttribute("hi", "Attr"));
+        assertEquals("Val2", test.getAttribute("hi", "Attr"));
+        Inventory.InventoryItem removed = test.remove("1001");
+        assertEquals(4, removed.quantity());
+        assertEquals(2, test.size());
+      }
+
+      /**
+       * Tests combine and transferFrom.
+       */
+      @Test
+      public final void testCombineTransferFrom() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        Inventory other = createFromArgsTest("hi", "hello");
+        Inventory expected = createFromArgsRef("hey", "hi", "hello");
+        other.setQuantity("hi", 2);
+        expected.setQuantity("hi", 2);
+        test.combine(other);
+        assertEquals(expected, test);
+        assertEquals(0, other.size());
+        other.transferFrom(test);
+        assertEquals(expected, other);
+        assertEquals(0, test.size());
+      }
+
+      /**
+       * Tests increment from many threads on a few shared barcodes.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting
+       */
+      @Test
+      public final void testConcurrentIncrement() throws InterruptedException {
+        final int perThread = 10000;
+        Inventory test = createFromArgsTest("hot1", "hot2");
+        runThreads(t -> {
+          for (int k = 0; k < perThread; k++) {
+            test.increment("hot" + (k % 2 + 1));
+          }
+        });
+        assertEquals(THREADS * perThread / 2, test.quantity("hot1"));
+        assertEquals(THREADS * perThread / 2, test.quantity("hot2"));
+      }
+
+      /**
+       * Tests increment, decrement, and adjustQuantity from many threads on
+       * one hot barcode.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting
+       */
+      @Test
+      public final void testConcurrentHotItem() throws InterruptedException {
+        final int perThread = 10000;
+        Inventory test = createFromArgsTest("hot");
+        test.setQuantity("hot", 1);
+        runThreads(t -> {
+          for (int k = 0; k < perThread; k++) {
+            test.adjustQuantity("hot", 2);
+            test.decrement("hot");
+            test.increment("hot");
+            test.decrement("hot");
+          }
+        });
+        assertEquals(1 + THREADS * perThread, test.quantity("hot"));
+      }
+
+      /**
+       * Tests add and remove from many threads on distinct barcodes.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting
+       */
+      @Test
+      public final void testConcurrentAddRemove() throws InterruptedException {
+        final int perThread = 2000;
+        Inventory test = createFromArgsTest();
+        runThreads(t -> {
+          for (int k = 0; k < perThread; k++) {
+            test.add(t + "-" + k, "Item");
+            test.setQuantity(t + "-" + k, k);
+          }
+          for (int k = 0; k < perThread; k += 2) {
+            test.remove(t + "-" + k);
+          }
+        });
+        assertEquals(THREADS * perThread / 2, test.size());
+        assertEquals(perThread - 1, test.quantity("0-" + (perThread - 1)));
+        assertEquals(false, test.contains("3-0"));
+      }
+
+      /**
+       * Tests tryReserve from many threads - exactly the available units are
+       * reserved, never more.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting
+       */
+      @Test
+      public final void testConcurrentTryReserve() throws InterruptedException {
+        final int stock = 5000;
+        Inventory test = createFromArgsTest("hot");
+        test.setQuantity("hot", stock);
+        int[] reserved = new int[THREADS];
+        runThreads(t -> {
+          while (test.tryReserve("hot", 3)) {
+            reserved[t] += 3;
+          }
+        });
+        int total = 0;
+        for (int r : reserved) {
+          total += r;
+        }
+        assertEquals(stock - stock % 3, total);
+        assertEquals(stock % 3, test.quantity("hot"));
+      }
+
+      /**
+       * Tests applyBatch - per-op results and the same final state as the
+       * single calls, including ops that fail and ops on one barcode in
+       * order.
+       */
+      @Test
+      public final void testApplyBatch() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        Inventory expected = createFromArgsRef("hey", "hi", "new");
+        expected.setName("new", "New");
+        expected.setQuantity("new", 1);
+        expected.setName("hey", "Greeting");
+        expected.setQuantity("hi", 2);
+        expected.addAttribute("hi", "Attr", "Val2");
+        Sequence<InventoryOp> ops = new Sequence1L<InventoryOp>();
+        ops.add(ops.length(), InventoryOp.add("new", "New"));
+        ops.add(ops.length(), InventoryOp.adjust("new", 3));
+        ops.add(ops.length(), InventoryOp.adjust("new", -2));
+        ops.add(ops.length(), InventoryOp.adjust("new", -2));
+        ops.add(ops.length(), InventoryOp.add("hey", "Dup"));
+        ops.add(ops.length(), InventoryOp.setName("hey", "Greeting"));
+        ops.add(ops.length(), InventoryOp.adjust("missing", 1));
+        ops.add(ops.length(), InventoryOp.adjust("hi", 2));
+        ops.add(ops.length(), InventoryOp.putAttribute("hi", "Attr", "Val"));
+        ops.add(ops.length(), InventoryOp.putAttribute("hi", "Attr", "Val2"));
+        boolean[] results = test.applyBatch(ops);
+        boolean[] expectedResults = {true, true, true, false, false, true,
+            false, true, true, true};
+        assertEquals(expectedResults.length, results.length);
+        for (int i = 0; i < results.length; i++) {
+          assertEquals(expectedResults[i], results[i]);
+        }
+        assertEquals(expected, test);
+        assertEquals("new", test.search("New"));
+        assertEquals("", test.search("Dup"));
+      }
+
+      /**
+       * Tests snapshot - later writes to the shared stripes do not change it.
+       */
+      @Test
+      public final void testSnapshot() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        test.setQuantity("hi", 2);
+        test.addAttribute("hello", "Attr", "Val");
+        Inventory expected = createFromArgsRef("hey", "hi", "hello");
+        expected.setQuantity("hi", 2);
+        expected.addAttribute("hello", "Attr", "Val");
+        Inventory snapshot = test.snapshot();
+        test.increment("hi");
+        test.removeAttribute("hello", "Attr");
+        test.add("new");
+        assertEquals(expected, snapshot);
+        assertEquals(4, test.size());
+      }
+
+      /**
+       * Tests snapshot - quantity updates, reservations, removals and drain
+       * after a snapshot leave it as it was, and it cannot be changed.
+       */
+      @Test
+      public final void testSnapshotSharedItems() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        test.setQuantity("hey", 5);
+        test.setName("hi", "Greeting");
+        Inventory snapshot = test.snapshot();
+        test.adjustQuantity("hey", 2);
+        assertEquals(true, test.tryReserve("hey", 7));
+        test.remove("hi").attributes().add("Note", "taken");
+        assertEquals(5, snapshot.quantity("hey"));
+        assertEquals("Greeting", snapshot.name("hi"));
+        assertEquals(0, snapshot.attributes("hi").size());
+        Inventory second = test.snapshot();
+        test.drain();
+        assertEquals(0, test.size());
+        assertEquals(3, snapshot.size());
+        assertEquals(2, second.size());
+        assertEquals(0, second.quantity("hey"));
+        assertEquals(false, second.hasAttribute("hey", "barcode"));
+        test.add("new");
+        assertEquals(false, snapshot.contains("new"));
+        assertEquals(true, snapshot.snapshot() == snapshot);
+      }
+
+      /**
+       * Tests snapshot - a snapshot cannot be changed.
+       */
+      @Test(expected = UnsupportedOperationException.class)
+      public final void testSnapshotReadOnly() {
+        Inventory test = createFromArgsTest("hey");
+        test.snapshot().adjustQuantity("hey", 1);
+      }
+
+      /**
+       * Tests addListener - quantity changes from many threads are all
+       * reported, with deltas that add up to the final quantity.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting
+       */
+      @Test
+      public final void testListenerConcurrent() throws InterruptedException {
+        final int perThread = 1000;
+        Inventory test = createFromArgsTest("hot");
+        int[] total = {0};
+        test.addListener(event -> {
+          synchronized (total) {
+            total[0] += event.delta();
+          }
+        });
+        runThreads(t -> {
+          for (int k = 0; k < perThread; k++) {
+            test.increment("hot");
+          }
+        });
+        assertEquals(THREADS * perThread, test.quantity("hot"));
+        assertEquals(THREADS * perThread, total[0]);
+      }
+
+      /**
+       * Tests placeOrder and receiveOrder from many threads on one hot
+       * barcode.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting
+       */
+      @Test
+      public final void testConcurrentOrders() throws InterruptedException {
+        final int perThread = 2000;
+        Inventory test = createFromArgsTest("hot");
+        runThreads(t -> {
+          for (int k = 0; k < perThread; k++) {
+            test.placeOrder("hot", 2);
+            test.receiveOrder("hot", 1);
+          }
+        });
+        assertEquals(THREADS * perThread, test.quantity("hot"));
+        assertEquals(THREADS * perThread, test.onOrder("hot"));
+      }
+
+      /**
+       * Tests transferFrom - threads transferring between two inventories in
+       * both directions at once do not deadlock, and no item is duplicated.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting for the threads
+       */
+      @Test(timeout = 60000)
+      public final void testCrossedTransfers() throws InterruptedException {
+        final int perThread = 200;
+        ConcurrentInventory first = new ConcurrentInventory();
+        ConcurrentInventory second = new ConcurrentInventory();
+        first.add("hey");
+        first.add("hi");
+        runThreads(t -> {
+          for (int k = 0; k < perThread; k++) {
+            if (t % 2 == 0) {
+              first.transferFrom(second);
+            } else {
+              second.transferFrom(first);
+            }
+          }
+        });
+        assertEquals(true, first.size() + second.size() <= 2);
+      }
+}
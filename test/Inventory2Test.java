@@ -0,0 +1,363 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.Inventory2;
+import components.inventory.InventoryOp;
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * JUnit test fixture for {@code Inventory2} kernel methods, checked against
+ * {@code Inventory1}.
+ *
+ * @author Jacob Witt
+ */
+public class Inventory2Test {
+    /**
+     * Create an inventory with the specified arguments.
+     *
+     * @param args
+     *      the barcodes add to the inventory
+     * @return
+     *      the created inventory
+     */
+    private Inventory createFromArgsTest(String... args) {
+        Inventory result = new Inventory2();
+        for (String s: args) {
+            result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Create a reference inventory with the specified arguments.
+     *
+     * @param args
+     *      the barcodes add to the inventory
+     * @return
+     *      the created inventory
+     */
+    private Inventory createFromArgsRef(String... args) {
+        Inventory result = new Inventory1();
+        for (String s: args) {
+            result.add(s);
+        }
+        return result;
+    }
+
+      /**
+       * Tests add - standard case.
+       */
+      @Test
+      public final void testAddStandard() {
+        Inventory test = createFromArgsTest("BARCODE1");
+        Inventory expected = createFromArgsRef("BARCODE2", "BARCODE1", "BARCODE3");
+        test.add("BARCODE2");
+        test.add("BARCODE3");
+        assertEquals(expected, test);
+        assertEquals(true, test.contains("BARCODE3"));
+        assertEquals(false, test.contains("BARCODE4"));
+      }
+
+      /**
+       * Tests remove - Attributes, name, and nonzero quantity associated with
+       * removed item.
+       */
+      @Test
+      public final void testRemoveHasInfo() {
+        Inventory test = createFromArgsTest("1234", "BarcodeWithWords", "Remove Me");
+        test.addAttribute("Remove Me", "Word Type", "Command");
+        test.setName("Remove Me", "My Name!");
+        test.setQuantity("Remove Me", 2);
+        Inventory expected = createFromArgsRef("1234", "BarcodeWithWords");
+        Inventory.InventoryItem removed = test.remove("Remove Me");
+        assertEquals(expected, test);
+        assertEquals("My Name!", removed.name());
+        assertEquals(2, removed.quantity());
+        assertEquals("Command", removed.attributes().value("Word Type"));
+        assertEquals(1, removed.attributes().size());
+      }
+
+      /**
+       * Tests removeAny - until empty, each item carrying its barcode.
+       */
+      @Test
+      public final void testRemoveAnyUntilEmpty() {
+        Inventory test = createFromArgsTest("12", "34", "56", "78");
+        Inventory expected = createFromArgsRef("12", "34", "56", "78");
+        while (test.size() > 0) {
+          Inventory.InventoryItem removed = test.removeAny();
+          String barcode = removed.attributes().value("barcode");
+          assertEquals(true, expected.contains(barcode));
+          expected.remove(barcode);
+          assertEquals(expected, test);
+        }
+      }
+
+      /**
+       * Tests add and remove - enough items to grow the arrays and to
+       * exercise removal from long probe sequences.
+       */
+      @Test
+      public final void testAddRemoveMany() {
+        final int count = 5000;
+        Inventory test = createFromArgsTest();
+        Inventory expected = createFromArgsRef();
+        for (int i = 0; i < count; i++) {
+          test.add("sku" + i, "Item " + i);
+          expected.add("sku" + i, "Item " + i);
+        }
+        for (int i = 0; i < count; i += 3) {
+          test.remove("sku" + i);
+          expected.remove("sku" + i);
+        }
+        assertEquals(expected.size(), test.size());
+        assertEquals(expected, test);
+        assertEquals("Item 1", test.name("sku1"));
+        assertEquals(false, test.contains("sku0"));
+      }
+
+      /**
+       * Tests attributes - add, get, and remove.
+       */
+      @Test
+      public final void testAttributes() {
+        Inventory test = createFromArgsTest("element1", "element2");
+        test.addAttribute("element1", "Attr1", "AttrVal1");
+        test.addAttribute("element1", "Attr2", "AttrVal2");
+        assertEquals("AttrVal2", test.getAttribute("element1", "Attr2"));
+        assertEquals(2, test.attributes("element1").size());
+        assertEquals(0, test.attributes("element2").size());
+        assertEquals("AttrVal1", test.removeAttribute("element1", "Attr1"));
+        assertEquals(false, test.hasAttribute("element1", "Attr1"));
+      }
+
+      /**
+       * Tests transferFrom.
+       */
+      @Test
+      public final void testTransferFrom() {
+        Inventory testOut = createFromArgsTest("Hi", "Hello", "Hey");
+        Inventory testIn = createFromArgsTest("Thing1");
+        Inventory expected = createFromArgsRef("Hi", "Hello", "Hey");
+        testIn.transferFrom(testOut);
+        assertEquals(expected, testIn);
+        assertEquals(0, testOut.size());
+      }
+
+      /**
+       * Tests numeric and non-numeric barcodes that look alike.
+       */
+      @Test
+      public final void testNumericBarcodes() {
+        Inventory test = createFromArgsTest("12", "0012", "012", "0",
+            "12345678901234567890", "1234567890123456789", "99999", "12a");
+        Inventory expected = createFromArgsRef("12", "0012", "012", "0",
+            "12345678901234567890", "1234567890123456789", "99999", "12a");
+        test.setQuantity("12", 1);
+        test.setQuantity("0012", 2);
+        expected.setQuantity("12", 1);
+        expected.setQuantity("0012", 2);
+        assertEquals(1, test.quantity("12"));
+        assertEquals(2, test.quantity("0012"));
+        assertEquals(0, test.quantity("012"));
+        assertEquals(false, test.contains("00"));
+        assertEquals(false, test.contains("1234567890123456788"));
+        assertEquals(expected, test);
+        test.remove("12");
+        assertEquals(true, test.contains("0012"));
+        assertEquals(false, test.contains("12"));
+      }
+
+      /**
+       * Tests search - through renames and removals.
+       */
+      @Test
+      public final void testSearch() {
+        Inventory test = createFromArgsTest("1001", "hi", "hello");
+        test.setName("1001", "Apple");
+        test.setName("hi", "Pear");
+        assertEquals("1001", test.search("Apple"));
+        assertEquals("hello", test.search(""));
+        test.setName("1001", "Honeycrisp Apple");
+        assertEquals("", test.search("Apple"));
+        test.remove("hi");
+        assertEquals("", test.search("Pear"));
+        assertEquals("1001", test.search("Honeycrisp Apple"));
+      }
+
+      /**
+       * Tests search - items sharing a name, removed from either end.
+       */
+      @Test
+      public final void testSearchSharedName() {
+        Inventory test = createFromArgsTest("1", "2", "3", "4");
+        test.setName("1", "Bolt");
+        test.setName("3", "Bolt");
+        test.setName("4", "Bolt");
+        test.remove("1");
+        assertEquals(true, test.search("Bolt").matches("[34]"));
+        test.remove("4");
+        assertEquals("3", test.search("Bolt"));
+        test.setName("3", "Nut");
+        assertEquals("", test.search("Bolt"));
+        assertEquals("2", test.search(""));
+        assertEquals("3", test.search("Nut"));
+      }
+
+      /**
+      * Tests forEachItem - every item visited once, with no attributes added.
+      */
+      @Test
+      public final void testForEachItem() {
+        Inventory test = createFromArgsTest("hey", "1001", "hello");
+        test.setName("hey", "Greeting");
+        test.setQuantity("1001", 3);
+        test.addAttribute("hello", "Attr", "Val");
+        int[] total = {0, 0};
+        test.forEachItem((barcode, item) -> {
+          assertEquals(test.name(barcode), item.name());
+          assertEquals(test.quantity(barcode), item.quantity());
+          total[0]++;
+          total[1] += item.attributes().size();
+        });
+        assertEquals(3, total[0]);
+        assertEquals(1, total[1]);
+        assertEquals(0, test.attributes("hey").size());
+        assertEquals(1, test.attributes("hello").size());
+      }
+
+      /**
+       * Tests applyBatch - per-op results and the same final state as the
+       * single calls, including ops that fail and ops on one barcode in
+       * order.
+       */
+      @Test
+      public final void testApplyBatch() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        Inventory expected = createFromArgsRef("hey", "hi", "new");
+        expected.setName("new", "New");
+        expected.setQuantity("new", 1);
+        expected.setName("hey", "Greeting");
+        expected.setQuantity("hi", 2);
+        expected.addAttribute("hi", "Attr", "Val2");
+        Sequence<InventoryOp> ops = new Sequence1L<InventoryOp>();
+        ops.add(ops.length(), InventoryOp.add("new", "New"));
+        ops.add(ops.length(), InventoryOp.adjust("new", 3));
+        ops.add(ops.length(), InventoryOp.adjust("new", -2));
+        ops.add(ops.length(), InventoryOp.adjust("new", -2));
+        ops.add(ops.length(), InventoryOp.add("hey", "Dup"));
+        ops.add(ops.length(), InventoryOp.setName("hey", "Greeting"));
+        ops.add(ops.length(), InventoryOp.adjust("missing", 1));
+        ops.add(ops.length(), InventoryOp.adjust("hi", 2));
+        ops.add(ops.length(), InventoryOp.putAttribute("hi", "Attr", "Val"));
+        ops.add(ops.length(), InventoryOp.putAttribute("hi", "Attr", "Val2"));
+        boolean[] results = test.applyBatch(ops);
+        boolean[] expectedResults = {true, true, true, false, false, true,
+            false, true, true, true};
+        assertEquals(expectedResults.length, results.length);
+        for (int i = 0; i < results.length; i++) {
+          assertEquals(expectedResults[i], results[i]);
+        }
+        assertEquals(expected, test);
+        assertEquals("new", test.search("New"));
+        assertEquals("", test.search("Dup"));
+      }
+
+      /**
+       * Tests setReorderPoint and lowStockItems against Inventory1.
+       */
+      @Test
+      public final void testLowStockItems() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        Inventory expected = createFromArgsRef("hey", "hi", "hello");
+        test.setQuantity("hey", 3);
+        expected.setQuantity("hey", 3);
+        test.setQuantity("hi", 3);
+        expected.setQuantity("hi", 3);
+        test.setReorderPoint("hi", 4);
+        expected.setReorderPoint("hi", 4);
+        test.placeOrder("hello", 1);
+        expected.placeOrder("hello", 1);
+        assertEquals(expected, test);
+        assertEquals(4, test.reorderPoint("hi"));
+        assertEquals(expected.lowStockItems(), test.lowStockItems());
+        assertEquals(1, test.lowStockItems().size());
+      }
+
+      /**
+       * Tests placeOrder and receiveOrder through the secondary methods.
+       */
+      @Test
+      public final void testPlaceReceiveOrder() {
+        Inventory test = createFromArgsTest("hey");
+        Inventory expected = createFromArgsRef("hey");
+        test.placeOrder("hey", 4);
+        expected.placeOrder("hey", 4);
+        test.receiveOrder("hey", 3);
+        expected.receiveOrder("hey", 3);
+        assertEquals(expected, test);
+        assertEquals(3, test.quantity("hey"));
+        assertEquals(1, test.onOrder("hey"));
+        test.receiveOrder("hey", 1);
+        assertEquals(false, test.hasAttribute("hey", "On Order"));
+      }
+
+      /**
+       * Tests the typed attribute methods through the secondary methods.
+       */
+      @Test
+      public final void testTypedAttributes() {
+        Inventory test = createFromArgsTest("hey");
+        Inventory expected = createFromArgsRef("hey");
+        test.declareAttribute("Cost", Inventory.AttributeType.DOUBLE);
+        expected.declareAttribute("Cost", Inventory.AttributeType.DOUBLE);
+        test.setDoubleAttribute("hey", "Cost", 1.25);
+        expected.setDoubleAttribute("hey", "Cost", 1.25);
+        test.setIntAttribute("hey", "Count", 3);
+        expected.setIntAttribute("hey", "Count", 3);
+        assertEquals(expected, test);
+        assertEquals(1.25, test.doubleAttribute("hey", "Cost"), 0);
+        assertEquals(3, test.intAttribute("hey", "Count"));
+        assertEquals(3L, test.longAttribute("hey", "Count"));
+      }
+
+      /**
+       * Tests snapshot - later changes to each part, including removals that
+       * move an item with attributes, do not show in it.
+       */
+      @Test
+      public final void testSnapshot() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        test.setName("hey", "Greeting");
+        test.addAttribute("hello", "Attr", "Val");
+        Inventory expected = createFromArgsRef("hey", "hi", "hello");
+        expected.setName("hey", "Greeting");
+        expected.addAttribute("hello", "Attr", "Val");
+        Inventory snapshot = test.snapshot();
+        test.increment("hi");
+        test.setName("hey", "Changed");
+        test.remove("hey");
+        test.addAttribute("hello", "Attr2", "Val2");
+        test.removeAttribute("hello", "Attr");
+        Inventory.InventoryItem removed = test.remove("hello");
+        test.drain();
+        assertEquals(expected, snapshot);
+        assertEquals("hey", snapshot.search("Greeting"));
+        assertEquals("Val", snapshot.getAttribute("hello", "Attr"));
+        assertEquals(1, snapshot.attributes("hello").size());
+        assertEquals("Val2", removed.attributes().value("Attr2"));
+        assertEquals(0, test.size());
+      }
+
+      /**
+       * Tests snapshot - a snapshot cannot be changed.
+       */
+      @Test(expected = UnsupportedOperationException.class)
+      public final void testSnapshotReadOnly() {
+        Inventory test = createFromArgsTest("hey");
+        test.snapshot().setName("hey", "Greeting");
+      }
+}
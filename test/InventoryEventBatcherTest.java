@@ -0,0 +1,119 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.InventoryEvent;
+import components.inventory.InventoryEventBatcher;
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * JUnit test fixture for {@code InventoryEventBatcher}.
+ *
+ * @author Jacob Witt
+ */
+public class InventoryEventBatcherTest {
+
+      /**
+       * Tests that events are delivered once batchSize have been collected,
+       * and the rest on flush.
+       */
+      @Test
+      public final void testBatchSize() {
+        Sequence<Sequence<InventoryEvent>> batches =
+            new Sequence1L<Sequence<InventoryEvent>>();
+        InventoryEventBatcher batcher = new InventoryEventBatcher(2,
+            events -> batches.add(batches.length(), events));
+        Inventory test = new Inventory1();
+        test.addListener(batcher);
+        test.add("hey");
+        assertEquals(0, batches.length());
+        test.add("hi");
+        assertEquals(1, batches.length());
+        assertEquals(2, batches.entry(0).length());
+        test.remove("hey");
+        batcher.flush();
+        assertEquals(2, batches.length());
+        assertEquals("REMOVED(hey)", batches.entry(1).entry(0).toString());
+        batcher.flush();
+        assertEquals(2, batches.length());
+      }
+
+      /**
+       * Tests that consecutive quantity changes to one item are merged.
+       */
+      @Test
+      public final void testMergeQuantity() {
+        Sequence<Sequence<InventoryEvent>> batches =
+            new Sequence1L<Sequence<InventoryEvent>>();
+        InventoryEventBatcher batcher = new InventoryEventBatcher(100,
+            events -> batches.add(batches.length(), events));
+        Inventory test = new Inventory1();
+        test.add("hey");
+        test.add("hi");
+        test.addListener(batcher);
+        test.increment("hey");
+        test.increment("hey");
+        test.adjustQuantity("hey", 3);
+        test.increment("hi");
+        test.increment("hey");
+        batcher.flush();
+        assertEquals(1, batches.length());
+        Sequence<InventoryEvent> events = batches.entry(0);
+        assertEquals(3, events.length());
+        assertEquals("QUANTITY(hey, 5, 5)", events.entry(0).toString());
+        assertEquals("QUANTITY(hi, 1, 1)", events.entry(1).toString());
+        assertEquals("QUANTITY(hey, 1, 6)", events.entry(2).toString());
+      }
+
+      /**
+       * Tests that batches filled by several threads at once reach the
+       * receiver one at a time and in order: each thread's events arrive in
+       * the order it sent them.
+       *
+       * @throws InterruptedException
+       *      if interrupted while joining the threads
+       */
+      @Test
+      public final void testDeliveryOrder() throws InterruptedException {
+        final int threads = 4;
+        final int perThread = 5000;
+        int[] next = new int[threads];
+        int[] inDelivery = {0};
+        boolean[] ordered = {true};
+        InventoryEventBatcher batcher = new InventoryEventBatcher(3, events -> {
+          inDelivery[0]++;
+          ordered[0] = ordered[0] && inDelivery[0] == 1;
+          for (InventoryEvent event : events) {
+            if (event.kind() == InventoryEvent.Kind.QUANTITY) {
+              int t = Integer.parseInt(event.barcode());
+              ordered[0] = ordered[0] && event.quantity() == next[t];
+              next[t]++;
+            }
+          }
+          inDelivery[0]--;
+        });
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+          String barcode = Integer.toString(t);
+          workers[t] = new Thread(() -> {
+            for (int k = 0; k < perThread; k++) {
+              batcher.changed(InventoryEvent.renamed(barcode, "n"));
+              batcher.changed(InventoryEvent.quantity(barcode, 1, k));
+            }
+          });
+        }
+        for (Thread worker : workers) {
+          worker.start();
+        }
+        for (Thread worker : workers) {
+          worker.join();
+        }
+        batcher.flush();
+        assertEquals(true, ordered[0]);
+        for (int t = 0; t < threads; t++) {
+          assertEquals(perThread, next[t]);
+        }
+      }
+}
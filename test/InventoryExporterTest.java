@@ -0,0 +1,70 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.InventoryExporter;
+import components.inventory.InventoryImporter;
+
+/**
+ * JUnit test fixture for {@code InventoryExporter}.
+ *
+ * @author Jacob Witt
+ */
+public class InventoryExporterTest {
+
+      /**
+       * Tests writeJsonLines - escaping, attributes, and no changes to the
+       * inventory.
+       */
+      @Test
+      public final void testJsonLines() {
+        Inventory test = new Inventory1();
+        test.add("1001", "Say \"hi\"\n");
+        test.setQuantity("1001", 3);
+        test.addAttribute("1001", "Color", "red\\blue");
+        StringBuilder out = new StringBuilder();
+        InventoryExporter.writeJsonLines(test, out);
+        assertEquals("{\"barcode\":\"1001\",\"name\":\"Say \\\"hi\\\"\\n\","
+            + "\"quantity\":3,\"attributes\":{\"Color\":\"red\\\\blue\"}}\n",
+            out.toString());
+        assertEquals(1, test.attributes("1001").size());
+      }
+
+      /**
+       * Tests writeCsv to a channel - the output imports back to an equal
+       * inventory.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testCsvRoundTrip() throws IOException {
+        Inventory expected = new Inventory1();
+        for (int i = 0; i < 1000; i++) {
+          expected.add("sku" + i, "Item, " + i);
+          expected.setQuantity("sku" + i, i);
+        }
+        expected.addAttribute("sku1", "Color", "red");
+        expected.addAttribute("sku2", "Size", "\"large\"");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InventoryExporter.writeCsv(expected, Channels.newChannel(bytes));
+        Path file = Files.createTempFile("inventory", ".csv");
+        try {
+          Files.write(file, bytes.toByteArray());
+          assertEquals(expected, InventoryImporter.read(file,
+              InventoryImporter.CSV, 1));
+        } finally {
+          Files.delete(file);
+        }
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(true, text.contains("sku2,\"Item, 2\",2,"));
+      }
+}
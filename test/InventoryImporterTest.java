@@ -0,0 +1,128 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import components.inventory.Inventory;
+import components.inventory.InventoryImporter;
+
+/**
+ * JUnit test fixture for {@code InventoryImporter}.
+ *
+ * @author Jacob Witt
+ */
+public class InventoryImporterTest {
+
+    /**
+     * Imports {@code text} through a temporary file.
+     *
+     * @param text
+     *      the file contents
+     * @param delimiter
+     *      the field delimiter
+     * @param threads
+     *      the number of parsing threads
+     * @return
+     *      the imported inventory
+     * @throws IOException
+     *      if the temporary file cannot be made
+     */
+    private static Inventory importText(String text, char delimiter,
+            int threads) throws IOException {
+        Path file = Files.createTempFile("inventory", ".csv");
+        try {
+          Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+          return InventoryImporter.read(file, delimiter, threads);
+        } finally {
+          Files.delete(file);
+        }
+    }
+
+      /**
+       * Tests a CSV file - header mapping, attributes, quoting, CRLF, blank
+       * lines, and duplicate barcodes.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testCsv() throws IOException {
+        Inventory test = importText("Name,BARCODE,Color,quantity\r\n"
+            + "Apple,1001,red,3\r\n"
+            + "\"Pear, Bartlett\",1002,,\r\n"
+            + "\"Say \"\"hi\"\"\",1003,\"line1\nline2\",7\r\n"
+            + "\r\n"
+            + "Apple again,1001,green,2", InventoryImporter.CSV, 2);
+        assertEquals(3, test.size());
+        assertEquals("Apple", test.name("1001"));
+        assertEquals(5, test.quantity("1001"));
+        assertEquals("red", test.getAttribute("1001", "Color"));
+        assertEquals("Pear, Bartlett", test.name("1002"));
+        assertEquals(0, test.quantity("1002"));
+        assertEquals(0, test.attributes("1002").size());
+        assertEquals("Say \"hi\"", test.name("1003"));
+        assertEquals("line1\nline2", test.getAttribute("1003", "Color"));
+        assertEquals("1003", test.search("Say \"hi\""));
+      }
+
+      /**
+       * Tests a TSV file large enough to be split into several chunks.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testTsvManyChunks() throws IOException {
+        final int count = 200000;
+        StringBuilder text = new StringBuilder("barcode\tname\tquantity\tNote\n");
+        for (int i = 0; i < count; i++) {
+          text.append("sku").append(i).append("\tItem ").append(i)
+              .append('\t').append(i % 100).append("\tnote for item ")
+              .append(i).append('\n');
+        }
+        Inventory test = importText(text.toString(), InventoryImporter.TSV, 4);
+        assertEquals(count, test.size());
+        assertEquals(99, test.quantity("sku199999"));
+        assertEquals("Item 123456", test.name("sku123456"));
+        assertEquals("note for item 7", test.getAttribute("sku7", "Note"));
+      }
+
+      /**
+       * Tests a file whose header has no barcode column.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test(expected = IllegalArgumentException.class)
+      public final void testNoBarcodeColumn() throws IOException {
+        importText("name,quantity\nApple,3\n", InventoryImporter.CSV, 1);
+      }
+
+      /**
+       * Tests a CSV file of several chunks where an unquoted field holds a
+       * literal quote and later quoted fields hold row terminators.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testLiteralQuoteManyChunks() throws IOException {
+        final int count = 200000;
+        StringBuilder text = new StringBuilder("barcode,name,quantity,Note\n");
+        text.append("ruler,12\" ruler,1,\n");
+        for (int i = 0; i < count; i++) {
+          text.append("sku").append(i).append(",Item ").append(i)
+              .append(',').append(i % 100).append(",\"line one\nline ")
+              .append(i).append("\"\n");
+        }
+        Inventory test = importText(text.toString(), InventoryImporter.CSV, 4);
+        assertEquals(count + 1, test.size());
+        assertEquals("12\" ruler", test.name("ruler"));
+        assertEquals(99, test.quantity("sku199999"));
+        assertEquals("line one\nline 123456",
+            test.getAttribute("sku123456", "Note"));
+      }
+}
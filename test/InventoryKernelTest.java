@@ -709,4 +709,129 @@ public class InventoryKernelTest {
         assertEquals(expected, testIn);
         assertEquals(blank, testOut);
       }
+
+      /**
+       * Tests add - enough items to force the hash table to grow.
+       */
+      @Test
+      public final void testAddGrowsTable() {
+        final int count = 1000;
+        Inventory test = createFromArgsTest();
+        Inventory expected = new Inventory1(count);
+        for (int i = 0; i < count; i++) {
+          test.add("item" + i);
+          test.increment("item" + i);
+          expected.add("item" + i);
+          expected.increment("item" + i);
+        }
+        assertEquals(count, test.size());
+        assertEquals(1, test.quantity("item" + (count - 1)));
+        assertEquals(expected, test);
+      }
+
+      /**
+       * Tests the presizing constructor with a custom load factor.
+       */
+      @Test
+      public final void testPresizedConstructor() {
+        final double loadFactor = 0.5;
+        Inventory test = new Inventory1(2, loadFactor);
+        Inventory expected = createFromArgsTest("1", "2", "3", "4");
+        test.add("1");
+        test.add("2");
+        test.add("3");
+        test.add("4");
+        assertEquals(expected, test);
+      }
+
+      /**
+       * Tests adjustQuantity - positive and negative deltas.
+       */
+      @Test
+      public final void testAdjustQuantity() {
+        final int received = 50000;
+        final int sold = 49990;
+        Inventory test = createFromArgsTest("element1", "element2");
+        test.adjustQuantity("element1", received);
+        assertEquals(received, test.quantity("element1"));
+        test.adjustQuantity("element1", -sold);
+        assertEquals(received - sold, test.quantity("element1"));
+        test.adjustQuantity("element2", 0);
+        assertEquals(0, test.quantity("element2"));
+      }
+
+      /**
+       * Tests attributes - the returned set reflects the item's attributes and
+       * cannot be modified.
+       */
+      @Test(expected = UnsupportedOperationException.class)
+      public final void testAttributesReadOnly() {
+        Inventory test = createFromArgsTest("element1");
+        test.addAttribute("element1", "Attr1", "AttrVal1");
+        Set<String> attributes = test.attributes("element1");
+        assertEquals(true, attributes.contains("Attr1"));
+        assertEquals(1, attributes.size());
+        attributes.add("Attr2");
+      }
+
+      /**
+       * Tests attributes - an item whose last attribute was removed, and a
+       * removed item that never had one, behave as having none.
+       */
+      @Test
+      public final void testAttributesEmptied() {
+        Inventory test = createFromArgsTest("12", "34");
+        Inventory expected = createFromArgsTest("12", "34");
+        test.addAttribute("12", "Attr", "Val");
+        test.removeAttribute("12", "Attr");
+        assertEquals(expected, test);
+        assertEquals(false, test.hasAttribute("12", "Attr"));
+        assertEquals(0, test.attributes("12").size());
+        test.addAttribute("12", "Attr", "Val2");
+        assertEquals("Val2", test.getAttribute("12", "Attr"));
+        Inventory.InventoryItem removed = test.remove("34");
+        assertEquals(0, removed.attributes().size());
+        removed.attributes().add("Note", "taken");
+        assertEquals("taken", removed.attributes().value("Note"));
+      }
+
+      /**
+       * Tests iterator - iterating, as equals and toString do, hands out the
+       * barcode without adding a "barcode" attribute to the stored items.
+       */
+      @Test
+      public final void testIteratorPureRead() {
+        Inventory test = createFromArgsTest("A", "B");
+        test.addAttribute("B", "Attr", "Val");
+        String text = test.toString();
+        for (Inventory.InventoryItem item : test) {
+          assertEquals(true, test.contains(item.attributes().value("barcode")));
+        }
+        assertEquals(text, test.toString());
+        assertEquals(false, test.hasAttribute("A", "barcode"));
+        assertEquals(0, test.attributes("A").size());
+        assertEquals(1, test.attributes("B").size());
+      }
+
+      /**
+       * Tests forEachItem - an item without attributes presents the shared,
+       * read-only empty map rather than being given one of its own.
+       */
+      @Test
+      public final void testForEachItemNoAttributes() {
+        Inventory test = createFromArgsTest("A");
+        boolean[] refused = {false};
+        test.forEachItem((barcode, item) -> {
+          assertEquals(0, item.attributes().size());
+          try {
+            item.attributes().add("Attr", "Val");
+          } catch (UnsupportedOperationException e) {
+            refused[0] = true;
+          }
+        });
+        assertEquals(true, refused[0]);
+        assertEquals(0, test.attributes("A").size());
+        test.addAttribute("A", "Attr", "Val");
+        assertEquals("Val", test.getAttribute("A", "Attr"));
+      }
 }
@@ -3,6 +3,14 @@ import org.junit.Test;
 
 import components.inventory.Inventory;
 import components.inventory.Inventory1;
+import components.inventory.InventoryEvent;
+import components.inventory.InventoryOp;
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.set.Set;
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
 
 /**
  * Comprehensive Junit text fixture for {@code InventorySecondary} and
@@ -349,4 +357,577 @@ public class InventorySecondaryTest {
         assertEquals(expected, test1);
         assertEquals(blank, test2);
       }
+
+      /**
+      * Tests search - after renaming and removing items.
+      */
+      @Test
+      public final void testSearchAfterRenameAndRemove() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        test.setName("hey", "Greeting 1");
+        test.setName("hi", "Greeting 2");
+        test.setName("hey", "Greeting 3");
+        assertEquals("", test.search("Greeting 1"));
+        assertEquals("hey", test.search("Greeting 3"));
+        test.remove("hi");
+        assertEquals("", test.search("Greeting 2"));
+        test.removeAny();
+        test.removeAny();
+        assertEquals("", test.search("Greeting 3"));
+      }
+
+      /**
+      * Tests search - two items sharing a name.
+      */
+      @Test
+      public final void testSearchDuplicateNames() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.setName("hey", "Greeting");
+        test.setName("hi", "Greeting");
+        String found = test.search("Greeting");
+        assertEquals(true, found.equals("hey") || found.equals("hi"));
+        test.remove(found);
+        String other = test.search("Greeting");
+        assertEquals(false, other.equals(found));
+        assertEquals("Greeting", test.name(other));
+      }
+
+      /**
+      * Tests forEachItem - every item visited once, with no attributes added.
+      */
+      @Test
+      public final void testForEachItem() {
+        Inventory test = createFromArgsTest("hey", "1001", "hello");
+        test.setName("hey", "Greeting");
+        test.setQuantity("1001", 3);
+        test.addAttribute("hello", "Attr", "Val");
+        int[] total = {0, 0};
+        test.forEachItem((barcode, item) -> {
+          assertEquals(test.name(barcode), item.name());
+          assertEquals(test.quantity(barcode), item.quantity());
+          total[0]++;
+          total[1] += item.attributes().size();
+        });
+        assertEquals(3, total[0]);
+        assertEquals(1, total[1]);
+        assertEquals(0, test.attributes("hey").size());
+        assertEquals(1, test.attributes("hello").size());
+      }
+
+      /**
+      * Tests drain - every item returned with its barcode, leaving this empty.
+      */
+      @Test
+      public final void testDrain() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        Inventory expected = createFromArgsTest("hey", "hi", "hello");
+        Inventory blank = createFromArgsTest();
+        test.setQuantity("hi", 2);
+        expected.setQuantity("hi", 2);
+        test.addAttribute("hello", "Attr", "Val");
+        expected.addAttribute("hello", "Attr", "Val");
+        Queue<Inventory.InventoryItem> items = test.drain();
+        assertEquals(blank, test);
+        assertEquals(3, items.length());
+        while (items.length() > 0) {
+          Inventory.InventoryItem item = items.dequeue();
+          String barcode = item.attributes().remove("barcode").value();
+          Inventory.InventoryItem expectedItem = expected.remove(barcode);
+          assertEquals(expectedItem, item);
+        }
+        assertEquals(blank, expected);
+        test.add("hey");
+        assertEquals(1, test.size());
+      }
+
+      /**
+      * Tests removeAny after the table has grown - every item is found.
+      */
+      @Test
+      public final void testRemoveAnyAfterGrowth() {
+        final int count = 500;
+        Inventory test = createFromArgsTest();
+        for (int i = 0; i < count; i++) {
+          test.add("item" + i);
+        }
+        for (int i = 0; i < count; i += 2) {
+          test.remove("item" + i);
+        }
+        int removed = 0;
+        while (test.size() > 0) {
+          String barcode = test.removeAny().attributes().value("barcode");
+          assertEquals(false, test.contains(barcode));
+          removed++;
+        }
+        assertEquals(count / 2, removed);
+      }
+
+      /**
+       * Tests tryReserve and release - enough, exactly enough, and too few.
+       */
+      @Test
+      public final void testTryReserveRelease() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.setQuantity("hey", 5);
+        assertEquals(true, test.tryReserve("hey", 3));
+        assertEquals(2, test.quantity("hey"));
+        assertEquals(false, test.tryReserve("hey", 3));
+        assertEquals(2, test.quantity("hey"));
+        assertEquals(true, test.tryReserve("hey", 2));
+        assertEquals(0, test.quantity("hey"));
+        assertEquals(true, test.tryReserve("hi", 0));
+        test.release("hey", 4);
+        assertEquals(4, test.quantity("hey"));
+      }
+      /**
+       * Tests applyBatch - per-op results and the same final state as the
+       * single calls, including ops that fail and ops on one barcode in
+       * order.
+       */
+      @Test
+      public final void testApplyBatch() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        Inventory expected = createFromArgsTest("hey", "hi", "new");
+        expected.setName("new", "New");
+        expected.setQuantity("new", 1);
+        expected.setName("hey", "Greeting");
+        expected.setQuantity("hi", 2);
+        expected.addAttribute("hi", "Attr", "Val2");
+        Sequence<InventoryOp> ops = new Sequence1L<InventoryOp>();
+        ops.add(ops.length(), InventoryOp.add("new", "New"));
+        ops.add(ops.length(), InventoryOp.adjust("new", 3));
+        ops.add(ops.length(), InventoryOp.adjust("new", -2));
+        ops.add(ops.length(), InventoryOp.adjust("new", -2));
+        ops.add(ops.length(), InventoryOp.add("hey", "Dup"));
+        ops.add(ops.length(), InventoryOp.setName("hey", "Greeting"));
+        ops.add(ops.length(), InventoryOp.adjust("missing", 1));
+        ops.add(ops.length(), InventoryOp.adjust("hi", 2));
+        ops.add(ops.length(), InventoryOp.putAttribute("hi", "Attr", "Val"));
+        ops.add(ops.length(), InventoryOp.putAttribute("hi", "Attr", "Val2"));
+        boolean[] results = test.applyBatch(ops);
+        boolean[] expectedResults = {true, true, true, false, false, true,
+            false, true, true, true};
+        assertEquals(expectedResults.length, results.length);
+        for (int i = 0; i < results.length; i++) {
+          assertEquals(expectedResults[i], results[i]);
+        }
+        assertEquals(expected, test);
+        assertEquals("new", test.search("New"));
+        assertEquals("", test.search("Dup"));
+      }
+
+      /**
+       * Tests applyBatch - enough adds to grow the table, with later ops on
+       * the added items.
+       */
+      @Test
+      public final void testApplyBatchGrows() {
+        final int count = 500;
+        Inventory test = createFromArgsTest();
+        Sequence<InventoryOp> ops = new Sequence1L<InventoryOp>();
+        for (int i = 0; i < count; i++) {
+          ops.add(ops.length(), InventoryOp.add("sku" + i, "Item " + i));
+          ops.add(ops.length(), InventoryOp.adjust("sku" + i, i));
+        }
+        boolean[] results = test.applyBatch(ops);
+        for (boolean result : results) {
+          assertEquals(true, result);
+        }
+        assertEquals(count, test.size());
+        assertEquals(count - 1, test.quantity("sku" + (count - 1)));
+        assertEquals("sku7", test.search("Item 7"));
+        int removed = 0;
+        while (test.size() > 0) {
+          test.removeAny();
+          removed++;
+        }
+        assertEquals(count, removed);
+      }
+
+      /**
+       * Tests snapshot - later changes of every kind do not show in it.
+       */
+      @Test
+      public final void testSnapshotIsolated() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        test.setName("hey", "Greeting");
+        test.setQuantity("hi", 2);
+        test.addAttribute("hello", "Attr", "Val");
+        Inventory expected = createFromArgsTest("hey", "hi", "hello");
+        expected.setName("hey", "Greeting");
+        expected.setQuantity("hi", 2);
+        expected.addAttribute("hello", "Attr", "Val");
+        Inventory snapshot = test.snapshot();
+        test.setName("hey", "Changed");
+        test.increment("hi");
+        test.setAttribute("hello", "Attr", "Val2");
+        test.remove("hello");
+        test.add("new", "New");
+        assertEquals(expected, snapshot);
+        assertEquals("hey", snapshot.search("Greeting"));
+        assertEquals("", snapshot.search("New"));
+        assertEquals(3, test.quantity("hi"));
+        assertEquals("Changed", test.name("hey"));
+        assertEquals("hey", test.search("Changed"));
+      }
+
+      /**
+       * Tests snapshot - snapshots taken between writes each keep their own
+       * state, across a rehash of the table.
+       */
+      @Test
+      public final void testSnapshotSeveral() {
+        final int count = 300;
+        Inventory test = createFromArgsTest("hey");
+        Inventory first = test.snapshot();
+        test.increment("hey");
+        Inventory second = test.snapshot();
+        for (int i = 0; i < count; i++) {
+          test.add("sku" + i);
+        }
+        test.increment("hey");
+        assertEquals(0, first.quantity("hey"));
+        assertEquals(1, first.size());
+        assertEquals(1, second.quantity("hey"));
+        assertEquals(1, second.size());
+        assertEquals(2, test.quantity("hey"));
+        assertEquals(count + 1, test.size());
+        assertEquals(count + 1, test.snapshot().size());
+      }
+
+      /**
+       * Tests snapshot - iterating and draining the inventory after a
+       * snapshot does not change the snapshot, and the snapshot can be
+       * iterated.
+       */
+      @Test
+      public final void testSnapshotIterate() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.addAttribute("hi", "Attr", "Val");
+        Inventory snapshot = test.snapshot();
+        for (Inventory.InventoryItem item : snapshot) {
+          assertEquals(true, item.attributes().hasKey("barcode"));
+        }
+        assertEquals(false, snapshot.hasAttribute("hey", "barcode"));
+        Queue<Inventory.InventoryItem> drained = test.drain();
+        assertEquals(2, drained.length());
+        drained.dequeue().attributes().add("Extra", "Val");
+        drained.dequeue().attributes().add("Extra", "Val");
+        assertEquals(0, test.size());
+        assertEquals(2, snapshot.size());
+        assertEquals(1, snapshot.attributes("hi").size());
+        assertEquals(0, snapshot.attributes("hey").size());
+      }
+
+      /**
+       * Tests snapshot - a snapshot cannot be changed.
+       */
+      @Test(expected = UnsupportedOperationException.class)
+      public final void testSnapshotReadOnly() {
+        Inventory test = createFromArgsTest("hey");
+        test.snapshot().increment("hey");
+      }
+
+      /**
+       * Tests snapshot - removeAny on a snapshot is refused before it looks
+       * at the buckets the snapshot does not track.
+       */
+      @Test(expected = UnsupportedOperationException.class)
+      public final void testSnapshotRemoveAny() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.snapshot().removeAny();
+      }
+
+      /**
+       * Tests addListener - each kernel change is reported, in order, until
+       * the listener is removed.
+       */
+      @Test
+      public final void testListener() {
+        Inventory test = createFromArgsTest("hey");
+        Sequence<InventoryEvent> events = new Sequence1L<InventoryEvent>();
+        Inventory.ChangeListener listener =
+            event -> events.add(events.length(), event);
+        test.addListener(listener);
+        test.add("hi", "Greeting");
+        test.increment("hi");
+        test.setQuantity("hi", 4);
+        test.addAttribute("hi", "Attr", "Val");
+        test.removeAttribute("hi", "Attr");
+        test.setName("hey", "Name");
+        test.remove("hey");
+        test.clear();
+        test.removeListener(listener);
+        test.add("ignored");
+        String[] expected = {"ADDED(hi, Greeting)", "QUANTITY(hi, 1, 1)",
+            "QUANTITY(hi, 3, 4)", "ATTRIBUTE(hi, Attr, Val)",
+            "ATTRIBUTE(hi, Attr, null)", "NAME(hey, Name)", "REMOVED(hey)",
+            "RESET"};
+        assertEquals(expected.length, events.length());
+        for (int i = 0; i < expected.length; i++) {
+          assertEquals(expected[i], events.entry(i).toString());
+        }
+      }
+
+      /**
+       * Tests addListener - applyBatch reports each applied operation.
+       */
+      @Test
+      public final void testListenerApplyBatch() {
+        Inventory test = createFromArgsTest("hey");
+        Sequence<InventoryEvent> events = new Sequence1L<InventoryEvent>();
+        test.addListener(event -> events.add(events.length(), event));
+        Sequence<InventoryOp> ops = new Sequence1L<InventoryOp>();
+        ops.add(0, InventoryOp.adjust("hey", 2));
+        ops.add(1, InventoryOp.adjust("hey", -5));
+        ops.add(2, InventoryOp.add("hey", "Again"));
+        test.applyBatch(ops);
+        assertEquals(1, events.length());
+        assertEquals("QUANTITY(hey, 2, 2)", events.entry(0).toString());
+      }
+
+      /**
+       * Tests lowStockItems - the index follows quantity, reorder point and
+       * on-order changes, removals and batches.
+       */
+      @Test
+      public final void testLowStockItems() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        test.setQuantity("hey", 5);
+        test.setQuantity("hi", 5);
+        test.setReorderPoint("hi", 5);
+        assertEquals(5, test.reorderPoint("hi"));
+        assertEquals(0, test.reorderPoint("hey"));
+        Set<String> low = test.lowStockItems();
+        assertEquals(2, low.size());
+        assertEquals(true, low.contains("hi"));
+        assertEquals(true, low.contains("hello"));
+        test.increment("hi");
+        test.placeOrder("hello", 3);
+        assertEquals(0, test.lowStockItems().size());
+        test.setReorderPoint("hey", 10);
+        test.removeAttribute("hello", "On Order");
+        assertEquals(true, test.lowStockItems().contains("hey"));
+        assertEquals(true, test.lowStockItems().contains("hello"));
+        test.remove("hey");
+        Sequence<InventoryOp> ops = new Sequence1L<InventoryOp>();
+        ops.add(0, InventoryOp.adjust("hello", 1));
+        ops.add(1, InventoryOp.add("new", "New"));
+        ops.add(2, InventoryOp.putAttribute("hi", "Reorder Point", "6"));
+        test.applyBatch(ops);
+        low = test.lowStockItems();
+        assertEquals(2, low.size());
+        assertEquals(true, low.contains("hi"));
+        assertEquals(true, low.contains("new"));
+        assertEquals(6, test.reorderPoint("hi"));
+      }
+
+      /**
+       * Tests lowStockItems - a snapshot keeps the low-stock items it was
+       * taken with.
+       */
+      @Test
+      public final void testLowStockItemsSnapshot() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.setQuantity("hey", 1);
+        Inventory snapshot = test.snapshot();
+        test.decrement("hey");
+        test.increment("hi");
+        Set<String> low = snapshot.lowStockItems();
+        assertEquals(1, low.size());
+        assertEquals(true, low.contains("hi"));
+        assertEquals(1, test.lowStockItems().size());
+        assertEquals(true, test.lowStockItems().contains("hey"));
+      }
+
+      /**
+       * Tests placeOrder and receiveOrder - orders add up, receiving moves
+       * units on hand, and the "On Order" attribute and low-stock index
+       * follow.
+       */
+      @Test
+      public final void testPlaceReceiveOrder() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.setReorderPoint("hey", 2);
+        assertEquals(0, test.onOrder("hey"));
+        test.placeOrder("hey", 3);
+        test.placeOrder("hey", 4);
+        assertEquals(7, test.onOrder("hey"));
+        assertEquals("7", test.getAttribute("hey", "On Order"));
+        assertEquals(false, test.lowStockItems().contains("hey"));
+        test.receiveOrder("hey", 2);
+        assertEquals(2, test.quantity("hey"));
+        assertEquals(5, test.onOrder("hey"));
+        test.receiveOrder("hey", 5);
+        assertEquals(7, test.quantity("hey"));
+        assertEquals(0, test.onOrder("hey"));
+        assertEquals(false, test.hasAttribute("hey", "On Order"));
+        test.setQuantity("hey", 1);
+        assertEquals(true, test.lowStockItems().contains("hey"));
+        test.addAttribute("hi", "On Order", "6");
+        assertEquals(6, test.onOrder("hi"));
+        Inventory snapshot = test.snapshot();
+        test.receiveOrder("hi", 6);
+        assertEquals(6, snapshot.onOrder("hi"));
+        assertEquals(0, snapshot.quantity("hi"));
+      }
+
+      /**
+       * Tests the typed attribute methods - values set before and after a
+       * declaration read back typed and through the string methods, and
+       * snapshots and transferFrom keep them.
+       */
+      @Test
+      public final void testTypedAttributes() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.addAttribute("hey", "Cost", "12");
+        test.declareAttribute("Cost", Inventory.AttributeType.INT);
+        test.declareAttribute("Weight", Inventory.AttributeType.DOUBLE);
+        assertEquals(12, test.intAttribute("hey", "Cost"));
+        assertEquals(12L, test.longAttribute("hey", "Cost"));
+        test.setIntAttribute("hi", "Cost", -7);
+        test.setDoubleAttribute("hi", "Weight", 2.5);
+        assertEquals("-7", test.getAttribute("hi", "Cost"));
+        assertEquals("2.5", test.getAttribute("hi", "Weight"));
+        assertEquals(2.5, test.doubleAttribute("hi", "Weight"), 0);
+        assertEquals(-7.0, test.doubleAttribute("hi", "Cost"), 0);
+        Inventory snapshot = test.snapshot();
+        test.setAttribute("hi", "Cost", "8");
+        test.removeAttribute("hey", "Cost");
+        assertEquals(8, test.intAttribute("hi", "Cost"));
+        assertEquals(-7, snapshot.intAttribute("hi", "Cost"));
+        assertEquals(12, snapshot.intAttribute("hey", "Cost"));
+        test.setLongAttribute("hey", "Serial", 1L << 40);
+        assertEquals(1L << 40, test.longAttribute("hey", "Serial"));
+        Inventory other = test.newInstance();
+        other.declareAttribute("Serial", Inventory.AttributeType.LONG);
+        other.transferFrom(test);
+        assertEquals(1L << 40, other.longAttribute("hey", "Serial"));
+        assertEquals(8, other.intAttribute("hi", "Cost"));
+        assertEquals(0, test.size());
+      }
+
+      /**
+       * Tests attributes - an item keeps its attributes through growing past
+       * the few kept inline, removals, snapshots and copies.
+       */
+      @Test
+      public final void testManyAttributes() {
+        final int count = 20;
+        Inventory test = createFromArgsTest("hey", "hi");
+        Map<String, String> expected = new Map1L<String, String>();
+        for (int i = 0; i < count; i++) {
+          test.addAttribute("hey", "A" + i, "v" + i);
+          expected.add("A" + i, "v" + i);
+          if (i == 3) {
+            test.removeAttribute("hey", "A1");
+            expected.remove("A1");
+          }
+        }
+        Inventory snapshot = test.snapshot();
+        test.setAttribute("hey", "A5", "changed");
+        test.removeAttribute("hey", "A7");
+        Map<String, String> seen = new Map1L<String, String>();
+        snapshot.forEachItem((barcode, item) -> {
+          if (barcode.equals("hey")) {
+            for (Map.Pair<String, String> attr : item.attributes()) {
+              seen.add(attr.key(), attr.value());
+            }
+          }
+        });
+        assertEquals(expected, seen);
+        assertEquals("changed", test.getAttribute("hey", "A5"));
+        assertEquals(false, test.hasAttribute("hey", "A7"));
+        assertEquals(count - 2, test.attributes("hey").size());
+        assertEquals(false, test.hasAttribute("hi", "A0"));
+        Inventory.InventoryItem removed = test.remove("hey");
+        assertEquals("v0", removed.attributes().value("A0"));
+      }
+
+      /**
+       * Tests declareAttribute with CATEGORY - items share one copy of each
+       * content, and a content no item holds any longer is dropped.
+       */
+      @Test
+      public final void testCategoryAttributes() {
+        Inventory test = createFromArgsTest("hey", "hi", "hello");
+        test.addAttribute("hey", "Unit", new String("box"));
+        test.declareAttribute("Unit", Inventory.AttributeType.CATEGORY);
+        test.addAttribute("hi", "Unit", new String("box"));
+        test.addAttribute("hello", "Unit", new String("each"));
+        String box = test.getAttribute("hey", "Unit");
+        assertEquals(true, box == test.getAttribute("hi", "Unit"));
+        assertEquals("each", test.getAttribute("hello", "Unit"));
+        Inventory snapshot = test.snapshot();
+        test.removeAttribute("hey", "Unit");
+        test.remove("hi");
+        String again = new String("box");
+        test.setAttribute("hello", "Unit", again);
+        assertEquals(true, again == test.getAttribute("hello", "Unit"));
+        assertEquals(true, box == snapshot.getAttribute("hi", "Unit"));
+        test.declareAttribute("Unit", Inventory.AttributeType.STRING);
+        test.addAttribute("hey", "Unit", new String("box"));
+        assertEquals(false, again == test.getAttribute("hey", "Unit"));
+        assertEquals("box", test.getAttribute("hey", "Unit"));
+      }
+
+      /**
+       * Tests the typed attribute methods - a content that is not a value of
+       * its declared type is refused before the item or the declarations
+       * change.
+       */
+      @Test
+      public final void testTypedAttributesRefused() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        Inventory expected = createFromArgsTest("hey", "hi");
+        test.declareAttribute("Cost", Inventory.AttributeType.INT);
+        boolean refused = false;
+        try {
+          test.addAttribute("hey", "Cost", "twelve");
+        } catch (NumberFormatException e) {
+          refused = true;
+        }
+        assertEquals(true, refused);
+        assertEquals(expected, test);
+        test.addAttribute("hey", "Note", "7");
+        test.addAttribute("hi", "Note", "seven");
+        expected.addAttribute("hey", "Note", "7");
+        expected.addAttribute("hi", "Note", "seven");
+        refused = false;
+        try {
+          test.declareAttribute("Note", Inventory.AttributeType.INT);
+        } catch (NumberFormatException e) {
+          refused = true;
+        }
+        assertEquals(true, refused);
+        assertEquals(expected, test);
+        test.setAttribute("hi", "Note", "8");
+        assertEquals(8, test.intAttribute("hi", "Note"));
+        assertEquals("8", test.getAttribute("hi", "Note"));
+      }
+
+      /**
+       * Tests applyBatch - a PUT_ATTRIBUTE whose content is not a value of
+       * the declared type fails alone, and the ops around it still apply.
+       */
+      @Test
+      public final void testApplyBatchBadlyTyped() {
+        Inventory test = createFromArgsTest();
+        Inventory expected = createFromArgsTest("A", "B");
+        expected.setName("A", "Anvil");
+        expected.setName("B", "Bolt");
+        test.declareAttribute("w", Inventory.AttributeType.INT);
+        Sequence<InventoryOp> ops = new Sequence1L<InventoryOp>();
+        ops.add(ops.length(), InventoryOp.add("A", "Anvil"));
+        ops.add(ops.length(), InventoryOp.putAttribute("A", "w", "bad"));
+        ops.add(ops.length(), InventoryOp.add("B", "Bolt"));
+        boolean[] results = test.applyBatch(ops);
+        boolean[] expectedResults = {true, false, true};
+        assertEquals(expectedResults.length, results.length);
+        for (int i = 0; i < results.length; i++) {
+          assertEquals(expectedResults[i], results[i]);
+        }
+        assertEquals(expected, test);
+        assertEquals(false, test.hasAttribute("A", "w"));
+      }
 }
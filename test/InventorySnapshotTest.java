@@ -0,0 +1,139 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.InventorySnapshot;
+
+/**
+ * JUnit test fixture for {@code InventorySnapshot}.
+ *
+ * @author Jacob Witt
+ */
+public class InventorySnapshotTest {
+
+    /**
+     * Writes {@code inventory} to a snapshot in memory.
+     *
+     * @param inventory
+     *      the inventory to write
+     * @return
+     *      the snapshot bytes
+     */
+    private static byte[] snapshot(Inventory inventory) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InventorySnapshot.write(inventory, out);
+        return out.toByteArray();
+    }
+
+      /**
+       * Tests write then read - names, quantities, and attributes, including
+       * non-ASCII text and large quantities.
+       */
+      @Test
+      public final void testRoundTrip() {
+        Inventory expected = new Inventory1();
+        expected.add("hey", "Greeting");
+        expected.add("1001", "Caf\u00e9 \u2615");
+        expected.add("empty");
+        expected.setQuantity("1001", Integer.MAX_VALUE);
+        expected.setQuantity("hey", 300);
+        expected.addAttribute("hey", "Attr", "Val");
+        expected.addAttribute("hey", "Long", new String(new char[70000])
+            .replace('\0', 'x'));
+        Inventory test = InventorySnapshot.read(
+            new ByteArrayInputStream(snapshot(expected)));
+        assertEquals(expected, test);
+        assertEquals("1001", test.search("Caf\u00e9 \u2615"));
+        assertEquals(70000, test.getAttribute("hey", "Long").length());
+      }
+
+      /**
+       * Tests write then read - enough items to span many buffers.
+       */
+      @Test
+      public final void testRoundTripMany() {
+        final int count = 20000;
+        Inventory expected = new Inventory1();
+        for (int i = 0; i < count; i++) {
+          expected.add("sku" + i, "Item " + i);
+          expected.setQuantity("sku" + i, i);
+        }
+        Inventory test = InventorySnapshot.read(
+            new ByteArrayInputStream(snapshot(expected)));
+        assertEquals(count, test.size());
+        assertEquals(expected, test);
+        assertEquals("sku12345", test.search("Item 12345"));
+      }
+
+      /**
+       * Tests read - a truncated snapshot is rejected.
+       */
+      @Test(expected = UncheckedIOException.class)
+      public final void testReadTruncated() {
+        Inventory expected = new Inventory1();
+        expected.add("hey", "Greeting");
+        byte[] bytes = snapshot(expected);
+        InventorySnapshot.read(new ByteArrayInputStream(
+            Arrays.copyOf(bytes, bytes.length - 1)));
+      }
+
+      /**
+       * Tests read - input that is not a snapshot is rejected.
+       */
+      @Test(expected = UncheckedIOException.class)
+      public final void testReadNotSnapshot() {
+        InventorySnapshot.read(new ByteArrayInputStream(new byte[] {1, 2, 3,
+            4, 5}));
+      }
+
+      /**
+       * Tests read - a snapshot listing one barcode twice is rejected, even
+       * with assertions disabled.
+       */
+      @Test(expected = UncheckedIOException.class)
+      public final void testReadDuplicateBarcode() {
+        Inventory expected = new Inventory1();
+        expected.add("dup1");
+        expected.add("dup2");
+        byte[] bytes = snapshot(expected);
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        int at = text.indexOf("dup2");
+        bytes[at + 3] = '1';
+        InventorySnapshot.read(new ByteArrayInputStream(bytes));
+      }
+
+      /**
+       * Tests write and read - iterating the inventory first, as toString
+       * does, adds no "barcode" attribute to the items read back.
+       */
+      @Test
+      public final void testRoundTripAfterIterating() {
+        Inventory expected = new Inventory1();
+        expected.add("A");
+        expected.toString();
+        Inventory test = InventorySnapshot.read(
+            new ByteArrayInputStream(snapshot(expected)));
+        assertEquals(0, test.attributes("A").size());
+      }
+
+      /**
+       * Tests read - an attribute named "barcode" is refused.
+       */
+      @Test(expected = UncheckedIOException.class)
+      public final void testReadBarcodeAttribute() {
+        Inventory expected = new Inventory1();
+        expected.add("A");
+        expected.addAttribute("A", "barcodX", "A");
+        byte[] bytes = snapshot(expected);
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        bytes[text.indexOf("barcodX") + 6] = 'e';
+        InventorySnapshot.read(new ByteArrayInputStream(bytes));
+      }
+}
@@ -0,0 +1,222 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.JournaledInventory;
+
+/**
+ * JUnit test fixture for {@code JournaledInventory}: replay after close, after
+ * a torn write, and of changes made by many threads without closing.
+ *
+ * @author Jacob Witt
+ */
+public class JournaledInventoryTest {
+
+    /**
+     * Makes the same changes to {@code test} and {@code expected}.
+     *
+     * @param test
+     *      the inventory under test
+     * @param expected
+     *      the reference inventory
+     */
+    private static void mutate(Inventory test, Inventory expected) {
+        for (Inventory i : new Inventory[] {test, expected}) {
+            i.add("hey", "Greeting");
+            i.add("hi");
+            i.add("1001");
+            i.increment("1001");
+            i.increment("1001");
+            i.decrement("1001");
+            i.placeOrder("1001", 5);
+            i.receiveOrder("1001", 2);
+            i.setQuantity("hi", 5);
+            i.addAttribute("hi", "Attr", "V\u00e4l");
+            i.addAttribute("hi", "Gone", "x");
+            i.removeAttribute("hi", "Gone");
+            i.setName("hi", "Hello");
+            i.remove("hey");
+        }
+    }
+
+      /**
+       * Tests replay - every mutation survives closing and reopening.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testReplayAfterClose() throws IOException {
+        Path file = Files.createTempFile("inventory", ".journal");
+        try {
+          Inventory expected = new Inventory1();
+          JournaledInventory test = new JournaledInventory(file);
+          mutate(test, expected);
+          test.close();
+          JournaledInventory reopened = new JournaledInventory(file);
+          assertEquals(expected, reopened);
+          assertEquals("V\u00e4l", reopened.getAttribute("hi", "Attr"));
+          assertEquals("hi", reopened.search("Hello"));
+          assertEquals(3, reopened.onOrder("1001"));
+          assertEquals(3, reopened.quantity("1001"));
+          reopened.clear();
+          reopened.add("after");
+          reopened.close();
+          reopened = new JournaledInventory(file);
+          assertEquals(1, reopened.size());
+          assertEquals(true, reopened.contains("after"));
+          reopened.close();
+        } finally {
+          Files.delete(file);
+        }
+      }
+
+      /**
+       * Tests replay - a torn record at the tail is dropped and later records
+       * are appended after the last intact one.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testReplayTornTail() throws IOException {
+        Path file = Files.createTempFile("inventory", ".journal");
+        try {
+          Inventory expected = new Inventory1();
+          JournaledInventory test = new JournaledInventory(file);
+          mutate(test, expected);
+          test.add("torn");
+          test.close();
+          try (FileChannel channel = FileChannel.open(file,
+              StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+          }
+          JournaledInventory reopened = new JournaledInventory(file);
+          assertEquals(expected, reopened);
+          reopened.add("next");
+          expected.add("next");
+          reopened.close();
+          assertEquals(expected, new JournaledInventory(file));
+        } finally {
+          Files.delete(file);
+        }
+      }
+
+      /**
+       * Tests group commit - each change from many threads is on the device
+       * when its call returns, so a second journal opened without closing the
+       * first replays all of them.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       * @throws InterruptedException
+       *      if interrupted while waiting for the threads
+       */
+      @Test
+      public final void testCommitBeforeReturn()
+          throws IOException, InterruptedException {
+        Path file = Files.createTempFile("inventory", ".journal");
+        try {
+          JournaledInventory test = new JournaledInventory(file);
+          test.add("hey");
+          Thread[] threads = new Thread[4];
+          for (int t = 0; t < threads.length; t++) {
+            String barcode = "item" + t;
+            threads[t] = new Thread(() -> {
+              test.add(barcode);
+              for (int k = 0; k < 25; k++) {
+                test.increment(barcode);
+                test.increment("hey");
+              }
+            });
+            threads[t].start();
+          }
+          for (Thread thread : threads) {
+            thread.join();
+          }
+          JournaledInventory reopened = new JournaledInventory(file);
+          assertEquals(test, reopened);
+          assertEquals(100, reopened.quantity("hey"));
+          assertEquals(25, reopened.quantity("item3"));
+          reopened.close();
+          test.close();
+        } finally {
+          Files.delete(file);
+        }
+      }
+
+      /**
+       * Tests commit - a call made while the caller synchronizes on the
+       * inventory is still on the device when it returns.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testCommitUnderClientLock() throws IOException {
+        Path file = Files.createTempFile("inventory", ".journal");
+        try {
+          JournaledInventory test = new JournaledInventory(file);
+          synchronized (test) {
+            test.add("Z");
+            JournaledInventory reopened = new JournaledInventory(file);
+            assertEquals(true, reopened.contains("Z"));
+            reopened.close();
+          }
+          test.close();
+        } finally {
+          Files.delete(file);
+        }
+      }
+
+      /**
+       * Tests tryReserve - threads reserving at the same time never take
+       * more than the quantity, and the journal agrees.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       * @throws InterruptedException
+       *      if interrupted while waiting for the threads
+       */
+      @Test
+      public final void testTryReserveConcurrent()
+          throws IOException, InterruptedException {
+        Path file = Files.createTempFile("inventory", ".journal");
+        try {
+          JournaledInventory test = new JournaledInventory(file);
+          test.add("hey");
+          test.setQuantity("hey", 20);
+          AtomicInteger reserved = new AtomicInteger();
+          Thread[] threads = new Thread[8];
+          for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+              for (int k = 0; k < 5; k++) {
+                if (test.tryReserve("hey", 1)) {
+                  reserved.incrementAndGet();
+                }
+              }
+            });
+            threads[t].start();
+          }
+          for (Thread thread : threads) {
+            thread.join();
+          }
+          assertEquals(20, reserved.get());
+          assertEquals(0, test.quantity("hey"));
+          JournaledInventory reopened = new JournaledInventory(file);
+          assertEquals(test, reopened);
+          reopened.close();
+          test.close();
+        } finally {
+          Files.delete(file);
+        }
+      }
+}
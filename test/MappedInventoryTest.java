@@ -0,0 +1,195 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.InventorySnapshot;
+import components.inventory.MappedInventory;
+
+/**
+ * JUnit test fixture for {@code MappedInventory}, checked against the
+ * {@code Inventory1} its snapshot was written from.
+ *
+ * @author Jacob Witt
+ */
+public class MappedInventoryTest {
+
+    /**
+     * Creates a reference inventory of {@code count} items.
+     *
+     * @param count
+     *      the number of items
+     * @return
+     *      the created inventory
+     */
+    private static Inventory createRef(int count) {
+        Inventory result = new Inventory1();
+        for (int i = 0; i < count; i++) {
+          result.add("sku" + i, "Item " + i);
+          result.setQuantity("sku" + i, i);
+        }
+        result.addAttribute("sku1", "Attr", "Val");
+        return result;
+    }
+
+    /**
+     * Opens a mapped inventory of {@code expected}, through a temporary
+     * file.
+     *
+     * @param expected
+     *      the inventory to snapshot
+     * @return
+     *      the mapped inventory
+     * @throws IOException
+     *      if the temporary file cannot be made
+     */
+    private static Inventory open(Inventory expected) throws IOException {
+        Path file = Files.createTempFile("inventory", ".invx");
+        try {
+          InventorySnapshot.writeIndexed(expected, file);
+          return new MappedInventory(file);
+        } finally {
+          file.toFile().deleteOnExit();
+        }
+    }
+
+      /**
+       * Tests lookups on unmaterialized items.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testLookups() throws IOException {
+        Inventory expected = createRef(1000);
+        Inventory test = open(expected);
+        assertEquals(1000, test.size());
+        assertEquals(true, test.contains("sku999"));
+        assertEquals(false, test.contains("sku1000"));
+        assertEquals(500, test.quantity("sku500"));
+        assertEquals("Item 42", test.name("sku42"));
+        assertEquals("Val", test.getAttribute("sku1", "Attr"));
+        assertEquals(false, test.hasAttribute("sku2", "Attr"));
+        assertEquals("sku77", test.search("Item 77"));
+        assertEquals(expected, test);
+      }
+
+      /**
+       * Tests hasAttribute on unmaterialized items with several attributes,
+       * and after materializing one.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testHasAttribute() throws IOException {
+        Inventory expected = createRef(10);
+        expected.addAttribute("sku3", "Colour", "Red");
+        expected.addAttribute("sku3", "Size", "L");
+        expected.addAttribute("sku3", "Sized", "");
+        Inventory test = open(expected);
+        assertEquals(true, test.hasAttribute("sku1", "Attr"));
+        assertEquals(true, test.hasAttribute("sku3", "Colour"));
+        assertEquals(true, test.hasAttribute("sku3", "Sized"));
+        assertEquals(false, test.hasAttribute("sku3", "Siz"));
+        assertEquals(false, test.hasAttribute("sku3", "Attr"));
+        test.removeAttribute("sku3", "Size");
+        assertEquals(false, test.hasAttribute("sku3", "Size"));
+        assertEquals(true, test.hasAttribute("sku3", "Sized"));
+      }
+
+      /**
+       * Tests changes on top of the mapped items.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testChanges() throws IOException {
+        Inventory expected = createRef(100);
+        Inventory test = open(expected);
+        for (Inventory i : new Inventory[] {test, expected}) {
+          i.increment("sku5");
+          i.setName("sku6", "Renamed");
+          i.remove("sku7");
+          i.add("sku7", "Back");
+          i.remove("sku8");
+          i.add("new");
+        }
+        assertEquals(expected, test);
+        assertEquals(6, test.quantity("sku5"));
+        assertEquals("", test.search("Item 6"));
+        assertEquals("sku6", test.search("Renamed"));
+        assertEquals(false, test.contains("sku8"));
+        assertEquals(0, test.quantity("sku7"));
+        int removed = 0;
+        while (test.size() > 0) {
+          Inventory.InventoryItem item = test.removeAny();
+          String barcode = item.attributes().value("barcode");
+          assertEquals(true, expected.contains(barcode));
+          expected.remove(barcode);
+          removed++;
+        }
+        assertEquals(100, removed);
+        assertEquals(0, expected.size());
+      }
+
+      /**
+       * Tests an empty snapshot.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testEmpty() throws IOException {
+        Inventory test = open(new Inventory1());
+        assertEquals(0, test.size());
+        assertEquals(false, test.contains("x"));
+        assertEquals("", test.search(""));
+        test.add("x");
+        assertEquals(1, test.size());
+      }
+
+      /**
+       * Tests snapshot - later changes do not show in it, and reading an
+       * unmaterialized item from it does not materialize it.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test
+      public final void testSnapshot() throws IOException {
+        Inventory expected = createRef(100);
+        Inventory test = open(expected);
+        test.increment("sku5");
+        Inventory snapshot = test.snapshot();
+        assertEquals("Item 42", snapshot.name("sku42"));
+        assertEquals("Val", snapshot.getAttribute("sku1", "Attr"));
+        test.increment("sku5");
+        test.setName("sku42", "Renamed");
+        test.remove("sku1");
+        expected.increment("sku5");
+        assertEquals(expected, snapshot);
+        assertEquals(6, snapshot.quantity("sku5"));
+        assertEquals("sku42", snapshot.search("Item 42"));
+        assertEquals(7, test.quantity("sku5"));
+        assertEquals(false, test.contains("sku1"));
+        assertEquals(99, test.size());
+      }
+
+      /**
+       * Tests snapshot - a snapshot cannot be changed.
+       *
+       * @throws IOException
+       *      if the temporary file cannot be made
+       */
+      @Test(expected = UnsupportedOperationException.class)
+      public final void testSnapshotReadOnly() throws IOException {
+        Inventory test = open(createRef(10));
+        test.snapshot().increment("sku5");
+      }
+}
@@ -0,0 +1,210 @@
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import components.inventory.Inventory;
+import components.inventory.Inventory1;
+import components.inventory.StampedInventory;
+
+/**
+ * JUnit test fixture for {@code StampedInventory}, checked against
+ * {@code Inventory1} and under concurrent use.
+ *
+ * @author Jacob Witt
+ */
+public class StampedInventoryTest {
+    /**
+     * Number of reader threads used by the concurrent test.
+     */
+    private static final int READERS = 4;
+
+    /**
+     * Create an inventory with the specified arguments.
+     *
+     * @param args
+     *      the barcodes add to the inventory
+     * @return
+     *      the created inventory
+     */
+    private Inventory createFromArgsTest(String... args) {
+        Inventory result = new StampedInventory();
+        for (String s: args) {
+            result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Create a reference inventory with the specified arguments.
+     *
+     * @param args
+     *      the barcodes add to the inventory
+     * @return
+     *      the created inventory
+     */
+    private Inventory createFromArgsRef(String... args) {
+        Inventory result = new Inventory1();
+        for (String s: args) {
+            result.add(s);
+        }
+        return result;
+    }
+
+      /**
+       * Tests the kernel and secondary methods against Inventory1.
+       */
+      @Test
+      public final void testMatchesInventory1() {
+        Inventory test = createFromArgsTest("hey", "hi", "1001");
+        Inventory expected = createFromArgsRef("hey", "hi", "1001");
+        test.setName("hey", "Greeting");
+        expected.setName("hey", "Greeting");
+        test.setQuantity("1001", 4);
+        expected.setQuantity("1001", 4);
+        test.addAttribute("hi", "Attr", "Val");
+        expected.addAttribute("hi", "Attr", "Val");
+        assertEquals(expected, test);
+        assertEquals(test, expected);
+        assertEquals("hey", test.search("Greeting"));
+        assertEquals(true, test.hasAttribute("hi", "Attr"));
+        assertEquals(1, test.attributes("hi").size());
+        assertEquals(false, test.tryReserve("1001", 5));
+        assertEquals(true, test.tryReserve("1001", 4));
+        Inventory.InventoryItem removed = test.remove("hi");
+        assertEquals("Val", removed.attributes().value("Attr"));
+        assertEquals(2, test.size());
+      }
+
+      /**
+       * Tests transferFrom.
+       */
+      @Test
+      public final void testTransferFrom() {
+        Inventory testOut = createFromArgsTest("Hi", "Hello");
+        Inventory testIn = createFromArgsTest("Thing1");
+        Inventory expected = createFromArgsRef("Hi", "Hello");
+        testIn.transferFrom(testOut);
+        assertEquals(expected, testIn);
+        assertEquals(0, testOut.size());
+      }
+
+      /**
+       * Tests lookups from many threads while one thread adds, renames, and
+       * removes items.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting
+       */
+      @Test
+      public final void testReadersDuringWrites() throws InterruptedException {
+        final int items = 2000;
+        Inventory test = createFromArgsTest("fixed");
+        test.setQuantity("fixed", 7);
+        test.setName("fixed", "Fixed");
+        boolean[] ok = new boolean[READERS];
+        Thread[] readers = new Thread[READERS];
+        for (int t = 0; t < READERS; t++) {
+          final int index = t;
+          readers[t] = new Thread(() -> {
+            boolean good = true;
+            for (int k = 0; k < items * 5; k++) {
+              good &= test.contains("fixed") && test.quantity("fixed") == 7
+                  && test.name("fixed").equals("Fixed");
+              test.contains("sku" + (k % items));
+            }
+            ok[index] = good;
+          });
+          readers[t].start();
+        }
+        for (int k = 0; k < items; k++) {
+          test.add("sku" + k, "Item");
+        }
+        for (int k = 0; k < items; k += 2) {
+          test.remove("sku" + k);
+        }
+        for (Thread reader : readers) {
+          reader.join();
+        }
+        for (boolean good : ok) {
+          assertEquals(true, good);
+        }
+        assertEquals(1 + items / 2, test.size());
+      }
+
+      /**
+       * Tests snapshot - it keeps its state while writers go on.
+       */
+      @Test
+      public final void testSnapshot() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        test.setQuantity("hi", 2);
+        Inventory snapshot = test.snapshot();
+        test.increment("hi");
+        test.remove("hey");
+        assertEquals(2, snapshot.size());
+        assertEquals(2, snapshot.quantity("hi"));
+        assertEquals(3, test.quantity("hi"));
+        int n = 0;
+        for (Inventory.InventoryItem item : test) {
+          assertEquals("hi", item.attributes().value("barcode"));
+          n++;
+        }
+        assertEquals(1, n);
+      }
+
+      /**
+       * Tests snapshot - reads between two writes share one snapshot, and a
+       * write makes the next one current again.
+       */
+      @Test
+      public final void testSnapshotReused() {
+        Inventory test = createFromArgsTest("hey", "hi");
+        Inventory first = test.snapshot();
+        assertEquals(first.toString(), test.toString());
+        assertEquals(true, first == test.snapshot());
+        test.add("new");
+        Inventory second = test.snapshot();
+        assertEquals(false, first == second);
+        assertEquals(2, first.size());
+        assertEquals(3, second.size());
+        int n = 0;
+        for (Inventory.InventoryItem item : test) {
+          assertEquals(true, test.contains(item.attributes().value("barcode")));
+          n++;
+        }
+        assertEquals(3, n);
+      }
+
+      /**
+       * Tests transferFrom - threads transferring between two inventories in
+       * both directions at once do not deadlock.
+       *
+       * @throws InterruptedException
+       *      if interrupted while waiting for the threads
+       */
+      @Test(timeout = 60000)
+      public final void testCrossedTransfers() throws InterruptedException {
+        final int perThread = 200;
+        StampedInventory first = new StampedInventory();
+        StampedInventory second = new StampedInventory();
+        first.add("hey");
+        first.add("hi");
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+          final boolean forward = t % 2 == 0;
+          threads[t] = new Thread(() -> {
+            for (int k = 0; k < perThread; k++) {
+              if (forward) {
+                first.transferFrom(second);
+              } else {
+                second.transferFrom(first);
+              }
+            }
+          });
+          threads[t].start();
+        }
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        assertEquals(true, first.size() + second.size() <= 2);
+      }
+}